@@ -1,10 +1,13 @@
 package jar.elem.elempoints.api;
 
 import jar.elem.elempoints.api.currency.Currency;
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.api.result.TransactionResult;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
@@ -80,6 +83,10 @@ public interface ElemPointsAPI {
     /**
      * Gets the balance for a player in the specified currency.
      * Creates a default account if one doesn't exist.
+     * <p>
+     * Online players' balances are always cached. For other players this may wait for
+     * the database; on the server thread prefer {@link #tryGetBalance} or
+     * {@link #getBalanceAsync}.
      *
      * @param player     player UUID
      * @param currencyId currency identifier
@@ -88,6 +95,20 @@ public interface ElemPointsAPI {
      */
     double getBalance(UUID player, String currencyId);
 
+    /**
+     * Gets the balance only if it is cached; never waits for the database.
+     * <p>
+     * If it is not cached yet, loading starts in the background and an empty result is
+     * returned, so callers polling every tick (scoreboards, placeholders) see the balance
+     * shortly after.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @return the balance, or empty while it is loading
+     * @throws jar.elem.elempoints.api.exception.CurrencyNotFoundException if currency not found
+     */
+    OptionalDouble tryGetBalance(UUID player, String currencyId);
+
     /**
      * Sets the exact balance for a player.
      *
@@ -128,6 +149,74 @@ public interface ElemPointsAPI {
      */
     boolean has(UUID player, String currencyId, double amount);
 
+    // ========================= Balance (minor units) =========================
+    //
+    // Exact integer variants of the methods above. Amounts are minor units of the
+    // currency (see Currency#getDecimals()): with decimals: 2, 150 means 1.50.
+    // For currencies without decimals one unit is 1.0.
+    // The methods have distinct names so existing calls like deposit(uuid, "points", 100)
+    // keep resolving to the double variant.
+
+    /**
+     * Gets the balance in minor units.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @return current balance in minor units
+     */
+    long getBalanceUnits(UUID player, String currencyId);
+
+    /**
+     * Sets the exact balance in minor units.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @param units      new balance in minor units (must be >= 0)
+     * @return transaction result
+     */
+    TransactionResult setBalanceUnits(UUID player, String currencyId, long units);
+
+    /**
+     * Adds minor units to a player's balance.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @param units      minor units to add (must be > 0)
+     * @return transaction result
+     */
+    TransactionResult depositUnits(UUID player, String currencyId, long units);
+
+    /**
+     * Removes minor units from a player's balance. Fails if insufficient funds.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @param units      minor units to remove (must be > 0)
+     * @return transaction result
+     */
+    TransactionResult withdrawUnits(UUID player, String currencyId, long units);
+
+    /**
+     * Checks if a player has at least the specified minor units.
+     *
+     * @param player     player UUID
+     * @param currencyId currency identifier
+     * @param units      minor units to check
+     * @return true if balance >= units
+     */
+    boolean hasUnits(UUID player, String currencyId, long units);
+
+    /**
+     * Transfers minor units between two players. Applies transfer fees as configured.
+     *
+     * @param from       sender UUID
+     * @param to         receiver UUID
+     * @param currencyId currency identifier
+     * @param units      minor units to transfer
+     * @return transaction result
+     */
+    TransactionResult transferUnits(UUID from, UUID to, String currencyId, long units);
+
     // ========================= Balance (primary currency shortcuts) =========================
 
     /**
@@ -167,7 +256,8 @@ public interface ElemPointsAPI {
     // ========================= Async Operations =========================
 
     /**
-     * Asynchronously gets a player's balance.
+     * Asynchronously gets a player's balance. Completes at once if it is cached; the
+     * load never runs on the calling thread.
      */
     CompletableFuture<Double> getBalanceAsync(UUID player, String currencyId);
 
@@ -199,6 +289,21 @@ public interface ElemPointsAPI {
      */
     CompletableFuture<Integer> exportData(String fromCurrencyId, String toCurrencyId, double rate);
 
+    // ========================= History =========================
+
+    /**
+     * Gets one page of a player's transaction history, newest first.
+     * <p>
+     * Pages are keyed on entry ids, so paging stays fast however long the history is:
+     * pass 0 for the first page, then the {@link HistoryEntry#getId() id} of the last
+     * entry received. Changes are written in batches and appear within a few seconds.
+     *
+     * @param beforeId id of the last entry of the previous page, or 0 for the newest page
+     * @param limit    maximum number of entries
+     * @return future with the entries; fewer than {@code limit} on the last page
+     */
+    CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit);
+
     // ========================= Utility =========================
 
     /**
@@ -98,4 +98,49 @@ public interface Currency {
      * @return true if enabled
      */
     boolean isEnabled();
+
+    /**
+     * Returns the number of decimal places balances are kept with, or -1 if this
+     * currency stores floating-point balances.
+     * <p>
+     * With decimals configured, balances are exact integers of minor units
+     * (e.g. cents for {@code decimals: 2}) in the cache and in storage.
+     *
+     * @return decimal places, or -1
+     */
+    default int getDecimals() {
+        return -1;
+    }
+
+    /**
+     * Converts an amount into minor units, rounding half up.
+     * For currencies without decimals one unit is 1.0.
+     *
+     * @param amount amount in major units
+     * @return amount in minor units
+     */
+    default long toMinorUnits(double amount) {
+        return Math.round(amount * unitScale());
+    }
+
+    /**
+     * Converts minor units back into an amount.
+     *
+     * @param units amount in minor units
+     * @return amount in major units
+     */
+    default double fromMinorUnits(long units) {
+        return units / (double) unitScale();
+    }
+
+    /**
+     * Returns how many minor units make one major unit ({@code 10^decimals}, or 1).
+     *
+     * @return unit scale
+     */
+    default long unitScale() {
+        long scale = 1;
+        for (int i = 0; i < getDecimals(); i++) scale *= 10;
+        return scale;
+    }
 }
\ No newline at end of file
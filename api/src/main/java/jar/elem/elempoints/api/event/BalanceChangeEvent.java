@@ -23,7 +23,8 @@ public class BalanceChangeEvent extends Event implements Cancellable {
         API_CALL,
         VAULT,
         EXPORT,
-        PLUGIN
+        PLUGIN,
+        ROLLBACK
     }
 
     private final UUID player;
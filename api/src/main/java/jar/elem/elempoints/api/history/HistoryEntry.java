@@ -0,0 +1,94 @@
+package jar.elem.elempoints.api.history;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+
+import java.util.UUID;
+
+/**
+ * One recorded balance change.
+ *
+ * @since 2.0.0
+ */
+public final class HistoryEntry {
+
+    private final long id;
+    private final long timestamp;
+    private final UUID player;
+    private final String currencyId;
+    private final double delta;
+    private final double balance;
+    private final BalanceChangeEvent.Reason reason;
+    private final String source;
+
+    public HistoryEntry(long id, long timestamp, UUID player, String currencyId, double delta, double balance,
+                        BalanceChangeEvent.Reason reason, String source) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.player = player;
+        this.currencyId = currencyId;
+        this.delta = delta;
+        this.balance = balance;
+        this.reason = reason;
+        this.source = source;
+    }
+
+    /**
+     * Position in the history, increasing over time. Pass the id of the last entry of a
+     * page to get the next one; 0 for entries that are not stored yet.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Time of the change in epoch millis.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getPlayer() {
+        return player;
+    }
+
+    public String getCurrencyId() {
+        return currencyId;
+    }
+
+    /**
+     * Signed change: positive for deposits, negative for withdrawals.
+     */
+    public double getDelta() {
+        return delta;
+    }
+
+    /**
+     * Balance after the change.
+     */
+    public double getBalance() {
+        return balance;
+    }
+
+    /**
+     * Null if the reason is unknown to this version.
+     */
+    public BalanceChangeEvent.Reason getReason() {
+        return reason;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "HistoryEntry{id=" + id +
+                ", time=" + timestamp +
+                ", player=" + player +
+                ", currency=" + currencyId +
+                ", delta=" + delta +
+                ", balance=" + balance +
+                ", reason=" + reason +
+                (source != null ? ", source=" + source : "") + "}";
+    }
+}
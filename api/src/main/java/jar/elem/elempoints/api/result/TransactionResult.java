@@ -15,6 +15,8 @@ public final class TransactionResult {
         TRANSFER_DISABLED,
         BELOW_MINIMUM,
         CANCELLED_BY_EVENT,
+        /** The balance kept changing on another server and every optimistic retry lost the race. */
+        CONFLICT,
         ERROR
     }
 
@@ -4,6 +4,7 @@ import jar.elem.elempoints.api.ElemPointsAPI;
 import jar.elem.elempoints.api.exception.CurrencyNotFoundException;
 import jar.elem.elempoints.plugin.currency.CurrencyManager;
 import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.api.result.TransactionResult;
 import jar.elem.elempoints.api.currency.Currency;
 import java.util.*;
@@ -51,6 +52,12 @@ public final class ElemPointsAPIImpl implements ElemPointsAPI {
         return manager.getBalance(player, currencyId);
     }
 
+    @Override
+    public OptionalDouble tryGetBalance(UUID player, String currencyId) {
+        ensureCurrency(currencyId);
+        return manager.tryGetBalance(player, currencyId);
+    }
+
     @Override
     public TransactionResult setBalance(UUID player, String currencyId, double amount) {
         ensureCurrency(currencyId);
@@ -75,6 +82,44 @@ public final class ElemPointsAPIImpl implements ElemPointsAPI {
         return manager.has(player, currencyId, amount);
     }
 
+    // ═══════ Balance (minor units) ═══════
+
+    @Override
+    public long getBalanceUnits(UUID player, String currencyId) {
+        ensureCurrency(currencyId);
+        return manager.getBalanceUnits(player, currencyId);
+    }
+
+    @Override
+    public TransactionResult setBalanceUnits(UUID player, String currencyId, long units) {
+        ensureCurrency(currencyId);
+        return manager.setBalanceUnits(player, currencyId, units, BalanceChangeEvent.Reason.API_CALL, "api");
+    }
+
+    @Override
+    public TransactionResult depositUnits(UUID player, String currencyId, long units) {
+        ensureCurrency(currencyId);
+        return manager.depositUnits(player, currencyId, units, BalanceChangeEvent.Reason.API_CALL, "api");
+    }
+
+    @Override
+    public TransactionResult withdrawUnits(UUID player, String currencyId, long units) {
+        ensureCurrency(currencyId);
+        return manager.withdrawUnits(player, currencyId, units, BalanceChangeEvent.Reason.API_CALL, "api");
+    }
+
+    @Override
+    public boolean hasUnits(UUID player, String currencyId, long units) {
+        ensureCurrency(currencyId);
+        return manager.hasUnits(player, currencyId, units);
+    }
+
+    @Override
+    public TransactionResult transferUnits(UUID from, UUID to, String currencyId, long units) {
+        ensureCurrency(currencyId);
+        return manager.transferUnits(from, to, currencyId, units);
+    }
+
     // ═══════ Balance (primary) ═══════
 
     private String primary() {
@@ -145,6 +190,14 @@ public final class ElemPointsAPIImpl implements ElemPointsAPI {
         return manager.exportData(fromCurrencyId, toCurrencyId, rate);
     }
 
+    // ═══════ History ═══════
+
+    @Override
+    public CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit) {
+        ensureCurrency(currencyId);
+        return manager.getHistory(player, currencyId, beforeId, limit);
+    }
+
     // ═══════ Utility ═══════
 
     @Override
@@ -16,7 +16,13 @@ import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 public final class ElemPointsPlugin extends JavaPlugin {
 
@@ -55,6 +61,10 @@ public final class ElemPointsPlugin extends JavaPlugin {
         }
         currencyRegistry.ensurePrimary();
 
+        // ─── Crash recovery ───
+        // Before commands, hooks and joins can touch a balance
+        currencyManager.recover();
+
         // ─── Commands ───
         commandRegistry = new CommandRegistry(this, currencyManager, configManager.getMessages(), numberFormat);
         commandRegistry.registerAll();
@@ -78,11 +88,10 @@ public final class ElemPointsPlugin extends JavaPlugin {
         Bukkit.getPluginManager().registerEvents(new PlayerListener(this, currencyManager), this);
 
         // ─── Load online players ───
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            currencyManager.loadPlayer(p.getUniqueId());
-        }
+        loadOnlinePlayers();
 
         // ─── Auto-save ───
+        currencyManager.start();
         startAutoSave();
 
         long elapsed = System.currentTimeMillis() - start;
@@ -96,7 +105,7 @@ public final class ElemPointsPlugin extends JavaPlugin {
     @Override
     public void onDisable() {
         if (autoSaveTask != null) autoSaveTask.cancel();
-        if (currencyManager != null) currencyManager.saveAll();
+        if (currencyManager != null) awaitSave(currencyManager.shutdown());
         if (vaultHook != null) vaultHook.unhook();
         if (papiExpansion != null) papiExpansion.unregister();
         ElemPointsProvider.unregister();
@@ -109,11 +118,9 @@ public final class ElemPointsPlugin extends JavaPlugin {
      * Full reload accessible from commands and API.
      */
     public void performReload() {
-        // Save
-        currencyManager.saveAll();
-
         // Teardown
         if (autoSaveTask != null) autoSaveTask.cancel();
+        awaitSave(currencyManager.shutdown());
         commandRegistry.unregisterAll();
         vaultHook.unhook();
         if (papiExpansion != null) papiExpansion.unregister();
@@ -134,6 +141,7 @@ public final class ElemPointsPlugin extends JavaPlugin {
             currencyManager.registerCurrency(cfg);
         }
         currencyRegistry.ensurePrimary();
+        currencyManager.recover();
 
         commandRegistry = new CommandRegistry(this, currencyManager, configManager.getMessages(), numberFormat);
         commandRegistry.registerAll();
@@ -149,10 +157,9 @@ public final class ElemPointsPlugin extends JavaPlugin {
             papiExpansion.register();
         }
 
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            currencyManager.loadPlayer(p.getUniqueId());
-        }
+        loadOnlinePlayers();
 
+        currencyManager.start();
         startAutoSave();
 
         getLogger().info("Reloaded! " + currencyRegistry.size() + " currencies active.");
@@ -169,12 +176,30 @@ public final class ElemPointsPlugin extends JavaPlugin {
         }
     }
 
+    private void loadOnlinePlayers() {
+        List<UUID> ids = new ArrayList<>();
+        for (Player p : Bukkit.getOnlinePlayers()) ids.add(p.getUniqueId());
+        ids.forEach(currencyManager::pinPlayer);
+        currencyManager.loadPlayers(ids);
+    }
+
+    /**
+     * Block until pending writes are stored, so connections are not closed under them.
+     */
+    private void awaitSave(CompletableFuture<Void> save) {
+        try {
+            save.get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            getLogger().log(Level.SEVERE, "[Storage] Could not save all pending balances", e);
+        }
+    }
+
     private void startAutoSave() {
         int minutes = getConfig().getInt("general.auto-save-interval", 5);
         if (minutes > 0) {
             long ticks = minutes * 60L * 20L;
             autoSaveTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this, () -> {
-                currencyManager.saveAll();
+                currencyManager.saveAll().join();
                 if (getConfig().getBoolean("general.debug", false)) {
                     getLogger().info("[AutoSave] Complete.");
                 }
@@ -5,7 +5,9 @@ import jar.elem.elempoints.plugin.config.CurrencyConfig;
 import jar.elem.elempoints.plugin.config.MessagesConfig;
 import jar.elem.elempoints.plugin.currency.CurrencyImpl;
 import jar.elem.elempoints.plugin.currency.CurrencyManager;
+import jar.elem.elempoints.plugin.currency.RollbackResult;
 import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.api.result.TransactionResult;
 import jar.elem.elempoints.plugin.util.NumberFormat;
 import org.bukkit.Bukkit;
@@ -13,11 +15,25 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.command.*;
 import org.bukkit.entity.Player;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
 
 public final class AdminCommand implements CommandExecutor, TabCompleter {
 
+    private static final long EXPORT_PROGRESS_INTERVAL = 5_000L;
+    private static final int HISTORY_PAGE_SIZE = 10;
+    private static final DateTimeFormatter HISTORY_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    // Accounts listed in a rollback preview
+    private static final int ROLLBACK_PREVIEW = 10;
+
     private final ElemPointsPlugin plugin;
     private final CurrencyImpl currency;
     private final CurrencyManager manager;
@@ -55,6 +71,8 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
             case "reset":               doReset(sender, args); break;
             case "check": case "look":  doCheck(sender, args); break;
             case "export":              doExport(sender, args); break;
+            case "history":             doHistory(sender, args); break;
+            case "rollback":            doRollback(sender, args); break;
             default: showHelp(sender);
         }
         return true;
@@ -147,12 +165,24 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
     private void doCheck(CommandSender sender, String[] args) {
         if (args.length < 2) { msgs.send(sender, "help.balance-other", cfg.getMessageOverrides(), basePh()); return; }
         OfflinePlayer target = resolve(sender, args[1]); if (target == null) return;
-        double bal = manager.getBalance(target.getUniqueId(), currency.getId());
         String name = target.getName() != null ? target.getName() : args[1];
-        Map<String, String> ph = basePh();
-        ph.put("player", name);
-        MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
-        msgs.send(sender, "balance.other", cfg.getMessageOverrides(), ph);
+        withBalance(target.getUniqueId(), bal -> {
+            Map<String, String> ph = basePh();
+            ph.put("player", name);
+            MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
+            msgs.send(sender, "balance.other", cfg.getMessageOverrides(), ph);
+        });
+    }
+
+    /**
+     * Run {@code action} with a player's balance on the server thread: at once if it is
+     * cached, otherwise once it has loaded, so a cache miss never blocks the tick.
+     */
+    private void withBalance(UUID player, DoubleConsumer action) {
+        manager.getBalanceAsync(player, currency.getId()).thenAccept(bal -> {
+            if (Bukkit.isPrimaryThread()) action.accept(bal);
+            else Bukkit.getScheduler().runTask(plugin, () -> action.accept(bal));
+        });
     }
 
     private void doExport(CommandSender sender, String[] args) {
@@ -172,7 +202,18 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
         ph.put("from", currency.getId()); ph.put("to", toId); ph.put("rate", String.valueOf(rate));
         msgs.send(sender, "system.export-start", cfg.getMessageOverrides(), ph);
 
-        manager.exportData(currency.getId(), toId, rate).thenAccept(count -> {
+        // Progress arrives per page from one worker thread; report at most every few seconds
+        long[] lastReport = {System.currentTimeMillis()};
+        manager.exportData(currency.getId(), toId, rate, converted -> {
+            long now = System.currentTimeMillis();
+            if (now - lastReport[0] < EXPORT_PROGRESS_INTERVAL) return;
+            lastReport[0] = now;
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Map<String, String> pph = basePh();
+                pph.put("count", String.valueOf(converted));
+                msgs.send(sender, "system.export-progress", cfg.getMessageOverrides(), pph);
+            });
+        }).thenAccept(count -> {
             Bukkit.getScheduler().runTask(plugin, () -> {
                 Map<String, String> dph = basePh();
                 dph.put("count", String.valueOf(count));
@@ -188,6 +229,151 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
         });
     }
 
+    private void doHistory(CommandSender sender, String[] args) {
+        if (args.length < 2) { msgs.send(sender, "help.admin-history", cfg.getMessageOverrides(), basePh()); return; }
+        OfflinePlayer target = resolve(sender, args[1]); if (target == null) return;
+        int page = 1;
+        if (args.length >= 3) {
+            try { page = Integer.parseInt(args[2]); if (page < 1) throw new NumberFormatException(); }
+            catch (NumberFormatException e) { Map<String, String> ph = basePh(); ph.put("input", args[2]);
+                msgs.send(sender, "error.invalid-amount", cfg.getMessageOverrides(), ph); return; }
+        }
+        String name = target.getName() != null ? target.getName() : args[1];
+        int shown = page;
+        historyPage(target.getUniqueId(), 0, page).thenAccept(entries -> Bukkit.getScheduler().runTask(plugin, () -> {
+            Map<String, String> ph = basePh();
+            ph.put("player", name);
+            ph.put("page", String.valueOf(shown));
+            if (entries.isEmpty()) {
+                msgs.send(sender, "history.empty", cfg.getMessageOverrides(), ph);
+                return;
+            }
+            msgs.send(sender, "history.header", cfg.getMessageOverrides(), ph);
+            for (HistoryEntry e : entries) {
+                Map<String, String> eph = new HashMap<>(ph);
+                eph.put("time", HISTORY_TIME.format(Instant.ofEpochMilli(e.getTimestamp())));
+                eph.put("sign", e.getDelta() < 0 ? "-" : "+");
+                MessagesConfig.addAmountPlaceholders(eph, Math.abs(e.getDelta()), fmt);
+                MessagesConfig.addBalancePlaceholders(eph, e.getBalance(), fmt);
+                eph.put("reason", e.getReason() != null ? e.getReason().name() : "?");
+                eph.put("source", e.getSource() != null ? e.getSource() : "");
+                msgs.send(sender, "history.entry", cfg.getMessageOverrides(), eph);
+            }
+        })).exceptionally(t -> {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Map<String, String> eph = basePh();
+                eph.put("error", t.getMessage());
+                msgs.send(sender, "history.fail", cfg.getMessageOverrides(), eph);
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Walk to the requested page one keyset page at a time; each step is an index range scan.
+     */
+    private CompletableFuture<List<HistoryEntry>> historyPage(UUID player, long beforeId, int page) {
+        return manager.getHistory(player, currency.getId(), beforeId, HISTORY_PAGE_SIZE).thenCompose(entries -> {
+            if (page <= 1) return CompletableFuture.completedFuture(entries);
+            if (entries.size() < HISTORY_PAGE_SIZE) {
+                return CompletableFuture.completedFuture(Collections.<HistoryEntry>emptyList());
+            }
+            return historyPage(player, entries.get(entries.size() - 1).getId(), page - 1);
+        });
+    }
+
+    /**
+     * {@code rollback <time> [player|*] [confirm]}: a dry run unless confirmed.
+     */
+    private void doRollback(CommandSender sender, String[] args) {
+        if (args.length < 2) { msgs.send(sender, "help.admin-rollback", cfg.getMessageOverrides(), basePh()); return; }
+        long time = parseTime(args[1]);
+        if (time < 0) {
+            Map<String, String> ph = basePh(); ph.put("input", args[1]);
+            msgs.send(sender, "rollback.invalid-time", cfg.getMessageOverrides(), ph);
+            return;
+        }
+        UUID player = null;
+        if (args.length >= 3 && !args[2].equals("*") && !args[2].equalsIgnoreCase("confirm")) {
+            OfflinePlayer target = resolve(sender, args[2]); if (target == null) return;
+            player = target.getUniqueId();
+        }
+        boolean apply = args[args.length - 1].equalsIgnoreCase("confirm");
+
+        Map<String, String> ph = basePh();
+        ph.put("time", HISTORY_TIME.format(Instant.ofEpochMilli(time)));
+        msgs.send(sender, "rollback.start", cfg.getMessageOverrides(), ph);
+        manager.rollback(currency.getId(), player, time, apply, "admin:" + sender.getName())
+                .thenAccept(result -> Bukkit.getScheduler().runTask(plugin, () -> reportRollback(sender, ph, result, args, time)))
+                .exceptionally(t -> {
+                    Bukkit.getScheduler().runTask(plugin, () -> {
+                        Map<String, String> eph = basePh();
+                        eph.put("error", t.getMessage());
+                        msgs.send(sender, "rollback.fail", cfg.getMessageOverrides(), eph);
+                    });
+                    return null;
+                });
+    }
+
+    private void reportRollback(CommandSender sender, Map<String, String> ph, RollbackResult result, String[] args,
+                                long time) {
+        List<RollbackResult.Change> changes = result.getChanges();
+        ph.put("count", String.valueOf(changes.size()));
+        ph.put("rows", String.valueOf(result.getScanned()));
+        if (changes.isEmpty()) {
+            msgs.send(sender, "rollback.none", cfg.getMessageOverrides(), ph);
+            return;
+        }
+        msgs.send(sender, result.isApplied() ? "rollback.done" : "rollback.preview", cfg.getMessageOverrides(), ph);
+        for (RollbackResult.Change c : changes.subList(0, Math.min(ROLLBACK_PREVIEW, changes.size()))) {
+            Map<String, String> cph = basePh();
+            String name = Bukkit.getOfflinePlayer(c.getPlayer()).getName();
+            cph.put("player", name != null ? name : c.getPlayer().toString());
+            cph.put("old_balance", fmt.formatted(c.getCurrent()));
+            cph.put("new_balance", fmt.formatted(c.getTarget()));
+            msgs.send(sender, "rollback.entry", cfg.getMessageOverrides(), cph);
+        }
+        if (changes.size() > ROLLBACK_PREVIEW) {
+            Map<String, String> mph = basePh();
+            mph.put("count", String.valueOf(changes.size() - ROLLBACK_PREVIEW));
+            msgs.send(sender, "rollback.more", cfg.getMessageOverrides(), mph);
+        }
+        if (!result.isApplied()) {
+            // The resolved time, not the input: "30m" typed again later would mean a later point
+            String[] confirm = Arrays.copyOf(args, args.length);
+            confirm[1] = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()).toString();
+            ph.put("confirm", "/" + cfg.getAdminCommand() + " " + String.join(" ", confirm) + " confirm");
+            msgs.send(sender, "rollback.confirm", cfg.getMessageOverrides(), ph);
+        }
+    }
+
+    /**
+     * A duration ago ({@code 30m}, {@code 2h}, {@code 1d}, {@code 1w}) or a local date-time
+     * ({@code 2024-01-31T18:00}).
+     *
+     * @return epoch millis, or -1 if invalid
+     */
+    private static long parseTime(String input) {
+        String s = input.toLowerCase();
+        if (s.matches("\\d{1,9}[smhdw]")) {
+            long n = Long.parseLong(s.substring(0, s.length() - 1));
+            long unit;
+            switch (s.charAt(s.length() - 1)) {
+                case 's': unit = 1_000L; break;
+                case 'm': unit = 60_000L; break;
+                case 'h': unit = 3_600_000L; break;
+                case 'd': unit = 86_400_000L; break;
+                default:  unit = 604_800_000L;
+            }
+            return System.currentTimeMillis() - n * unit;
+        }
+        try {
+            return LocalDateTime.parse(input).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
     private void showHelp(CommandSender sender) {
         Map<String, String> ph = basePh();
         msgs.send(sender, "help.admin-header", cfg.getMessageOverrides(), ph);
@@ -196,6 +382,8 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
         msgs.send(sender, "help.admin-set", cfg.getMessageOverrides(), ph);
         msgs.send(sender, "help.admin-reset", cfg.getMessageOverrides(), ph);
         msgs.send(sender, "help.admin-export", cfg.getMessageOverrides(), ph);
+        msgs.send(sender, "help.admin-history", cfg.getMessageOverrides(), ph);
+        msgs.send(sender, "help.admin-rollback", cfg.getMessageOverrides(), ph);
         msgs.send(sender, "help.admin-reload", cfg.getMessageOverrides(), ph);
     }
 
@@ -219,9 +407,10 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
     @Override
     public List<String> onTabComplete(CommandSender s, Command c, String a, String[] args) {
         if (args.length == 1) {
-            return filter(Arrays.asList("give","take","set","reset","check","export"), args[0]);
+            return filter(Arrays.asList("give","take","set","reset","check","export","history","rollback"), args[0]);
         }
         if (args.length == 2) {
+            if (args[0].equalsIgnoreCase("rollback")) return Arrays.asList("30m","1h","6h","1d");
             if (args[0].equalsIgnoreCase("export")) {
                 return filter(manager.getRegistry().all().stream()
                         .map(CurrencyImpl::getId)
@@ -231,7 +420,17 @@ public final class AdminCommand implements CommandExecutor, TabCompleter {
             return filter(Bukkit.getOnlinePlayers().stream().map(Player::getName)
                     .collect(Collectors.toList()), args[1]);
         }
-        if (args.length == 3) return Arrays.asList("100","500","1000","5000");
+        if (args.length == 4 && args[0].equalsIgnoreCase("rollback")) return filter(Collections.singletonList("confirm"), args[3]);
+        if (args.length == 3) {
+            if (args[0].equalsIgnoreCase("history")) return Arrays.asList("1","2","3");
+            if (args[0].equalsIgnoreCase("rollback")) {
+                List<String> names = Bukkit.getOnlinePlayers().stream().map(Player::getName)
+                        .collect(Collectors.toList());
+                names.add(0, "*");
+                return filter(names, args[2]);
+            }
+            return Arrays.asList("100","500","1000","5000");
+        }
         return Collections.emptyList();
     }
 
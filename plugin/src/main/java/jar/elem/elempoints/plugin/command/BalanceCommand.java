@@ -13,6 +13,7 @@ import org.bukkit.command.*;
 import org.bukkit.entity.Player;
 
 import java.util.*;
+import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
 
 public final class BalanceCommand implements CommandExecutor, TabCompleter {
@@ -52,10 +53,11 @@ public final class BalanceCommand implements CommandExecutor, TabCompleter {
                 return true;
             }
             Player p = (Player) sender;
-            double bal = manager.getBalance(p.getUniqueId(), currency.getId());
-            Map<String, String> ph = basePh();
-            MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
-            msgs.send(sender, "balance.self", cfg.getMessageOverrides(), ph);
+            withBalance(p.getUniqueId(), bal -> {
+                Map<String, String> ph = basePh();
+                MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
+                msgs.send(sender, "balance.self", cfg.getMessageOverrides(), ph);
+            });
             return true;
         }
 
@@ -152,14 +154,27 @@ public final class BalanceCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        double bal = manager.getBalance(target.getUniqueId(), currency.getId());
-        Map<String, String> ph = basePh();
-        ph.put("player", target.getName() != null ? target.getName() : args[0]);
-        MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
-        msgs.send(sender, "balance.other", cfg.getMessageOverrides(), ph);
+        String name = target.getName() != null ? target.getName() : args[0];
+        withBalance(target.getUniqueId(), bal -> {
+            Map<String, String> ph = basePh();
+            ph.put("player", name);
+            MessagesConfig.addBalancePlaceholders(ph, bal, fmt);
+            msgs.send(sender, "balance.other", cfg.getMessageOverrides(), ph);
+        });
         return true;
     }
 
+    /**
+     * Run {@code action} with a player's balance on the server thread: at once if it is
+     * cached, otherwise once it has loaded, so a cache miss never blocks the tick.
+     */
+    private void withBalance(UUID player, DoubleConsumer action) {
+        manager.getBalanceAsync(player, currency.getId()).thenAccept(bal -> {
+            if (Bukkit.isPrimaryThread()) action.accept(bal);
+            else Bukkit.getScheduler().runTask(plugin, () -> action.accept(bal));
+        });
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender s, Command c, String a, String[] args) {
         if (args.length == 1) {
@@ -4,6 +4,12 @@ import jar.elem.elempoints.plugin.ElemPointsPlugin;
 import jar.elem.elempoints.plugin.config.MessagesConfig;
 import jar.elem.elempoints.plugin.currency.CurrencyImpl;
 import jar.elem.elempoints.plugin.currency.CurrencyManager;
+import jar.elem.elempoints.plugin.currency.OfflineCache;
+import jar.elem.elempoints.plugin.storage.CircuitBreaker;
+import jar.elem.elempoints.plugin.storage.GuardedProvider;
+import jar.elem.elempoints.plugin.storage.StorageExecutor;
+import jar.elem.elempoints.plugin.storage.StorageProvider;
+import jar.elem.elempoints.plugin.storage.WriteSpool;
 import jar.elem.elempoints.plugin.util.NumberFormat;
 import org.bukkit.command.*;
 import java.util.*;
@@ -37,6 +43,34 @@ public final class ElemPointsCommand implements CommandExecutor, TabCompleter {
                         (c.isPrimary() ? " §a[PRIMARY]" : "") +
                         " §7(/" + c.getConfig().getPlayerCommand() + ")");
             }
+            sender.sendMessage("§eStorage:");
+            for (StorageProvider sp : manager.getStorage().all()) {
+                for (StorageExecutor ex : sp.getExecutors()) {
+                    sender.sendMessage("  §7- §b" + ex.getName() + (ex.isVirtual() ? " §d[virtual]" : "") +
+                            " §7queue: §f" + ex.getQueueDepth() +
+                            "/" + ex.getQueueCapacity() + " §7active: §f" + ex.getActiveCount());
+                }
+                if (sp instanceof GuardedProvider) {
+                    CircuitBreaker b = ((GuardedProvider) sp).getBreaker();
+                    CircuitBreaker.State state = b.getState();
+                    sender.sendMessage("    §7breaker: " + (state == CircuitBreaker.State.CLOSED ? "§a" : "§c") + state +
+                            (state == CircuitBreaker.State.CLOSED ? "" : " §7(cached-only)") +
+                            " §7trips: §f" + b.getTrips() + " §7refused: §f" + b.getRejected());
+                }
+            }
+            OfflineCache cache = manager.getCache();
+            long lookups = cache.getHits() + cache.getMisses();
+            sender.sendMessage("§eCache: §f" + manager.getCachedAccounts() + " §7accounts (§f" + cache.getPinned() +
+                    " §7online, §f" + cache.getOffline() + "/" +
+                    (cache.getMaxOffline() > 0 ? String.valueOf(cache.getMaxOffline()) : "∞") + " §7offline at last sweep)");
+            sender.sendMessage("  §7hits: §f" + cache.getHits() + " §7misses: §f" + cache.getMisses() +
+                    " §7hit rate: §f" + (lookups > 0 ? String.format("%.1f%%", cache.getHits() * 100.0 / lookups) : "-") +
+                    " §7evictions: §f" + cache.getEvictions() + " §7main-thread loads: §f" + cache.getBlockingLoads());
+            WriteSpool spool = manager.getSpool();
+            if (spool != null) {
+                sender.sendMessage("§eSpool: §f" + (spool.getPendingBytes() + 1023) / 1024 + " KB §7pending, spooled: §f" +
+                        spool.getSpooled() + " §7replayed: §f" + spool.getReplayed());
+            }
             sender.sendMessage("§fUse /elempoints reload to reload.");
             return true;
         }
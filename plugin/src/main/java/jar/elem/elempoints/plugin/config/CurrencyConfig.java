@@ -12,6 +12,9 @@ import java.util.Map;
  */
 public final class CurrencyConfig {
 
+    // 10^8 minor units still keep balances up to ~90 million exact as doubles
+    private static final int MAX_DECIMALS = 8;
+
     private final String id;
     private final String displayName;
     private final String singular;
@@ -22,6 +25,7 @@ public final class CurrencyConfig {
     private final boolean primary;
     private final double maxBalance;
     private final double minBalance;
+    private final int decimals;
 
     private final boolean transferEnabled;
     private final double transferFeePercent;
@@ -49,6 +53,8 @@ public final class CurrencyConfig {
         this.primary = yaml.getBoolean("economy.primary", false);
         this.maxBalance = yaml.getDouble("economy.max-balance", 0);
         this.minBalance = yaml.getDouble("economy.min-balance", 0);
+        // -1 = floating-point balances
+        this.decimals = Math.max(-1, Math.min(MAX_DECIMALS, yaml.getInt("economy.decimals", -1)));
 
         this.transferEnabled = yaml.getBoolean("transfer.enabled", true);
         this.transferFeePercent = yaml.getDouble("transfer.fee-percent", 0);
@@ -108,6 +114,7 @@ public final class CurrencyConfig {
     public boolean isPrimary() { return primary; }
     public double getMaxBalance() { return maxBalance; }
     public double getMinBalance() { return minBalance; }
+    public int getDecimals() { return decimals; }
     public boolean isTransferEnabled() { return transferEnabled; }
     public double getTransferFeePercent() { return transferFeePercent; }
     public double getMinTransfer() { return minTransfer; }
@@ -0,0 +1,122 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cached balances of one player: one primitive slot per currency, indexed by
+ * {@link CurrencyImpl#getOrdinal()}. Slot values are encoded by the owning currency
+ * ({@link CurrencyImpl#toSlot(double)}), so nothing is boxed on the read or write path.
+ */
+public final class Account {
+
+    /** Marks a slot whose balance has not been loaded from storage yet. */
+    public static final long UNLOADED = Long.MIN_VALUE;
+    /** Row version not known to the cache; the next compare-and-set reads it first. */
+    public static final long NO_VERSION = -1L;
+    /** Saturation point of the access counter. */
+    static final int MAX_FREQUENCY = 15;
+
+    private final UUID owner;
+    private final AtomicLongArray slots;
+    // Row versions for optimistic locking, allocated on first use
+    private volatile AtomicLongArray versions;
+    // Online players are never evicted
+    private volatile boolean pinned;
+    // Eviction bookkeeping; racy updates only make the counts approximate
+    private volatile long lastAccess;
+    private volatile int frequency;
+
+    Account(UUID owner, int width) {
+        this.owner = owner;
+        this.slots = new AtomicLongArray(width);
+        for (int i = 0; i < width; i++) slots.set(i, UNLOADED);
+        this.lastAccess = System.currentTimeMillis();
+        this.frequency = 1;
+    }
+
+    public UUID getOwner() { return owner; }
+
+    public int width() { return slots.length(); }
+
+    public boolean isLoaded(int ordinal) {
+        return get(ordinal) != UNLOADED;
+    }
+
+    /**
+     * @return the raw slot value, or {@link #UNLOADED}
+     */
+    public long get(int ordinal) {
+        return ordinal < slots.length() ? slots.get(ordinal) : UNLOADED;
+    }
+
+    public void set(int ordinal, long value) {
+        checkWidth(ordinal);
+        slots.set(ordinal, value);
+    }
+
+    /**
+     * Fill a slot with a value read from storage, unless a newer value got there first.
+     *
+     * @return the value now held by the slot
+     */
+    public long load(int ordinal, long value) {
+        checkWidth(ordinal);
+        if (slots.compareAndSet(ordinal, UNLOADED, value)) return value;
+        return slots.get(ordinal);
+    }
+
+    public long getVersion(int ordinal) {
+        AtomicLongArray v = versions;
+        return v != null && ordinal < v.length() ? v.get(ordinal) : NO_VERSION;
+    }
+
+    public void setVersion(int ordinal, long version) {
+        checkWidth(ordinal);
+        AtomicLongArray v = versions;
+        if (v == null) {
+            synchronized (this) {
+                v = versions;
+                if (v == null) {
+                    v = new AtomicLongArray(slots.length());
+                    for (int i = 0; i < v.length(); i++) v.set(i, NO_VERSION);
+                    versions = v;
+                }
+            }
+        }
+        v.set(ordinal, version);
+    }
+
+    // ─── Eviction ───
+
+    boolean isPinned() { return pinned; }
+
+    void setPinned(boolean pinned) { this.pinned = pinned; }
+
+    long getLastAccess() { return lastAccess; }
+
+    int getFrequency() { return frequency; }
+
+    /**
+     * Record a use of the account.
+     */
+    void touch(long now) {
+        lastAccess = now;
+        int f = frequency;
+        if (f < MAX_FREQUENCY) frequency = f + 1;
+    }
+
+    /**
+     * Halve the access count, so old popularity fades.
+     */
+    void age() {
+        frequency = frequency >>> 1;
+    }
+
+    private void checkWidth(int ordinal) {
+        if (ordinal >= slots.length()) {
+            throw new IllegalStateException("Currency #" + ordinal +
+                    " was registered after account " + owner + " was cached");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks guarding read-modify-write on a single {@code (uuid, currency)} account.
+ * <p>
+ * Uncontended acquisition is a single CAS, and different accounts almost always map to
+ * different stripes, so there is no global lock. Reads never lock.
+ */
+final class AccountLocks {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    AccountLocks(int concurrency) {
+        int size = Integer.highestOneBit(Math.max(16, concurrency - 1) << 1);
+        this.stripes = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) stripes[i] = new ReentrantLock();
+    }
+
+    private int index(UUID player, String currencyId) {
+        int h = player.hashCode() * 31 + currencyId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    ReentrantLock lock(UUID player, String currencyId) {
+        ReentrantLock lock = stripes[index(player, currencyId)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Lock two accounts of the same currency. Stripes are always taken in index order,
+     * so two opposite transfers cannot deadlock.
+     *
+     * @return the locks taken, to be passed to {@link #unlock(ReentrantLock[])}
+     */
+    ReentrantLock[] lockPair(UUID a, UUID b, String currencyId) {
+        int ia = index(a, currencyId);
+        int ib = index(b, currencyId);
+        if (ia == ib) {
+            stripes[ia].lock();
+            return new ReentrantLock[]{stripes[ia]};
+        }
+        ReentrantLock first = stripes[Math.min(ia, ib)];
+        ReentrantLock second = stripes[Math.max(ia, ib)];
+        first.lock();
+        try {
+            second.lock();
+        } catch (RuntimeException e) {
+            first.unlock();
+            throw e;
+        }
+        return new ReentrantLock[]{first, second};
+    }
+
+    /**
+     * Lock every currency of one account if no stripe is held right now, taking them in
+     * index order like {@link #lockPair}.
+     *
+     * @return the locks taken, or null if one was busy (then none is held)
+     */
+    ReentrantLock[] tryLockAll(UUID player, Collection<String> currencyIds) {
+        int[] indexes = currencyIds.stream().mapToInt(id -> index(player, id)).sorted().distinct().toArray();
+        ReentrantLock[] held = new ReentrantLock[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            if (!stripes[indexes[i]].tryLock()) {
+                unlock(Arrays.copyOf(held, i));
+                return null;
+            }
+            held[i] = stripes[indexes[i]];
+        }
+        return held;
+    }
+
+    void unlock(ReentrantLock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+    }
+}
@@ -0,0 +1,251 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * UUID-keyed open-addressing map of cached {@link Account}s.
+ * <p>
+ * Keys are stored as two primitive {@code long} arrays (no UUID or boxed objects per entry),
+ * probed linearly. The map is split into segments, each guarded by a {@link StampedLock}:
+ * lookups are optimistic and only fall back to a read lock if a writer raced with them.
+ */
+final class AccountStore {
+
+    private static final int SEGMENT_BITS = 5;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final int width;
+    private final Runnable onInsert;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param width number of currency slots in every new account
+     */
+    AccountStore(int width) {
+        this(width, () -> { });
+    }
+
+    /**
+     * @param onInsert called after an account was added, on the thread that added it
+     */
+    AccountStore(int width, Runnable onInsert) {
+        this.width = width;
+        this.onInsert = onInsert;
+        for (int i = 0; i < segments.length; i++) segments[i] = new Segment();
+    }
+
+    int width() { return width; }
+
+    Account get(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        return segments[h >>> (32 - SEGMENT_BITS)].get(msb, lsb, h);
+    }
+
+    /**
+     * Cached account of a player, created unloaded on a miss. Counts as a use for eviction.
+     */
+    Account getOrCreate(UUID id) {
+        Account a = get(id);
+        if (a == null) return putIfAbsent(new Account(id, width));
+        a.touch(System.currentTimeMillis());
+        return a;
+    }
+
+    /**
+     * Insert an account unless one with the same owner is already cached.
+     *
+     * @return the account now cached for that owner
+     */
+    Account putIfAbsent(Account account) {
+        UUID id = account.getOwner();
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Account cached = segments[h >>> (32 - SEGMENT_BITS)].putIfAbsent(msb, lsb, h, account);
+        if (cached == account) {
+            size.incrementAndGet();
+            onInsert.run();
+        }
+        return cached;
+    }
+
+    Account remove(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        Account removed = segments[h >>> (32 - SEGMENT_BITS)].remove(msb, lsb, h, null);
+        if (removed != null) size.decrementAndGet();
+        return removed;
+    }
+
+    /**
+     * Remove an account only if it is still the one cached for its owner.
+     */
+    boolean remove(Account account) {
+        UUID id = account.getOwner();
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int h = hash(msb, lsb);
+        if (segments[h >>> (32 - SEGMENT_BITS)].remove(msb, lsb, h, account) == null) return false;
+        size.decrementAndGet();
+        return true;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Visit every cached account. Accounts added or removed concurrently may or may not be seen.
+     */
+    void forEach(Consumer<Account> action) {
+        for (Segment s : segments) {
+            for (Account a : s.snapshot()) {
+                if (a != null) action.accept(a);
+            }
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // ─── Segment ───
+
+    private static final class Table {
+        final long[] msb;
+        final long[] lsb;
+        final Account[] values;
+
+        Table(int capacity) {
+            msb = new long[capacity];
+            lsb = new long[capacity];
+            values = new Account[capacity];
+        }
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private int size;
+
+        Account get(long msb, long lsb, int h) {
+            long stamp = lock.tryOptimisticRead();
+            Account a = find(table, msb, lsb, h);
+            if (lock.validate(stamp)) return a;
+            stamp = lock.readLock();
+            try {
+                return find(table, msb, lsb, h);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        Account putIfAbsent(long msb, long lsb, int h, Account account) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int mask = t.values.length - 1;
+                int i = h & mask;
+                while (t.values[i] != null) {
+                    if (t.msb[i] == msb && t.lsb[i] == lsb) return t.values[i];
+                    i = (i + 1) & mask;
+                }
+                t.msb[i] = msb;
+                t.lsb[i] = lsb;
+                t.values[i] = account;
+                if (++size * 2 > t.values.length) table = resize(t);
+                return account;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @param expected only remove this account, or null for any
+         */
+        Account remove(long msb, long lsb, int h, Account expected) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int mask = t.values.length - 1;
+                int i = h & mask;
+                while (t.values[i] != null) {
+                    if (t.msb[i] == msb && t.lsb[i] == lsb) {
+                        Account removed = t.values[i];
+                        if (expected != null && removed != expected) return null;
+                        shiftBack(t, i);
+                        size--;
+                        return removed;
+                    }
+                    i = (i + 1) & mask;
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        Account[] snapshot() {
+            long stamp = lock.readLock();
+            try {
+                return table.values.clone();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static Account find(Table t, long msb, long lsb, int h) {
+            Account[] values = t.values;
+            int mask = values.length - 1;
+            int i = h & mask;
+            // Bounded so a torn optimistic read can never spin forever
+            for (int n = 0; n < values.length; n++) {
+                Account a = values[i];
+                if (a == null) return null;
+                if (t.msb[i] == msb && t.lsb[i] == lsb) return a;
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * Backward-shift deletion: close the gap at {@code i} so later probes still reach their keys.
+         */
+        private static void shiftBack(Table t, int i) {
+            int mask = t.values.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (t.values[j] == null) break;
+                int home = hash(t.msb[j], t.lsb[j]) & mask;
+                boolean movable = (j > i) ? (home <= i || home > j) : (home <= i && home > j);
+                if (movable) {
+                    t.msb[i] = t.msb[j];
+                    t.lsb[i] = t.lsb[j];
+                    t.values[i] = t.values[j];
+                    i = j;
+                }
+            }
+            t.values[i] = null;
+        }
+
+        private static Table resize(Table old) {
+            Table t = new Table(old.values.length << 1);
+            int mask = t.values.length - 1;
+            for (int k = 0; k < old.values.length; k++) {
+                if (old.values[k] == null) continue;
+                int i = hash(old.msb[k], old.lsb[k]) & mask;
+                while (t.values[i] != null) i = (i + 1) & mask;
+                t.msb[i] = old.msb[k];
+                t.lsb[i] = old.lsb[k];
+                t.values[i] = old.values[k];
+            }
+            return t;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import jar.elem.elempoints.plugin.storage.BalanceChange;
+import jar.elem.elempoints.plugin.storage.StorageFactory;
+import jar.elem.elempoints.plugin.storage.StorageProvider;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Keeps the cache in step with other servers sharing the database.
+ * <p>
+ * Every interval each provider is asked for the rows written since the last poll
+ * ({@code WHERE updated >= ?}, served by an index), and cached accounts among them take
+ * the stored balance. Accounts that are not cached are ignored, so a poll costs one
+ * indexed range query per backend no matter how many players are online.
+ * <p>
+ * {@code updated} is stamped by the clock of the writing server, and a transaction can
+ * commit after a later one. Each poll therefore looks back a few seconds; rows seen twice
+ * are skipped by their row version, as are this server's own writes, whose versions the
+ * cache takes from the write itself. A backlog larger than one page is read in
+ * {@code (updated, uuid, currency)} order, each page starting right after the last row of
+ * the previous one, so rows sharing a millisecond are never skipped.
+ */
+final class ChangeFeed {
+
+    // Re-read window covering clock drift between servers and late commits
+    private static final long LOOKBACK_MS = 5000L;
+    private static final int PAGE = 1000;
+
+    private final ElemPointsPlugin plugin;
+    private final CurrencyManager manager;
+    private final StorageFactory storageFactory;
+    private final long intervalTicks;
+
+    // Only touched by the poll task, which never overlaps itself
+    private final Map<StorageProvider, Long> cursors = new IdentityHashMap<>();
+    // Last row of a full page, while catching up on a backlog
+    private final Map<StorageProvider, BalanceChange> positions = new IdentityHashMap<>();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private long startedAt;
+    private BukkitTask task;
+
+    ChangeFeed(ElemPointsPlugin plugin, CurrencyManager manager, StorageFactory storageFactory, long intervalTicks) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.storageFactory = storageFactory;
+        this.intervalTicks = Math.max(1L, intervalTicks);
+    }
+
+    void start() {
+        startedAt = System.currentTimeMillis();
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::poll, intervalTicks, intervalTicks);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void poll() {
+        // A slow database must not stack up polls
+        if (!polling.compareAndSet(false, true)) return;
+        try {
+            int applied = 0;
+            for (StorageProvider sp : storageFactory.all()) applied += poll(sp);
+            if (applied > 0 && plugin.getConfig().getBoolean("general.debug", false)) {
+                plugin.getLogger().info("[Storage] Refreshed " + applied + " balances changed by other servers.");
+            }
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    /**
+     * @return number of cached balances refreshed
+     */
+    private int poll(StorageProvider sp) {
+        // Resumes from the same cursor once the database is back
+        if (!sp.isAvailable()) return 0;
+        long now = System.currentTimeMillis();
+        long cursor = cursors.getOrDefault(sp, startedAt);
+        // While catching up on a backlog, page forward without looking back
+        BalanceChange after = positions.get(sp);
+        List<BalanceChange> changes;
+        try {
+            changes = sp.getChangesSince(cursor - LOOKBACK_MS, after, PAGE).join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.WARNING, "[Storage] Change feed poll failed", e.getCause());
+            return 0;
+        }
+
+        int applied = 0;
+        long newest = cursor;
+        for (BalanceChange change : changes) {
+            // The row may belong to a currency not registered here, or now living in another database
+            if (change.getCurrencyId() != null && storageFactory.getProvider(change.getCurrencyId()) == sp
+                    && manager.applyRemoteChange(change)) {
+                applied++;
+            }
+            newest = Math.max(newest, change.getUpdated());
+        }
+        boolean full = changes.size() >= PAGE;
+        // Never run ahead of our own clock, or a server whose clock is fast would hide the others
+        cursors.put(sp, full ? newest : Math.min(newest, now));
+        if (full) positions.put(sp, changes.get(changes.size() - 1));
+        else positions.remove(sp);
+        return applied;
+    }
+}
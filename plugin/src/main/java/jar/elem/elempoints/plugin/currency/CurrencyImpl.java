@@ -11,11 +11,14 @@ public final class CurrencyImpl implements Currency {
     private final CurrencyConfig config;
     private boolean enabled;
     private final String id;
+    private int ordinal = -1;
+    private final long scale;
 
     public CurrencyImpl(CurrencyConfig config, String id) {
         this.config = config;
         this.enabled = true;
         this.id = id;
+        this.scale = Currency.super.unitScale();
     }
 
     @Override
@@ -36,4 +39,77 @@ public final class CurrencyImpl implements Currency {
 
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
     public CurrencyConfig getConfig() { return config; }
+
+    /**
+     * Dense index of this currency in its {@link CurrencyRegistry}, used as the
+     * slot number in every cached {@link Account}.
+     */
+    public int getOrdinal() { return ordinal; }
+    void setOrdinal(int ordinal) { this.ordinal = ordinal; }
+
+    @Override public int getDecimals() { return config.getDecimals(); }
+    @Override public long unitScale() { return scale; }
+
+    /** True if balances are kept as exact minor units ({@code economy.decimals}). */
+    public boolean isFixedPoint() { return config.getDecimals() >= 0; }
+
+    // ═══════ Slot codec ═══════
+    //
+    // Fixed-point currencies store minor units in the slot and do integer math on it.
+    // The others store raw double bits and fall back to floating-point math.
+
+    /** Encode a balance into an {@link Account} slot. */
+    public long toSlot(double balance) {
+        if (isFixedPoint()) return clamp(Math.round(balance * scale));
+        // + 0.0 turns -0.0 into 0.0, whose bits can never collide with Account.UNLOADED
+        return Double.doubleToRawLongBits(balance + 0.0);
+    }
+
+    /** Decode an {@link Account} slot back into a balance. */
+    public double fromSlot(long slot) {
+        if (isFixedPoint()) return slot / (double) scale;
+        return Double.longBitsToDouble(slot);
+    }
+
+    /** Encode minor units (whole amounts for floating-point currencies) into a slot. */
+    public long unitsToSlot(long units) {
+        return isFixedPoint() ? clamp(units) : toSlot((double) units);
+    }
+
+    /** Decode a slot into minor units. */
+    public long slotToUnits(long slot) {
+        return isFixedPoint() ? slot : toMinorUnits(fromSlot(slot));
+    }
+
+    /** Sum of two slots, saturating instead of overflowing. */
+    public long add(long a, long b) {
+        if (!isFixedPoint()) return toSlot(fromSlot(a) + fromSlot(b));
+        long r = a + b;
+        if (((a ^ r) & (b ^ r)) < 0) return b > 0 ? Long.MAX_VALUE : Long.MIN_VALUE + 1;
+        return clamp(r);
+    }
+
+    /** Difference of two slots, saturating instead of overflowing. */
+    public long subtract(long a, long b) {
+        if (!isFixedPoint()) return toSlot(fromSlot(a) - fromSlot(b));
+        return add(a, -b);
+    }
+
+    /** {@code percent}% of a slot value, rounded to the currency's precision. */
+    public long percent(long slot, double percent) {
+        return toSlot(fromSlot(slot) * (percent / 100.0));
+    }
+
+    public int compare(long a, long b) {
+        return isFixedPoint() ? Long.compare(a, b) : Double.compare(fromSlot(a), fromSlot(b));
+    }
+
+    public int signum(long slot) {
+        return isFixedPoint() ? Long.signum(slot) : (int) Math.signum(fromSlot(slot));
+    }
+
+    private static long clamp(long units) {
+        // Long.MIN_VALUE is Account.UNLOADED
+        return units == Long.MIN_VALUE ? Long.MIN_VALUE + 1 : units;
+    }
 }
\ No newline at end of file
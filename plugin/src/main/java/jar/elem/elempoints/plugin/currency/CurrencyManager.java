@@ -2,34 +2,283 @@ package jar.elem.elempoints.plugin.currency;
 
 import jar.elem.elempoints.plugin.ElemPointsPlugin;
 import jar.elem.elempoints.plugin.config.CurrencyConfig;
+import jar.elem.elempoints.plugin.journal.Checkpoint;
+import jar.elem.elempoints.plugin.journal.Journal;
 import jar.elem.elempoints.api.event.BalanceChangeEvent;
 import jar.elem.elempoints.api.event.CurrencyRegisterEvent;
 import jar.elem.elempoints.api.event.TransferEvent;
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.api.result.TransactionResult;
+import jar.elem.elempoints.plugin.storage.BalanceChange;
+import jar.elem.elempoints.plugin.storage.DeltaResult;
+import jar.elem.elempoints.plugin.storage.HistoryWriter;
+import jar.elem.elempoints.plugin.storage.StorageExecutor;
 import jar.elem.elempoints.plugin.storage.StorageFactory;
 import jar.elem.elempoints.plugin.storage.StorageProvider;
+import jar.elem.elempoints.plugin.storage.StorageUnavailableException;
+import jar.elem.elempoints.plugin.storage.VersionedBalance;
+import jar.elem.elempoints.plugin.storage.WriteBehindQueue;
+import jar.elem.elempoints.plugin.storage.WriteSpool;
 import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 /**
  * Core manager for currency operations, caching, and event firing.
  */
 public final class CurrencyManager {
 
+    // Accounts per page when exporting between different databases
+    private static final int EXPORT_PAGE = 1000;
+    // History ids per parallel rollback scan
+    private static final int ROLLBACK_SCAN_RANGE = 100_000;
+    // Accounts read and written per rollback batch
+    private static final int ROLLBACK_BATCH = 1000;
+    // At most one blocking-load warning per this many millis
+    private static final long BLOCKING_REPORT_INTERVAL = 60_000L;
+
     private final ElemPointsPlugin plugin;
     private final CurrencyRegistry registry;
     private final StorageFactory storageFactory;
 
-    // Cache: currencyId → (uuid → balance)
-    private final Map<String, Map<UUID, Double>> cache = new ConcurrentHashMap<>();
+    // Cache: uuid → account with one primitive slot per currency ordinal
+    private volatile AccountStore accounts = new AccountStore(0);
+    private final AccountLocks locks = new AccountLocks(Runtime.getRuntime().availableProcessors() * 16);
+    private final OfflineCache cache;
+    // Cache misses being loaded; concurrent misses of the same balance share one load
+    private final ConcurrentHashMap<LoadKey, CompletableFuture<Long>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong lastBlockingReport = new AtomicLong();
+    private final long sweepIntervalTicks;
+    private volatile BukkitTask sweepTask;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // A sweep asked for by an insert is scheduled but has not started yet
+    private final AtomicBoolean sweepQueued = new AtomicBoolean();
+
+    // Null when write-behind is disabled (every change is written immediately)
+    private final WriteBehindQueue writeQueue;
+    // Null when disabled or in multi-server mode; writes the database refuses are then not kept
+    private final WriteSpool spool;
+    // Several servers share the database: deposits and withdrawals are stored as atomic deltas
+    private final boolean multiServer;
+    // Multi-server changes are compare-and-set writes on the row version instead of deltas
+    private final boolean optimistic;
+    private final int maxRetries;
+    private final JoinLoader joinLoader;
+    // Null unless multi-server polling is enabled
+    private final ChangeFeed changeFeed;
+    // Null when the transaction journal is disabled
+    private final Journal journal;
+    // Null until the journal is open, and while a failed replay still has to be retried
+    private volatile Checkpoint checkpoint;
+    // Null when transaction history is disabled
+    private final HistoryWriter history;
+    // Immediate writes (write-behind disabled) that have not completed yet
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong failedWrites = new AtomicLong();
+    // Runs async API wrappers and exports, which block on storage futures
+    private final StorageExecutor worker;
 
     public CurrencyManager(ElemPointsPlugin plugin, CurrencyRegistry registry, StorageFactory storageFactory) {
         this.plugin = plugin;
         this.registry = registry;
         this.storageFactory = storageFactory;
+        this.multiServer = plugin.getConfig().getBoolean("storage.multi-server.enabled", false);
+        this.optimistic = multiServer && "OPTIMISTIC".equalsIgnoreCase(
+                plugin.getConfig().getString("storage.multi-server.concurrency", "DELTA"));
+        this.maxRetries = Math.max(0, plugin.getConfig().getInt("storage.multi-server.max-retries", 5));
+        this.spool = !multiServer && plugin.getConfig().getBoolean("storage.spool.enabled", true)
+                ? new WriteSpool(plugin, storageFactory, new File(plugin.getDataFolder(), "spool"),
+                        plugin.getConfig().getLong("storage.spool.max-size", 64L) * 1024L * 1024L,
+                        plugin.getConfig().getInt("storage.spool.batch-size", 5000),
+                        plugin.getConfig().getLong("storage.spool.replay-interval", 40L),
+                        Math.max(16, plugin.getConfig().getInt("storage.executor.queue-size", 4096)),
+                        id -> registry.get(id) != null)
+                : null;
+        if (multiServer) {
+            // Buffered absolute values would overwrite changes made by the other servers
+            this.writeQueue = null;
+            plugin.getLogger().info("[Storage] Multi-server mode: balance changes are written as " +
+                    (optimistic ? "compare-and-set (optimistic)." : "deltas."));
+        } else if (plugin.getConfig().getBoolean("storage.write-behind.enabled", true)) {
+            this.writeQueue = new WriteBehindQueue(plugin, storageFactory,
+                    plugin.getConfig().getLong("storage.write-behind.flush-interval", 100L),
+                    plugin.getConfig().getInt("storage.write-behind.max-pending", 500), spool);
+        } else {
+            this.writeQueue = null;
+        }
+        // With virtual threads a waiting wrapper costs almost nothing, so allow as many
+        // in flight as the global backend can serve at once
+        boolean virtual = plugin.getConfig().getBoolean("storage.executor.virtual-threads", false);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        if (virtual) threads = Math.max(threads, storageFactory.getProvider(null).getExecutor().getConcurrency());
+        this.worker = new StorageExecutor("ElemPoints-Worker", threads,
+                Math.max(16, plugin.getConfig().getInt("storage.executor.queue-size", 4096)), virtual);
+        this.joinLoader = new JoinLoader(plugin, this,
+                plugin.getConfig().getLong("storage.join-batch.window", 1L),
+                plugin.getConfig().getInt("storage.join-batch.max-size", 100));
+        long pollInterval = plugin.getConfig().getLong("storage.multi-server.poll-interval", 20L);
+        this.changeFeed = multiServer && pollInterval > 0
+                ? new ChangeFeed(plugin, this, storageFactory, pollInterval) : null;
+        this.journal = plugin.getConfig().getBoolean("storage.journal.enabled", true)
+                ? new Journal(plugin, new File(plugin.getDataFolder(), "journal"),
+                        plugin.getConfig().getInt("storage.journal.segment-size", 8) * 1024 * 1024,
+                        plugin.getConfig().getInt("storage.journal.max-segments", 16),
+                        plugin.getConfig().getLong("storage.journal.sync-interval", 20L))
+                : null;
+        this.cache = new OfflineCache(Math.max(0, plugin.getConfig().getInt("storage.cache.max-offline", 10000)),
+                Math.max(0L, plugin.getConfig().getLong("storage.cache.expire-after-access", 30L)) * 60_000L);
+        this.sweepIntervalTicks = Math.max(20L, plugin.getConfig().getLong("storage.cache.sweep-interval", 600L));
+        this.history = plugin.getConfig().getBoolean("storage.history.enabled", true)
+                ? new HistoryWriter(plugin, storageFactory,
+                        plugin.getConfig().getLong("storage.history.flush-interval", 40L),
+                        plugin.getConfig().getInt("storage.history.max-pending", 50000))
+                : null;
+    }
+
+    /**
+     * Open the spool and the journal. If the previous run did not shut down cleanly, the
+     * balances it journaled after its last complete save are written to storage first.
+     * Called once all currencies are registered, before any player is loaded.
+     */
+    public void recover() {
+        if (spool != null) spool.open();
+        if (journal == null) return;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < registry.size(); i++) ids.add(registry.get(i).getId());
+        Checkpoint cp;
+        try {
+            cp = Checkpoint.load(new File(journal.getDirectory(), "checkpoint"));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "[Journal] Could not read the checkpoint, journal disabled", e);
+            return;
+        }
+        boolean recovered = true;
+        if (!cp.isClean()) {
+            try {
+                replay(cp);
+            } catch (IOException | CompletionException e) {
+                // Keep the old checkpoint so the next start replays again
+                recovered = false;
+                plugin.getLogger().log(Level.SEVERE, "[Journal] Recovery failed, it will be retried on the next start",
+                        e instanceof CompletionException ? e.getCause() : e);
+            }
+        }
+        journal.setFlushedSeq(cp.getFlushedSeq());
+        try {
+            journal.start(ids);
+            if (recovered) {
+                cp.open();
+                checkpoint = cp;
+            }
+        } catch (IOException e) {
+            // Appends are ignored until the next start
+            plugin.getLogger().log(Level.SEVERE, "[Journal] Could not open the journal, changes are not journaled", e);
+        }
+    }
+
+    /**
+     * Write the last journaled balance of every account changed after the checkpoint.
+     * Records are absolute balances, so writing them again is harmless.
+     */
+    private void replay(Checkpoint cp) throws IOException {
+        if (multiServer) {
+            // Every change reached storage before it was journaled
+            plugin.getLogger().warning("[Journal] Unclean shutdown detected; nothing to replay in multi-server mode.");
+            return;
+        }
+        Map<String, Map<UUID, Double>> latest = new HashMap<>();
+        long[] last = {cp.getFlushedSeq()};
+        int[] records = {0}, skipped = {0};
+        journal.read(cp.getFlushedSeq(), r -> {
+            last[0] = r.getSeq();
+            records[0]++;
+            if (r.getCurrencyId() == null || registry.get(r.getCurrencyId()) == null) {
+                skipped[0]++;
+                return;
+            }
+            latest.computeIfAbsent(r.getCurrencyId(), k -> new HashMap<>()).put(r.getPlayer(), r.getBalance());
+        });
+        int balances = 0;
+        for (Map.Entry<String, Map<UUID, Double>> e : latest.entrySet()) {
+            // Through the spool: behind anything spooled before the crash, and spooled if the database is down
+            (spool != null ? spool.bulkSetBalances(e.getKey(), e.getValue())
+                    : storageFactory.getProvider(e.getKey()).bulkSetBalances(e.getKey(), e.getValue())).join();
+            balances += e.getValue().size();
+        }
+        cp.flushed(last[0]);
+        plugin.getLogger().warning("[Journal] Unclean shutdown detected: replayed " + records[0] +
+                " journaled changes into " + balances + " balances.");
+        if (skipped[0] > 0) {
+            plugin.getLogger().warning("[Journal] Skipped " + skipped[0] + " changes of currencies that are no longer enabled.");
+        }
+    }
+
+    /**
+     * Start background flushing. Called once all currencies are registered.
+     */
+    public void start() {
+        if (writeQueue != null) writeQueue.start();
+        joinLoader.start();
+        if (changeFeed != null) changeFeed.start();
+        if (history != null) history.start();
+        if (spool != null) spool.start();
+        sweepTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sweep,
+                sweepIntervalTicks, sweepIntervalTicks);
+    }
+
+    /**
+     * Stop background flushing and write everything still pending.
+     */
+    public CompletableFuture<Void> shutdown() {
+        joinLoader.stop();
+        if (changeFeed != null) changeFeed.stop();
+        if (writeQueue != null) writeQueue.stop();
+        if (history != null) history.stop();
+        BukkitTask sweeper = sweepTask;
+        sweepTask = null;
+        if (sweeper != null) sweeper.cancel();
+        // Let in-flight async API calls land in the cache before the final flush
+        worker.shutdown(10_000L, plugin.getLogger());
+        CompletableFuture<Void> historyFlush = history != null
+                ? history.flush() : CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> saved = journal == null
+                ? saveAll().thenCombine(historyFlush, (a, b) -> null)
+                : save().thenCombine(historyFlush, (seq, v) -> seq).thenAccept(this::closeJournal);
+        // The final save may still be spooling
+        return spool == null ? saved : saved.whenComplete((v, t) -> spool.stop());
+    }
+
+    /**
+     * Stop the journal and mark a clean shutdown if everything up to {@code seq} was saved.
+     */
+    private void closeJournal(long seq) {
+        journal.stop();
+        Checkpoint cp = checkpoint;
+        if (cp == null) return;
+        if (seq < 0) {
+            plugin.getLogger().warning("[Journal] Not every balance was saved; the journal is replayed on the next start.");
+            return;
+        }
+        try {
+            cp.close(seq);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "[Journal] Could not save the checkpoint", e);
+        }
     }
 
     /**
@@ -38,212 +287,1244 @@ public final class CurrencyManager {
     public void registerCurrency(CurrencyConfig config) {
         CurrencyImpl impl = new CurrencyImpl(config, config.getId());
         registry.register(impl);
-        cache.put(config.getId(), new ConcurrentHashMap<>());
+        // Accounts are sized to the registry; currencies are registered before any player is cached
+        accounts = new AccountStore(registry.size(), this::accountAdded);
         storageFactory.initCurrency(config);
+        storageFactory.getMinorUnits().register(config.getId(), config.getDecimals());
         Bukkit.getPluginManager().callEvent(new CurrencyRegisterEvent(impl));
     }
 
     public CurrencyRegistry getRegistry() { return registry; }
+    public StorageFactory getStorage() { return storageFactory; }
 
     // ═══════ Balance Operations ═══════
+    //
+    // Public methods take amounts either as doubles or as minor units and convert them to
+    // slot values; all arithmetic and limit checks happen on slots, so fixed-point
+    // currencies never touch floating point.
 
     public double getBalance(UUID player, String currencyId) {
-        validateCurrency(currencyId);
-        Map<UUID, Double> cc = cache.get(currencyId);
-        if (cc != null && cc.containsKey(player)) {
-            return cc.get(player);
+        CurrencyImpl cur = currency(currencyId);
+        return cur.fromSlot(balance(accounts.getOrCreate(player), cur));
+    }
+
+    /**
+     * Cached balance, without ever waiting for storage. On a cache miss the balance starts
+     * loading in the background and the result is empty until it is cached; safe to poll.
+     */
+    public OptionalDouble tryGetBalance(UUID player, String currencyId) {
+        CurrencyImpl cur = currency(currencyId);
+        Account acc = accounts.getOrCreate(player);
+        long slot = acc.get(cur.getOrdinal());
+        if (slot != Account.UNLOADED) {
+            cache.hit();
+            return OptionalDouble.of(cur.fromSlot(slot));
         }
-        // Load from storage
-        StorageProvider sp = storageFactory.getProvider(currencyId);
-        double bal = sp.getBalance(player, currencyId).join();
-        if (bal < 0) {
-            // No account — create default
-            CurrencyImpl cur = registry.get(currencyId);
-            double def = cur != null ? cur.getDefaultBalance() : 0;
-            sp.createAccount(player, currencyId, def).join();
-            bal = def;
+        // A load already in flight will fill the slot; don't queue another task for it
+        if (!loading.containsKey(new LoadKey(player, cur.getId()))) {
+            offThread(() -> balance(acc, cur));
         }
-        if (cc != null) cc.put(player, bal);
-        return bal;
+        return OptionalDouble.empty();
+    }
+
+    public long getBalanceUnits(UUID player, String currencyId) {
+        CurrencyImpl cur = currency(currencyId);
+        return cur.slotToUnits(balance(accounts.getOrCreate(player), cur));
     }
 
     public TransactionResult setBalance(UUID player, String currencyId, double amount,
                                         BalanceChangeEvent.Reason reason, String source) {
-        validateCurrency(currencyId);
-        CurrencyImpl cur = registry.get(currencyId);
-        double old = getBalance(player, currencyId);
+        CurrencyImpl cur = currency(currencyId);
+        return setSlot(player, cur, cur.toSlot(amount), reason, source);
+    }
+
+    public TransactionResult setBalanceUnits(UUID player, String currencyId, long units,
+                                             BalanceChangeEvent.Reason reason, String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return setSlot(player, cur, cur.unitsToSlot(units), reason, source);
+    }
+
+    public TransactionResult deposit(UUID player, String currencyId, double amount,
+                                     BalanceChangeEvent.Reason reason, String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return depositSlot(player, cur, cur.toSlot(amount), reason, source);
+    }
+
+    public TransactionResult depositUnits(UUID player, String currencyId, long units,
+                                          BalanceChangeEvent.Reason reason, String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return depositSlot(player, cur, cur.unitsToSlot(units), reason, source);
+    }
+
+    public TransactionResult withdraw(UUID player, String currencyId, double amount,
+                                      BalanceChangeEvent.Reason reason, String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return withdrawSlot(player, cur, cur.toSlot(amount), reason, source);
+    }
+
+    public TransactionResult withdrawUnits(UUID player, String currencyId, long units,
+                                           BalanceChangeEvent.Reason reason, String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return withdrawSlot(player, cur, cur.unitsToSlot(units), reason, source);
+    }
+
+    public boolean has(UUID player, String currencyId, double amount) {
+        CurrencyImpl cur = currency(currencyId);
+        return cur.compare(balance(accounts.getOrCreate(player), cur), cur.toSlot(amount)) >= 0;
+    }
+
+    public boolean hasUnits(UUID player, String currencyId, long units) {
+        CurrencyImpl cur = currency(currencyId);
+        return cur.compare(balance(accounts.getOrCreate(player), cur), cur.unitsToSlot(units)) >= 0;
+    }
+
+    private TransactionResult setSlot(UUID player, CurrencyImpl cur, long target,
+                                      BalanceChangeEvent.Reason reason, String source) {
+        ReentrantLock lock = locks.lock(player, cur.getId());
+        try {
+            // Looked up under the lock, which the sweep needs to evict it
+            Account acc = accounts.getOrCreate(player);
+            if (optimistic) return applyVersioned(acc, cur, current -> null, current -> target, reason, source);
+            return apply(acc, cur, balance(acc, cur), target, reason, source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransactionResult depositSlot(UUID player, CurrencyImpl cur, long amount,
+                                          BalanceChangeEvent.Reason reason, String source) {
+        if (cur.signum(amount) <= 0) return TransactionResult.failure(TransactionResult.Status.ERROR, "Amount must be > 0");
+        ReentrantLock lock = locks.lock(player, cur.getId());
+        try {
+            Account acc = accounts.getOrCreate(player);
+            if (optimistic) {
+                return applyVersioned(acc, cur, current -> null, current -> cur.add(current, amount), reason, source);
+            }
+            long current = balance(acc, cur);
+            if (multiServer) return applyDelta(acc, cur, current, cur.add(current, amount), reason, source);
+            return apply(acc, cur, current, cur.add(current, amount), reason, source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private TransactionResult withdrawSlot(UUID player, CurrencyImpl cur, long amount,
+                                           BalanceChangeEvent.Reason reason, String source) {
+        if (cur.signum(amount) <= 0) return TransactionResult.failure(TransactionResult.Status.ERROR, "Amount must be > 0");
+        ReentrantLock lock = locks.lock(player, cur.getId());
+        try {
+            Account acc = accounts.getOrCreate(player);
+            if (optimistic) {
+                return applyVersioned(acc, cur, current -> insufficient(cur, current, amount),
+                        current -> cur.subtract(current, amount), reason, source);
+            }
+            long current = balance(acc, cur);
+            // The cached balance may be stale; the database guard decides instead
+            if (multiServer) return applyDelta(acc, cur, current, cur.subtract(current, amount), reason, source);
+            TransactionResult refused = insufficient(cur, current, amount);
+            if (refused != null) return refused;
+            return apply(acc, cur, current, cur.subtract(current, amount), reason, source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * INSUFFICIENT_FUNDS if {@code current} does not cover {@code amount}, otherwise null.
+     */
+    private static TransactionResult insufficient(CurrencyImpl cur, long current, long amount) {
+        if (cur.compare(current, amount) >= 0) return null;
+        return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, cur.fromSlot(current),
+                "Need " + cur.fromSlot(amount) + ", have " + cur.fromSlot(current));
+    }
+
+    /**
+     * Cached slot value of an account, loading it from storage on a miss.
+     */
+    private long balance(Account acc, CurrencyImpl cur) {
+        long slot = acc.get(cur.getOrdinal());
+        if (slot != Account.UNLOADED) {
+            cache.hit();
+            return slot;
+        }
+        cache.miss();
+        return load(acc, cur);
+    }
+
+    /**
+     * Key of a balance being loaded.
+     */
+    private static final class LoadKey {
+        final UUID player;
+        final String currencyId;
+
+        LoadKey(UUID player, String currencyId) {
+            this.player = player;
+            this.currencyId = currencyId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LoadKey)) return false;
+            LoadKey k = (LoadKey) o;
+            return player.equals(k.player) && currencyId.equals(k.currencyId);
+        }
+
+        @Override
+        public int hashCode() {
+            return player.hashCode() * 31 + currencyId.hashCode();
+        }
+    }
+
+    private long load(Account acc, CurrencyImpl cur) {
+        UUID player = acc.getOwner();
+        int ordinal = cur.getOrdinal();
+
+        // Not flushed yet — storage still has the old value
+        Account queued = writeQueue != null ? writeQueue.peek(cur.getId(), player) : null;
+        if (queued != null && queued != acc) {
+            long slot = queued.get(ordinal);
+            if (slot != Account.UNLOADED) return acc.load(ordinal, slot);
+        }
+
+        requireSpoolEmpty(cur.getId());
+        if (Bukkit.isPrimaryThread()) reportBlockingLoad(cur, player);
+
+        // Only one caller reads (and creates) the row; the others wait for its result
+        LoadKey key = new LoadKey(player, cur.getId());
+        CompletableFuture<Long> mine = new CompletableFuture<>();
+        CompletableFuture<Long> running = loading.putIfAbsent(key, mine);
+        if (running != null) return acc.load(ordinal, running.join());
+        try {
+            StorageProvider sp = storageFactory.getProvider(cur.getId());
+            double bal = sp.getBalance(player, cur.getId()).join();
+            if (bal < 0) {
+                // No account — create default
+                double def = cur.getDefaultBalance();
+                // Insert only if absent: another server may have created the row meanwhile
+                sp.createAccounts(player, Collections.singletonMap(cur.getId(), def)).join();
+                bal = def;
+            }
+            long slot = cur.toSlot(bal);
+            mine.complete(slot);
+            // A concurrent mutation may have filled the slot while we were loading
+            return acc.load(ordinal, slot);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Writes a validated slot value and updates the cache.
+     */
+    @FunctionalInterface
+    private interface Store {
+        /**
+         * @return false if storage refused the write and the cache was left as is
+         */
+        boolean write(long slot);
+    }
+
+    /**
+     * Validate, fire the event and store the new balance.
+     * Caller must hold the account lock, and {@code old} must be read under it.
+     */
+    private TransactionResult apply(Account acc, CurrencyImpl cur, long old, long target,
+                                    BalanceChangeEvent.Reason reason, String source) {
+        return apply(acc, cur, old, target, reason, source, slot -> {
+            store(acc, cur, slot);
+            return true;
+        });
+    }
+
+    /**
+     * Put a new balance in the cache and queue it for storage. Caller must hold the account lock.
+     */
+    private void store(Account acc, CurrencyImpl cur, long slot) {
+        acc.set(cur.getOrdinal(), slot);
+        if (writeQueue != null) {
+            writeQueue.enqueue(cur, acc);
+        } else if (spool != null) {
+            // Spooled writes take the balance at that time, never an older one
+            track(spool.setBalance(acc.getOwner(), cur.getId(), () -> cur.fromSlot(acc.get(cur.getOrdinal()))));
+        } else {
+            track(storageFactory.getProvider(cur.getId()).setBalance(acc.getOwner(), cur.getId(), cur.fromSlot(slot)));
+        }
+    }
+
+    /**
+     * @return the result, or null if {@code store} refused the write
+     */
+    private TransactionResult apply(Account acc, CurrencyImpl cur, long old, long target,
+                                    BalanceChangeEvent.Reason reason, String source, Store store) {
+        UUID player = acc.getOwner();
+        double oldBal = cur.fromSlot(old);
 
         // Enforce limits
-        if (cur.getMaxBalance() > 0 && amount > cur.getMaxBalance()) {
-            return TransactionResult.failure(TransactionResult.Status.MAX_BALANCE_EXCEEDED, old,
+        if (cur.getMaxBalance() > 0 && cur.compare(target, cur.toSlot(cur.getMaxBalance())) > 0) {
+            return TransactionResult.failure(TransactionResult.Status.MAX_BALANCE_EXCEEDED, oldBal,
                     "Max balance: " + cur.getMaxBalance());
         }
-        double minBal = cur.getConfig().getMinBalance();
-        if (amount < minBal) amount = minBal;
+        long minBal = cur.toSlot(cur.getConfig().getMinBalance());
+        if (cur.compare(target, minBal) < 0) target = minBal;
 
         // Fire event
-        BalanceChangeEvent event = new BalanceChangeEvent(player, cur, old, amount, reason, source);
+        double proposed = cur.fromSlot(target);
+        BalanceChangeEvent event = new BalanceChangeEvent(player, cur, oldBal, proposed, reason, source);
         Bukkit.getPluginManager().callEvent(event);
         if (event.isCancelled()) {
-            return TransactionResult.failure(TransactionResult.Status.CANCELLED_BY_EVENT, old, "Event cancelled");
+            return TransactionResult.failure(TransactionResult.Status.CANCELLED_BY_EVENT, oldBal, "Event cancelled");
+        }
+        // Keep the exact slot unless a listener changed the balance
+        long slot = event.getNewBalance() == proposed ? target : cur.toSlot(event.getNewBalance());
+        double finalAmount = cur.fromSlot(slot);
+
+        if (!store.write(slot)) return null;
+        record(acc, cur, cur.subtract(slot, old), slot, reason, source);
+        return TransactionResult.success(oldBal, finalAmount, Math.abs(cur.fromSlot(cur.subtract(slot, old))));
+    }
+
+    /**
+     * Optimistic multi-server counterpart of {@link #apply}: the new balance is written only
+     * if the row version is still the one the balance was read at. On a conflict the row is
+     * read again and the change re-validated, up to {@code max-retries} times, so listeners
+     * may see a contended change more than once. An account whose version is cached costs
+     * one round trip. Caller must hold the account lock.
+     *
+     * @param check  refuses the change for the current balance, or returns null to go on
+     * @param change computes the target from the current balance
+     */
+    private TransactionResult applyVersioned(Account acc, CurrencyImpl cur, LongFunction<TransactionResult> check,
+                                             LongUnaryOperator change, BalanceChangeEvent.Reason reason,
+                                             String source) {
+        UUID player = acc.getOwner();
+        int ordinal = cur.getOrdinal();
+        StorageProvider sp = storageFactory.getProvider(cur.getId());
+        try {
+            for (int attempt = 0; attempt <= maxRetries; attempt++) {
+                long version = acc.getVersion(ordinal);
+                if (version == Account.NO_VERSION || !acc.isLoaded(ordinal)) version = reload(acc, cur, sp);
+                long old = acc.get(ordinal);
+
+                TransactionResult refused = check.apply(old);
+                if (refused != null) return refused;
+
+                long expected = version;
+                TransactionResult result = apply(acc, cur, old, change.applyAsLong(old), reason, source, slot -> {
+                    if (!sp.compareAndSetBalance(player, cur.getId(), cur.fromSlot(slot), expected).join()) {
+                        return false;
+                    }
+                    acc.set(ordinal, slot);
+                    acc.setVersion(ordinal, expected + 1);
+                    return true;
+                });
+                if (result != null) return result;
+                // Another server wrote the row first
+                acc.setVersion(ordinal, Account.NO_VERSION);
+            }
+        } catch (CompletionException e) {
+            return storageError(cur, player, cur.fromSlot(acc.get(ordinal)), e);
         }
-        double finalAmount = event.getNewBalance();
+        return TransactionResult.failure(TransactionResult.Status.CONFLICT, cur.fromSlot(acc.get(ordinal)),
+                "Balance changed concurrently " + (maxRetries + 1) + " times");
+    }
 
-        // Update cache
-        Map<UUID, Double> cc = cache.get(currencyId);
-        if (cc != null) cc.put(player, finalAmount);
+    /**
+     * Read the stored balance and row version into the cache, creating the row if missing.
+     *
+     * @return the row version
+     */
+    private long reload(Account acc, CurrencyImpl cur, StorageProvider sp) {
+        UUID player = acc.getOwner();
+        VersionedBalance row = sp.getVersionedBalance(player, cur.getId()).join();
+        if (row == null) {
+            sp.createAccounts(player, Collections.singletonMap(cur.getId(), cur.getDefaultBalance())).join();
+            row = sp.getVersionedBalance(player, cur.getId()).join();
+            if (row == null) throw new CompletionException(new IllegalStateException("Account row missing after insert"));
+        }
+        acc.set(cur.getOrdinal(), cur.toSlot(row.getBalance()));
+        acc.setVersion(cur.getOrdinal(), row.getVersion());
+        return row.getVersion();
+    }
 
-        // Write to storage
-        storageFactory.getProvider(currencyId).setBalance(player, currencyId, finalAmount);
+    /**
+     * Multi-server counterpart of {@link #apply} for deposits and withdrawals.
+     * <p>
+     * Listeners see the cached balance, which another server may have changed since. The
+     * difference {@code target - old} is then applied in storage as one atomic delta,
+     * refused there if it would cross the balance limits, and the cache takes the value
+     * read back. Caller must hold the account lock.
+     */
+    private TransactionResult applyDelta(Account acc, CurrencyImpl cur, long old, long target,
+                                         BalanceChangeEvent.Reason reason, String source) {
+        UUID player = acc.getOwner();
+        double oldBal = cur.fromSlot(old);
 
-        return TransactionResult.success(old, finalAmount, Math.abs(finalAmount - old));
+        double proposed = cur.fromSlot(target);
+        BalanceChangeEvent event = new BalanceChangeEvent(player, cur, oldBal, proposed, reason, source);
+        Bukkit.getPluginManager().callEvent(event);
+        if (event.isCancelled()) {
+            return TransactionResult.failure(TransactionResult.Status.CANCELLED_BY_EVENT, oldBal, "Event cancelled");
+        }
+        long slot = event.getNewBalance() == proposed ? target : cur.toSlot(event.getNewBalance());
+        long deltaSlot = cur.subtract(slot, old);
+        double delta = cur.fromSlot(deltaSlot);
+
+        // Withdrawals need a stored balance that covers them, the same has(amount) rule as
+        // on a single server, and may not go below the minimum; deposits not above the maximum
+        Double min = cur.signum(deltaSlot) < 0 ? Math.max(0.0, cur.getConfig().getMinBalance()) : null;
+        Double max = cur.signum(deltaSlot) > 0 && cur.getMaxBalance() > 0 ? cur.getMaxBalance() : null;
+        DeltaResult stored;
+        try {
+            stored = storageFactory.getProvider(cur.getId()).addBalance(player, cur.getId(), delta, min, max).join();
+        } catch (CompletionException e) {
+            return storageError(cur, player, oldBal, e);
+        }
+        long now = cur.toSlot(stored.getBalance());
+        acc.set(cur.getOrdinal(), now);
+        // The change feed then skips this row, and rows of ours it already saw
+        acc.setVersion(cur.getOrdinal(), stored.getVersion());
+
+        if (!stored.isApplied()) {
+            if (min != null) {
+                return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, stored.getBalance(),
+                        "Need " + Math.abs(delta) + ", have " + stored.getBalance());
+            }
+            return TransactionResult.failure(TransactionResult.Status.MAX_BALANCE_EXCEEDED, stored.getBalance(),
+                    "Max balance: " + cur.getMaxBalance());
+        }
+        record(acc, cur, deltaSlot, now, reason, source);
+        return TransactionResult.success(cur.fromSlot(cur.subtract(now, deltaSlot)), stored.getBalance(),
+                Math.abs(delta));
     }
 
-    public TransactionResult deposit(UUID player, String currencyId, double amount,
-                                     BalanceChangeEvent.Reason reason, String source) {
-        if (amount <= 0) return TransactionResult.failure(TransactionResult.Status.ERROR, "Amount must be > 0");
-        double current = getBalance(player, currencyId);
-        return setBalance(player, currencyId, current + amount, reason, source);
+    /**
+     * A multi-server change that could not reach storage. While the database is known to
+     * be down the change is refused quietly: the breaker already reported the outage, and
+     * cached balances stay readable but cannot change until it recovers.
+     */
+    private TransactionResult storageError(CurrencyImpl cur, UUID player, double balance, CompletionException e) {
+        if (e.getCause() instanceof StorageUnavailableException) {
+            return TransactionResult.failure(TransactionResult.Status.ERROR, balance, "Storage unavailable");
+        }
+        plugin.getLogger().log(Level.SEVERE, "[Storage] Could not change '" + cur.getId() +
+                "' balance of " + player, e.getCause());
+        return TransactionResult.failure(TransactionResult.Status.ERROR, balance, "Storage error");
     }
 
-    public TransactionResult withdraw(UUID player, String currencyId, double amount,
-                                      BalanceChangeEvent.Reason reason, String source) {
-        if (amount <= 0) return TransactionResult.failure(TransactionResult.Status.ERROR, "Amount must be > 0");
-        double current = getBalance(player, currencyId);
-        if (current < amount) {
-            return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, current,
-                    "Need " + amount + ", have " + current);
+    /**
+     * Record an applied change in the journal and the transaction history. Called after
+     * the cache and the write queue have the new balance, so a flush never starts ahead
+     * of the journal.
+     */
+    private void record(Account acc, CurrencyImpl cur, long deltaSlot, long slot,
+                        BalanceChangeEvent.Reason reason, String source) {
+        double delta = cur.fromSlot(deltaSlot);
+        double balance = cur.fromSlot(slot);
+        if (journal != null) {
+            journal.append(acc.getOwner(), cur.getOrdinal(), delta, balance, reason, source);
+        }
+        if (history != null) {
+            history.add(new HistoryEntry(0, System.currentTimeMillis(), acc.getOwner(), cur.getId(),
+                    delta, balance, reason, source));
         }
-        return setBalance(player, currencyId, current - amount, reason, source);
     }
 
-    public boolean has(UUID player, String currencyId, double amount) {
-        return getBalance(player, currencyId) >= amount;
+    /**
+     * Take a balance written by another server into the cache, if the account is cached
+     * and the row is newer than what the cache last saw.
+     *
+     * @return true if the cache was updated
+     */
+    boolean applyRemoteChange(BalanceChange change) {
+        CurrencyImpl cur = registry.get(change.getCurrencyId());
+        Account acc = accounts.get(change.getPlayer());
+        if (cur == null || acc == null) return false;
+        int ordinal = cur.getOrdinal();
+        if (ordinal >= acc.width() || !acc.isLoaded(ordinal)) return false;
+
+        ReentrantLock lock = locks.lock(change.getPlayer(), cur.getId());
+        try {
+            long version = acc.getVersion(ordinal);
+            if (version != Account.NO_VERSION && change.getVersion() <= version) return false;
+            acc.set(ordinal, cur.toSlot(change.getBalance()));
+            acc.setVersion(ordinal, change.getVersion());
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // ═══════ Transfer ═══════
 
     public TransactionResult transfer(UUID from, UUID to, String currencyId, double amount) {
-        validateCurrency(currencyId);
-        CurrencyImpl cur = registry.get(currencyId);
+        CurrencyImpl cur = currency(currencyId);
+        return transferSlot(from, to, cur, cur.toSlot(amount));
+    }
+
+    public TransactionResult transferUnits(UUID from, UUID to, String currencyId, long units) {
+        CurrencyImpl cur = currency(currencyId);
+        return transferSlot(from, to, cur, cur.unitsToSlot(units));
+    }
 
+    private TransactionResult transferSlot(UUID from, UUID to, CurrencyImpl cur, long amount) {
+        String currencyId = cur.getId();
         if (!cur.isTransferEnabled()) {
             return TransactionResult.failure(TransactionResult.Status.TRANSFER_DISABLED, "Transfers disabled");
         }
-        if (amount < cur.getMinTransfer()) {
+        if (cur.compare(amount, cur.toSlot(cur.getMinTransfer())) < 0) {
             return TransactionResult.failure(TransactionResult.Status.BELOW_MINIMUM,
                     "Minimum: " + cur.getMinTransfer());
         }
 
-        double fee = amount * (cur.getTransferFee() / 100.0);
-        double totalCost = amount + fee;
-        double senderBal = getBalance(from, currencyId);
+        long fee = cur.percent(amount, cur.getTransferFee());
+        long totalCost = cur.add(amount, fee);
 
-        if (senderBal < totalCost) {
-            return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, senderBal,
-                    "Need " + totalCost + " (+" + fee + " fee)");
-        }
+        ReentrantLock[] held = locks.lockPair(from, to, currencyId);
+        try {
+            Account sender = accounts.getOrCreate(from);
+            Account receiver = accounts.getOrCreate(to);
+            long senderBal = balance(sender, cur);
 
-        // Fire transfer event
-        TransferEvent event = new TransferEvent(from, to, cur, amount, fee);
-        Bukkit.getPluginManager().callEvent(event);
-        if (event.isCancelled()) {
-            return TransactionResult.failure(TransactionResult.Status.CANCELLED_BY_EVENT, senderBal, "Event cancelled");
+            if (cur.compare(senderBal, totalCost) < 0) {
+                return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, cur.fromSlot(senderBal),
+                        "Need " + cur.fromSlot(totalCost) + " (+" + cur.fromSlot(fee) + " fee)");
+            }
+
+            // Fire transfer event
+            TransferEvent event = new TransferEvent(from, to, cur, cur.fromSlot(amount), cur.fromSlot(fee));
+            Bukkit.getPluginManager().callEvent(event);
+            if (event.isCancelled()) {
+                return TransactionResult.failure(TransactionResult.Status.CANCELLED_BY_EVENT,
+                        cur.fromSlot(senderBal), "Event cancelled");
+            }
+
+            long fAmount = event.getAmount() == cur.fromSlot(amount) ? amount : cur.toSlot(event.getAmount());
+            long fFee = event.getFee() == cur.fromSlot(fee) ? fee : cur.toSlot(event.getFee());
+            long fTotal = cur.add(fAmount, fFee);
+
+            if (cur.compare(senderBal, fTotal) < 0) {
+                return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS,
+                        cur.fromSlot(senderBal), "After event");
+            }
+
+            if (multiServer) return transferShared(sender, receiver, cur, senderBal, fAmount, fTotal);
+
+            // Refuse before the debit what the receiver's limit would refuse after it
+            long receiverBal = balance(receiver, cur);
+            if (cur.getMaxBalance() > 0
+                    && cur.compare(cur.add(receiverBal, fAmount), cur.toSlot(cur.getMaxBalance())) > 0) {
+                return TransactionResult.failure(TransactionResult.Status.MAX_BALANCE_EXCEEDED,
+                        cur.fromSlot(senderBal), "Receiver max balance: " + cur.getMaxBalance());
+            }
+
+            TransactionResult sent = apply(sender, cur, senderBal, cur.subtract(senderBal, fTotal),
+                    BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:send");
+            if (!sent.isSuccess()) return sent;
+
+            TransactionResult received = apply(receiver, cur, receiverBal, cur.add(receiverBal, fAmount),
+                    BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:receive");
+            if (!received.isSuccess()) {
+                // A listener refused the credit: give the sender back what was taken. No event,
+                // since the listener that refused the credit could refuse the refund as well
+                long debited = sender.get(cur.getOrdinal());
+                store(sender, cur, senderBal);
+                record(sender, cur, cur.subtract(senderBal, debited), senderBal,
+                        BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:refund");
+                return received;
+            }
+
+            return TransactionResult.success(cur.fromSlot(senderBal), sent.getNewBalance(), cur.fromSlot(fAmount));
+        } finally {
+            locks.unlock(held);
         }
+    }
 
-        double fAmount = event.getAmount();
-        double fFee = event.getFee();
-        double fTotal = fAmount + fFee;
+    /**
+     * Multi-server transfer: a guarded withdrawal from the sender, then a deposit to the
+     * receiver. If the deposit is refused the sender is refunded with an unguarded delta
+     * and no event. Caller holds both locks.
+     */
+    private TransactionResult transferShared(Account sender, Account receiver, CurrencyImpl cur,
+                                             long senderBal, long amount, long total) {
+        TransactionResult sent = optimistic
+                ? applyVersioned(sender, cur, current -> insufficient(cur, current, total),
+                        current -> cur.subtract(current, total), BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:send")
+                : applyDelta(sender, cur, senderBal, cur.subtract(senderBal, total),
+                        BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:send");
+        if (!sent.isSuccess()) return sent;
 
-        if (senderBal < fTotal) {
-            return TransactionResult.failure(TransactionResult.Status.INSUFFICIENT_FUNDS, senderBal, "After event");
+        TransactionResult received = credit(receiver, cur, amount, "transfer:receive");
+        if (!received.isSuccess()) {
+            // What was actually taken: a listener may have changed the debit
+            long debited = cur.subtract(cur.toSlot(sent.getOldBalance()), cur.toSlot(sent.getNewBalance()));
+            if (!refundShared(sender, cur, debited)) {
+                return TransactionResult.failure(TransactionResult.Status.ERROR, sent.getNewBalance(),
+                        "Transfer refused and the refund failed");
+            }
+            return received;
         }
+        return TransactionResult.success(sent.getOldBalance(), sent.getNewBalance(), cur.fromSlot(amount));
+    }
 
-        setBalance(from, currencyId, senderBal - fTotal,
-                BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:send");
-        deposit(to, currencyId, fAmount,
-                BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:receive");
+    /**
+     * Give a multi-server sender back {@code amount}. Neither the limits nor listeners can
+     * refuse it; only storage can, which is logged since the sender is then short.
+     *
+     * @return false if storage failed
+     */
+    private boolean refundShared(Account sender, CurrencyImpl cur, long amount) {
+        UUID player = sender.getOwner();
+        int ordinal = cur.getOrdinal();
+        DeltaResult stored;
+        try {
+            stored = storageFactory.getProvider(cur.getId())
+                    .addBalance(player, cur.getId(), cur.fromSlot(amount), null, null).join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.SEVERE, "[Storage] Could not refund " + cur.fromSlot(amount) + " '" +
+                    cur.getId() + "' to " + player + " after a refused transfer; the sender is short by it",
+                    e.getCause());
+            return false;
+        }
+        long now = cur.toSlot(stored.getBalance());
+        sender.set(ordinal, now);
+        sender.setVersion(ordinal, stored.getVersion());
+        record(sender, cur, amount, now, BalanceChangeEvent.Reason.PLAYER_TRANSFER, "transfer:refund");
+        return true;
+    }
 
-        return TransactionResult.success(senderBal, senderBal - fTotal, fAmount);
+    private TransactionResult credit(Account acc, CurrencyImpl cur, long amount, String source) {
+        if (optimistic) {
+            return applyVersioned(acc, cur, current -> null, current -> cur.add(current, amount),
+                    BalanceChangeEvent.Reason.PLAYER_TRANSFER, source);
+        }
+        long current = balance(acc, cur);
+        return applyDelta(acc, cur, current, cur.add(current, amount), BalanceChangeEvent.Reason.PLAYER_TRANSFER, source);
     }
 
     // ═══════ Export ═══════
 
     public CompletableFuture<Integer> exportData(String fromId, String toId, double rate) {
-        return CompletableFuture.supplyAsync(() -> {
+        return exportData(fromId, toId, rate, n -> { });
+    }
+
+    /**
+     * Add {@code rate ×} every balance of one currency to another.
+     * <p>
+     * If both currencies live in the same database this is a single {@code INSERT ... SELECT}.
+     * Otherwise the source is read in uuid-ordered pages and each page is added to the target
+     * with one batch write, so memory stays bounded by the page size. Either way the target
+     * rows are changed additively, keeping whatever was written to them meanwhile, and
+     * cached accounts take the same credit in the cache.
+     *
+     * @param progress receives the number of accounts converted so far, from a worker thread
+     */
+    public CompletableFuture<Integer> exportData(String fromId, String toId, double rate, IntConsumer progress) {
+        return async(() -> {
+            // Storage must reflect the cache before we read from it
+            saveAll().join();
+            requireSpoolEmpty(fromId, toId);
+
+            CurrencyImpl toCur = currency(toId);
             StorageProvider fromSp = storageFactory.getProvider(fromId);
             StorageProvider toSp = storageFactory.getProvider(toId);
 
-            Map<UUID, Double> fromBalances = fromSp.getAllBalances(fromId).join();
-            Map<UUID, Double> converted = new HashMap<>();
+            int count;
+            if (fromSp == toSp) {
+                count = fromSp.mergeCurrency(fromId, toId, rate).join();
+                creditCached(toCur, mergedCredits(fromSp, fromId, toCur, rate));
+                progress.accept(count);
+            } else {
+                count = 0;
+                UUID after = null;
+                while (true) {
+                    LinkedHashMap<UUID, Double> page = fromSp.getBalancePage(fromId, after, EXPORT_PAGE).join();
+                    if (page.isEmpty()) break;
+
+                    Map<UUID, Long> credits = new HashMap<>(page.size() * 2);
+                    Map<UUID, Double> amounts = new HashMap<>(page.size() * 2);
+                    for (Map.Entry<UUID, Double> e : page.entrySet()) {
+                        long credit = toCur.toSlot(e.getValue() * rate);
+                        credits.put(e.getKey(), credit);
+                        amounts.put(e.getKey(), toCur.fromSlot(credit));
+                        after = e.getKey();
+                    }
+                    toSp.bulkAddBalances(toId, amounts).join();
+                    creditCached(toCur, credits);
+
+                    count += page.size();
+                    progress.accept(count);
+                    if (page.size() < EXPORT_PAGE) break;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * What an in-database merge credited to the accounts cached with a loaded target balance,
+     * from their source balances.
+     */
+    private Map<UUID, Long> mergedCredits(StorageProvider sp, String fromId, CurrencyImpl toCur, double rate) {
+        int ordinal = toCur.getOrdinal();
+        List<UUID> cached = new ArrayList<>();
+        accounts.forEach(acc -> {
+            if (acc.isLoaded(ordinal)) cached.add(acc.getOwner());
+        });
+        Map<UUID, Long> credits = new HashMap<>(cached.size() * 2);
+        if (cached.isEmpty()) return credits;
+        List<String> only = Collections.singletonList(fromId);
+        for (int i = 0; i < cached.size(); i += EXPORT_PAGE) {
+            sp.loadAccounts(cached.subList(i, Math.min(i + EXPORT_PAGE, cached.size())), only).join()
+                    .forEach((uuid, row) -> {
+                        Double bal = row.get(fromId);
+                        if (bal != null) credits.put(uuid, toCur.toSlot(bal * rate));
+                    });
+        }
+        return credits;
+    }
+
+    /**
+     * Add credits that were written to storage to the cached balances too. Under the account
+     * lock the credit goes on top of whatever the balance is now, so changes made during the
+     * export, and changes still waiting for write-behind, are kept. On a single server the
+     * cache is then written back like any change, overwriting the row with the same sum;
+     * with several servers the row already has it and the cache just follows.
+     */
+    private void creditCached(CurrencyImpl cur, Map<UUID, Long> credits) {
+        int ordinal = cur.getOrdinal();
+        credits.forEach((uuid, credit) -> {
+            if (accounts.get(uuid) == null) return;
+            ReentrantLock lock = locks.lock(uuid, cur.getId());
+            try {
+                // Looked up under the lock, so an account evicted meanwhile is not credited
+                Account acc = accounts.get(uuid);
+                if (acc == null || ordinal >= acc.width() || !acc.isLoaded(ordinal)) return;
+                long slot = cur.add(acc.get(ordinal), credit);
+                if (multiServer) {
+                    acc.set(ordinal, slot);
+                    acc.setVersion(ordinal, Account.NO_VERSION);
+                } else {
+                    store(acc, cur, slot);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // ═══════ Rollback ═══════
 
-            for (Map.Entry<UUID, Double> e : fromBalances.entrySet()) {
-                UUID uuid = e.getKey();
-                double existing = toSp.getBalance(uuid, toId).join();
-                if (existing < 0) existing = 0;
-                converted.put(uuid, existing + (e.getValue() * rate));
+    /**
+     * Set balances back to what they were at {@code time}, reconstructed from the history.
+     * <p>
+     * An account's balance at that time is the balance before its first change after it, so
+     * only the history since then is read: its id range is split into slices scanned in
+     * parallel. The result is written with one {@code bulkSetBalances} per batch of accounts,
+     * and cached accounts are updated to match. Changes made while the rollback runs may be
+     * overwritten. Accounts without history after {@code time} are left alone. Refused if
+     * history entries were dropped since {@code time}, as the result would be wrong.
+     *
+     * @param player only this player, or null for every account of the currency
+     * @param apply  false for a dry run that only reports the differences
+     */
+    public CompletableFuture<RollbackResult> rollback(String currencyId, UUID player, long time, boolean apply,
+                                                      String source) {
+        CurrencyImpl cur = currency(currencyId);
+        return async(() -> {
+            // Storage and the history must reflect the cache before we read them
+            saveAll().join();
+            if (history != null) history.flush().join();
+            requireSpoolEmpty(currencyId);
+            // Dropped entries leave accounts whose oldest change since then is unknown
+            if (history != null && history.getLastDropped() >= time) {
+                throw new IllegalStateException(history.getDropped() + " history entries were dropped since " +
+                        new Date(history.getLastDropped()) + " (history queue full), a rollback to " +
+                        new Date(time) + " would miss them");
             }
 
-            toSp.bulkSetBalances(toId, converted).join();
+            StorageProvider sp = storageFactory.getProvider(currencyId);
+            LongAdder scanned = new LongAdder();
+            Map<UUID, Long> targets = rollbackTargets(sp, cur, player, time, scanned);
 
-            // Update cache
-            Map<UUID, Double> toCache = cache.get(toId);
-            if (toCache != null) toCache.putAll(converted);
+            List<RollbackResult.Change> changes = new ArrayList<>();
+            List<UUID> ids = new ArrayList<>(targets.keySet());
+            List<String> only = Collections.singletonList(currencyId);
+            for (int i = 0; i < ids.size(); i += ROLLBACK_BATCH) {
+                List<UUID> batch = ids.subList(i, Math.min(i + ROLLBACK_BATCH, ids.size()));
+                Map<UUID, Map<String, Double>> rows = sp.loadAccounts(batch, only).join();
+                Map<UUID, Double> write = new HashMap<>(batch.size() * 2);
+                for (UUID id : batch) {
+                    Map<String, Double> row = rows.get(id);
+                    Double stored = row != null ? row.get(currencyId) : null;
+                    if (stored == null) continue;
+                    long current = cur.toSlot(stored);
+                    long target = targets.get(id);
+                    if (cur.compare(current, target) == 0) continue;
+                    changes.add(new RollbackResult.Change(id, cur.fromSlot(current), cur.fromSlot(target)));
+                    write.put(id, cur.fromSlot(target));
+                }
+                if (apply && !write.isEmpty()) {
+                    sp.bulkSetBalances(currencyId, write).join();
+                    reconcile(cur, write, rows, source);
+                }
+            }
+            changes.sort(Comparator.comparingDouble(
+                    (RollbackResult.Change c) -> -Math.abs(c.getTarget() - c.getCurrent())));
+            if (apply && !changes.isEmpty()) {
+                plugin.getLogger().warning("[Storage] Rolled back " + changes.size() + " '" + currencyId +
+                        "' balances to " + new Date(time) + " (" + source + ").");
+            }
+            return new RollbackResult(currencyId, time, apply, scanned.sum(), changes);
+        });
+    }
+
+    /**
+     * Balance slot of every account at {@code time}: the balance before its first change after it.
+     */
+    private Map<UUID, Long> rollbackTargets(StorageProvider sp, CurrencyImpl cur, UUID player, long time,
+                                            LongAdder scanned) {
+        long[] bounds = sp.getHistoryBounds(time).join();
+        if (bounds == null) return Collections.emptyMap();
+
+        List<CompletableFuture<Map<UUID, long[]>>> slices = new ArrayList<>();
+        for (long from = bounds[0]; from <= bounds[1]; from += ROLLBACK_SCAN_RANGE) {
+            long to = Math.min(from + ROLLBACK_SCAN_RANGE, bounds[1] + 1);
+            Map<UUID, long[]> first = new HashMap<>();
+            // Oldest change per account: by the time taken under its lock, ids only break ties.
+            // Entries of a slice arrive in id order, so an equal time never replaces an earlier id
+            slices.add(sp.scanHistory(cur.getId(), player, time, from, to, e -> first.merge(e.getPlayer(),
+                    new long[]{e.getTimestamp(), cur.subtract(cur.toSlot(e.getBalance()), cur.toSlot(e.getDelta()))},
+                    CurrencyManager::older))
+                    .thenApply(n -> {
+                        scanned.add(n);
+                        return first;
+                    }));
+        }
+        // Slices are in id order too, so merging them in order keeps the same tie-break
+        Map<UUID, long[]> oldest = new HashMap<>();
+        for (CompletableFuture<Map<UUID, long[]>> slice : slices) {
+            slice.join().forEach((id, change) -> oldest.merge(id, change, CurrencyManager::older));
+        }
+        Map<UUID, Long> targets = new HashMap<>(oldest.size() * 2);
+        oldest.forEach((id, change) -> targets.put(id, change[1]));
+        return targets;
+    }
 
-            return converted.size();
+    /**
+     * Of two {@code {time, balance before}} changes, the earlier; {@code a} on a tie.
+     */
+    private static long[] older(long[] a, long[] b) {
+        return b[0] < a[0] ? b : a;
+    }
+
+    /**
+     * Bring cached accounts in line with balances just written to storage, and record the
+     * changes in the history.
+     */
+    private void reconcile(CurrencyImpl cur, Map<UUID, Double> written, Map<UUID, Map<String, Double>> before,
+                           String source) {
+        int ordinal = cur.getOrdinal();
+        long now = System.currentTimeMillis();
+        written.forEach((uuid, bal) -> {
+            Account acc = accounts.get(uuid);
+            if (acc != null && ordinal < acc.width() && acc.isLoaded(ordinal)) {
+                ReentrantLock lock = locks.lock(uuid, cur.getId());
+                try {
+                    acc.set(ordinal, cur.toSlot(bal));
+                    // The stored version moved on; compare-and-set re-reads it
+                    if (multiServer) acc.setVersion(ordinal, Account.NO_VERSION);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (history != null) {
+                double old = before.get(uuid).get(cur.getId());
+                history.add(new HistoryEntry(0, now, uuid, cur.getId(),
+                        cur.fromSlot(cur.subtract(cur.toSlot(bal), cur.toSlot(old))), bal,
+                        BalanceChangeEvent.Reason.ROLLBACK, source));
+            }
         });
     }
 
     // ═══════ Async wrappers ═══════
 
+    /**
+     * Completes at once if the balance is cached; never runs the load on the caller's thread.
+     */
     public CompletableFuture<Double> getBalanceAsync(UUID player, String currencyId) {
-        return CompletableFuture.supplyAsync(() -> getBalance(player, currencyId));
+        CurrencyImpl cur = currency(currencyId);
+        Account acc = accounts.getOrCreate(player);
+        long slot = acc.get(cur.getOrdinal());
+        if (slot != Account.UNLOADED) {
+            cache.hit();
+            return CompletableFuture.completedFuture(cur.fromSlot(slot));
+        }
+        return offThread(() -> cur.fromSlot(balance(acc, cur)));
+    }
+
+    /**
+     * Run a task on the worker, or on a Bukkit async thread if the worker queue is full,
+     * but never on the calling thread, which may be the server thread.
+     */
+    private <T> CompletableFuture<T> offThread(Supplier<T> task) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        Runnable r = () -> {
+            try {
+                f.complete(task.get());
+            } catch (Throwable t) {
+                f.completeExceptionally(t);
+            }
+        };
+        if (!worker.tryExecute(r)) Bukkit.getScheduler().runTaskAsynchronously(plugin, r);
+        return f;
+    }
+
+    /**
+     * Run a task on the worker. Off the server thread a full queue runs it on the caller,
+     * which slows the caller down; on the server thread it goes through {@link #offThread}
+     * instead, so a burst of calls never runs a query on the tick.
+     */
+    private <T> CompletableFuture<T> async(Supplier<T> task) {
+        if (Bukkit.isPrimaryThread()) return offThread(task);
+        return CompletableFuture.supplyAsync(task, worker);
     }
 
     public CompletableFuture<TransactionResult> depositAsync(UUID player, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() ->
-                deposit(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
+        return async(() -> deposit(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
     }
 
     public CompletableFuture<TransactionResult> withdrawAsync(UUID player, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() ->
-                withdraw(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
+        return async(() -> withdraw(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
     }
 
     public CompletableFuture<TransactionResult> setBalanceAsync(UUID player, String currencyId, double amount) {
-        return CompletableFuture.supplyAsync(() ->
-                setBalance(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
+        return async(() -> setBalance(player, currencyId, amount, BalanceChangeEvent.Reason.API_CALL, "async"));
+    }
+
+    // ═══════ History ═══════
+
+    /**
+     * One page of a player's transaction history, newest first. Changes show up once the
+     * history writer has flushed them.
+     *
+     * @param beforeId id of the last entry of the previous page, or 0 for the newest page
+     */
+    public CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit) {
+        return storageFactory.getProvider(currencyId).getHistory(player, currencyId, beforeId, Math.max(1, limit));
     }
 
     // ═══════ Player cache ═══════
 
     public void loadPlayer(UUID player) {
-        for (String id : cache.keySet()) {
-            getBalance(player, id);
+        loadPlayers(Collections.singletonList(player));
+    }
+
+    /**
+     * Queue a player for the next batched load. Concurrent joins share one query per backend.
+     */
+    public CompletableFuture<Void> loadPlayerAsync(UUID player) {
+        return joinLoader.submit(player);
+    }
+
+    /**
+     * Load every currency of several online players with one query per storage backend,
+     * creating missing rows with one insert per player. Pinning is up to the caller
+     * ({@link #pinPlayer}), so a player who left before the load ran stays evictable.
+     * <p>
+     * Balances already being loaded by a concurrent cache miss are not queried again; the
+     * batch waits for that load instead, and misses during the batch wait for the batch.
+     * If a backend cannot be read its balances stay unloaded, never defaulted, and the
+     * failure is thrown once the other backends are loaded.
+     */
+    public void loadPlayers(Collection<UUID> players) {
+        // currencyId → accounts that still need it
+        Map<String, List<Account>> missing = new LinkedHashMap<>();
+        Map<LoadKey, CompletableFuture<Long>> claimed = new HashMap<>();
+        List<Runnable> shared = new ArrayList<>();
+        for (UUID player : players) {
+            Account acc = accounts.getOrCreate(player);
+            for (CurrencyImpl cur : registry.all()) {
+                int ordinal = cur.getOrdinal();
+                if (acc.isLoaded(ordinal)) continue;
+                Account queued = writeQueue != null ? writeQueue.peek(cur.getId(), player) : null;
+                if (queued != null && queued != acc && queued.isLoaded(ordinal)) {
+                    acc.load(ordinal, queued.get(ordinal));
+                    continue;
+                }
+                // Loaded on first use once the spool is written back
+                if (spool != null && spool.isPending(cur.getId())) continue;
+                LoadKey key = new LoadKey(player, cur.getId());
+                CompletableFuture<Long> mine = new CompletableFuture<>();
+                CompletableFuture<Long> running = loading.putIfAbsent(key, mine);
+                if (running != null) {
+                    shared.add(() -> acc.load(ordinal, running.join()));
+                    continue;
+                }
+                claimed.put(key, mine);
+                missing.computeIfAbsent(cur.getId(), k -> new ArrayList<>()).add(acc);
+            }
+        }
+        try {
+            if (!missing.isEmpty()) loadMissing(missing, claimed);
+        } finally {
+            claimed.forEach((key, f) -> {
+                // Anything not completed failed to load; its waiters retry on their next access
+                f.completeExceptionally(new IllegalStateException("Loading " + key.currencyId + " failed"));
+                loading.remove(key, f);
+            });
         }
+        for (Runnable r : shared) {
+            try {
+                r.run();
+            } catch (CompletionException e) {
+                // Left unloaded; the next access loads it again
+            }
+        }
+    }
+
+    /**
+     * A cache miss is about to wait for storage on the server thread. Warn, with the
+     * caller's stack, at most once a minute.
+     */
+    private void reportBlockingLoad(CurrencyImpl cur, UUID player) {
+        cache.blockingLoad();
+        long now = System.currentTimeMillis();
+        long last = lastBlockingReport.get();
+        if (now - last < BLOCKING_REPORT_INTERVAL || !lastBlockingReport.compareAndSet(last, now)) return;
+        plugin.getLogger().log(Level.WARNING, "[Storage] Loading '" + cur.getId() + "' of " + player +
+                " blocked the server thread (" + cache.getBlockingLoads() + " times so far). " +
+                "Use tryGetBalance or getBalanceAsync for players who may be offline.",
+                new Throwable("Blocking load called from here"));
     }
 
+    private void loadMissing(Map<String, List<Account>> missing, Map<LoadKey, CompletableFuture<Long>> claimed) {
+        // Issue every backend's query before waiting on any of them
+        Map<StorageProvider, List<String>> groups = storageFactory.groupByProvider(missing.keySet());
+        Map<StorageProvider, CompletableFuture<Map<UUID, Map<String, Double>>>> loads = new IdentityHashMap<>();
+        groups.forEach((sp, ids) -> {
+            Set<UUID> uuids = new LinkedHashSet<>();
+            for (String id : ids) {
+                for (Account acc : missing.get(id)) uuids.add(acc.getOwner());
+            }
+            loads.put(sp, sp.loadAccounts(uuids, ids));
+        });
+
+        List<CompletableFuture<Void>> creates = new ArrayList<>();
+        CompletionException failure = null;
+        for (Map.Entry<StorageProvider, List<String>> e : groups.entrySet()) {
+            StorageProvider sp = e.getKey();
+            Map<UUID, Map<String, Double>> found;
+            try {
+                found = loads.get(sp).join();
+            } catch (CompletionException ex) {
+                // Unread is not missing: leave these claims to fail instead of defaulting them
+                if (failure == null) failure = ex;
+                continue;
+            }
+            Map<UUID, Map<String, Double>> created = new HashMap<>();
+            for (String id : e.getValue()) {
+                CurrencyImpl cur = registry.get(id);
+                for (Account acc : missing.get(id)) {
+                    Map<String, Double> row = found.get(acc.getOwner());
+                    Double bal = row != null ? row.get(id) : null;
+                    if (bal == null) {
+                        bal = cur.getDefaultBalance();
+                        created.computeIfAbsent(acc.getOwner(), k -> new HashMap<>()).put(id, bal);
+                    }
+                    long slot = cur.toSlot(bal);
+                    claimed.get(new LoadKey(acc.getOwner(), id)).complete(slot);
+                    acc.load(cur.getOrdinal(), slot);
+                }
+            }
+            created.forEach((uuid, defaults) -> creates.add(sp.createAccounts(uuid, defaults)));
+        }
+        CompletableFuture.allOf(creates.toArray(new CompletableFuture[0])).join();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Keep a player's account cached while they are online. Called on the server thread
+     * when they join, like {@link #unloadPlayer} when they leave, so the two never race.
+     */
+    public void pinPlayer(UUID player) {
+        accounts.getOrCreate(player).setPinned(true);
+    }
+
+    /**
+     * Unpin a player who left. The account stays cached as an offline account until the
+     * sweep evicts it, so a quick rejoin needs no query.
+     */
     public void unloadPlayer(UUID player) {
-        for (Map<UUID, Double> cc : cache.values()) {
-            cc.remove(player);
+        Account acc = accounts.get(player);
+        if (acc != null) acc.setPinned(false);
+    }
+
+    public OfflineCache getCache() { return cache; }
+
+    public int getCachedAccounts() { return accounts.size(); }
+
+    /**
+     * A new account was cached. Past the offline limit, sweep now rather than at the next
+     * interval; at most one such sweep is waiting at a time.
+     */
+    private void accountAdded() {
+        if (sweepTask == null || !cache.isOverfull(accounts.size()) || !sweepQueued.compareAndSet(false, true)) return;
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            sweepQueued.set(false);
+            sweep();
+        });
+    }
+
+    /**
+     * Run {@link #evictOffline} unless a sweep is already running.
+     */
+    private void sweep() {
+        if (!sweeping.compareAndSet(false, true)) return;
+        try {
+            evictOffline();
+        } finally {
+            sweeping.set(false);
         }
     }
 
-    public void saveAll() {
-        for (Map.Entry<String, Map<UUID, Double>> entry : cache.entrySet()) {
-            String curId = entry.getKey();
-            Map<UUID, Double> balances = entry.getValue();
-            if (!balances.isEmpty()) {
-                storageFactory.getProvider(curId).bulkSetBalances(curId, new HashMap<>(balances));
+    /**
+     * Evict offline accounts that expired or exceed the cache size. Pending writes are
+     * flushed first, so an evicted account never takes an unsaved balance with it; an
+     * account used again meanwhile is kept. The last check and the removal happen under
+     * the account's locks, under which every change also looks its account up, so a change
+     * either lands before the check or finds the account gone and caches a fresh one.
+     */
+    private void evictOffline() {
+        AccountStore store = accounts;
+        List<Account> victims = cache.victims(store, System.currentTimeMillis());
+        if (victims.isEmpty()) return;
+        long[] seen = new long[victims.size()];
+        for (int i = 0; i < seen.length; i++) seen[i] = victims.get(i).getLastAccess();
+
+        if (save().join() < 0) {
+            // Keep them until their balances are stored
+            return;
+        }
+        List<String> ids = new ArrayList<>();
+        for (CurrencyImpl cur : registry.all()) ids.add(cur.getId());
+        int evicted = 0;
+        for (int i = 0; i < seen.length; i++) {
+            Account acc = victims.get(i);
+            if (acc.isPinned() || acc.getLastAccess() != seen[i]) continue;
+            // Never wait: an account whose lock is held is in use, so not one to evict
+            ReentrantLock[] held = locks.tryLockAll(acc.getOwner(), ids);
+            if (held == null) continue;
+            try {
+                if (acc.isPinned() || acc.getLastAccess() != seen[i] || isQueued(acc)) continue;
+                if (store.remove(acc)) evicted++;
+            } finally {
+                locks.unlock(held);
             }
+            // Pinned by a join that raced with the removal
+            if (acc.isPinned()) store.putIfAbsent(acc);
+        }
+        cache.evicted(evicted);
+        if (evicted > 0 && plugin.getConfig().getBoolean("general.debug", false)) {
+            plugin.getLogger().info("[Storage] Evicted " + evicted + " offline accounts from the cache.");
         }
     }
 
+    /**
+     * True if any balance of the account still waits in the write queue.
+     */
+    private boolean isQueued(Account acc) {
+        if (writeQueue == null) return false;
+        for (CurrencyImpl cur : registry.all()) {
+            if (writeQueue.peek(cur.getId(), acc.getOwner()) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write every pending change. Only dirty accounts are written; with write-behind
+     * disabled every change already went straight to storage, and this waits for it.
+     * Once everything is stored the journal checkpoint moves forward.
+     */
+    public CompletableFuture<Void> saveAll() {
+        return save().thenAccept(seq -> {
+            Checkpoint cp = checkpoint;
+            if (seq < 0 || cp == null) return;
+            try {
+                cp.flushed(seq);
+                journal.setFlushedSeq(seq);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "[Journal] Could not save the checkpoint", e);
+            }
+        });
+    }
+
+    /**
+     * @return future of the last journal sequence number now known to be in storage,
+     *         or -1 if a write failed meanwhile
+     */
+    private CompletableFuture<Long> save() {
+        // Changes are journaled after they are queued, so everything up to here is in this save
+        long seq = journal != null ? journal.getLastSeq() : 0;
+        long failures = writeFailures();
+        CompletableFuture<Void> saved = (writeQueue != null
+                ? writeQueue.flush()
+                : CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])))
+                // Also covers writes that went around the cache, such as spool replays
+                .thenCompose(v -> CompletableFuture.allOf(storageFactory.all().stream()
+                        .map(StorageProvider::flush).toArray(CompletableFuture[]::new)));
+        return saved.handle((v, t) -> t == null && writeFailures() == failures ? seq : -1L);
+    }
+
+    private long writeFailures() {
+        return failedWrites.get() + (writeQueue != null ? writeQueue.getFailures() : 0);
+    }
+
+    /**
+     * Keep an immediate write visible to {@link #save} until it completes.
+     */
+    private void track(CompletableFuture<Void> write) {
+        inFlight.add(write);
+        write.whenComplete((v, t) -> {
+            // Counted before it leaves the set, so a save waiting on it sees the failure
+            if (t != null) failedWrites.incrementAndGet();
+            inFlight.remove(write);
+        });
+    }
+
+    /**
+     * Storage is behind the cache for some accounts of these currencies until their spool
+     * is written back; until then nothing may read them from storage.
+     */
+    private void requireSpoolEmpty(String... currencyIds) {
+        if (spool == null) return;
+        for (String id : currencyIds) {
+            if (spool.isPending(id)) {
+                throw new CompletionException(new StorageUnavailableException(
+                        storageFactory.getProvider(id).getExecutor().getName()));
+            }
+        }
+    }
+
+    /** Null when failed writes are not spooled. */
+    public WriteSpool getSpool() {
+        return spool;
+    }
+
+    public int getPendingWrites() {
+        return writeQueue != null ? writeQueue.size() : 0;
+    }
+
     // ═══════ Validation ═══════
 
-    private void validateCurrency(String currencyId) {
-        if (!registry.has(currencyId)) {
+    private CurrencyImpl currency(String currencyId) {
+        CurrencyImpl cur = registry.get(currencyId);
+        if (cur == null) {
             throw new jar.elem.elempoints.api.exception.CurrencyNotFoundException(currencyId);
         }
+        return cur;
     }
 }
\ No newline at end of file
@@ -10,10 +10,18 @@ import java.util.*;
 public final class CurrencyRegistry {
 
     private final Map<String, CurrencyImpl> currencies = new LinkedHashMap<>();
+    private final List<CurrencyImpl> byOrdinal = new ArrayList<>();
     private CurrencyImpl primary;
 
     public void register(CurrencyImpl currency) {
-        currencies.put(currency.getId(), currency);
+        CurrencyImpl previous = currencies.put(currency.getId(), currency);
+        if (previous != null) {
+            currency.setOrdinal(previous.getOrdinal());
+            byOrdinal.set(previous.getOrdinal(), currency);
+        } else {
+            currency.setOrdinal(byOrdinal.size());
+            byOrdinal.add(currency);
+        }
         if (currency.isPrimary() && primary == null) {
             primary = currency;
         }
@@ -21,6 +29,7 @@ public final class CurrencyRegistry {
 
     public void clear() {
         currencies.clear();
+        byOrdinal.clear();
         primary = null;
     }
 
@@ -28,6 +37,13 @@ public final class CurrencyRegistry {
         return currencies.get(id);
     }
 
+    /**
+     * Look up a currency by its dense ordinal (see {@link CurrencyImpl#getOrdinal()}).
+     */
+    public CurrencyImpl get(int ordinal) {
+        return byOrdinal.get(ordinal);
+    }
+
     public Optional<Currency> find(String id) {
         return Optional.ofNullable(currencies.get(id));
     }
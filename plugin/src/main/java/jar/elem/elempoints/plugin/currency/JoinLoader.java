@@ -0,0 +1,97 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Micro-batching stage for player loads.
+ * <p>
+ * Joins are collected for a short window (one tick by default) or until {@code maxBatch}
+ * players are waiting, then loaded together through {@link CurrencyManager#loadPlayers},
+ * which issues one {@code WHERE uuid IN (...)} query per storage backend.
+ * A join storm therefore costs a handful of queries instead of one task per player.
+ */
+final class JoinLoader {
+
+    private final ElemPointsPlugin plugin;
+    private final CurrencyManager manager;
+    private final long windowTicks;
+    private final int maxBatch;
+
+    private final Map<UUID, CompletableFuture<Void>> waiting = new ConcurrentHashMap<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private BukkitTask task;
+
+    JoinLoader(ElemPointsPlugin plugin, CurrencyManager manager, long windowTicks, int maxBatch) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.windowTicks = Math.max(1L, windowTicks);
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    void start() {
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::drain, windowTicks, windowTicks);
+    }
+
+    /**
+     * Stop batching and load whoever is still waiting.
+     */
+    void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        drain();
+    }
+
+    /**
+     * @return future completing once the player's balances are cached
+     */
+    CompletableFuture<Void> submit(UUID player) {
+        CompletableFuture<Void> future = waiting.computeIfAbsent(player, k -> new CompletableFuture<>());
+        if (task == null) {
+            // Not started (or already stopped) — nothing will drain for us
+            drain();
+        } else if (waiting.size() >= maxBatch && drainScheduled.compareAndSet(false, true)) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                drainScheduled.set(false);
+                drain();
+            });
+        }
+        return future;
+    }
+
+    private void drain() {
+        if (waiting.isEmpty()) return;
+        Map<UUID, CompletableFuture<Void>> batch = new HashMap<>();
+        for (UUID player : new ArrayList<>(waiting.keySet())) {
+            CompletableFuture<Void> f = waiting.remove(player);
+            if (f != null) batch.put(player, f);
+            if (batch.size() >= maxBatch) {
+                load(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) load(batch);
+    }
+
+    private void load(Map<UUID, CompletableFuture<Void>> batch) {
+        try {
+            manager.loadPlayers(batch.keySet());
+            batch.values().forEach(f -> f.complete(null));
+            if (plugin.getConfig().getBoolean("general.debug", false)) {
+                plugin.getLogger().info("[Storage] Batch-loaded " + batch.size() + " players.");
+            }
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "[Storage] Batched player load failed", e);
+            batch.values().forEach(f -> f.completeExceptionally(e));
+        }
+    }
+}
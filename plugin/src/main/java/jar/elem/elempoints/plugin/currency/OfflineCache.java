@@ -0,0 +1,108 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Eviction policy for accounts of offline players, plus cache statistics.
+ * <p>
+ * Accounts of online players are pinned and never evicted. Every other account (looked up
+ * by a command, Vault or a placeholder, or left behind by a player who quit) is dropped
+ * once it has not been used for {@code expireAfterAccess}, and beyond {@code maxOffline}
+ * accounts the least frequently used go first, the least recently used among equals.
+ * Access counts are small saturating counters halved on every sweep, so a one-off scan
+ * over many players (a leaderboard) evicts its own entries rather than the regulars.
+ * Besides the periodic sweep, one runs as soon as new accounts take the cache past
+ * {@code maxOffline}, so a burst of lookups cannot grow it until the next interval.
+ */
+public final class OfflineCache {
+
+    private final int maxOffline;
+    private final long expireAfterAccess;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder blockingLoads = new LongAdder();
+    private volatile int pinned;
+    private volatile int offline;
+
+    /**
+     * @param maxOffline        offline accounts kept at most, 0 for no limit
+     * @param expireAfterAccess millis an offline account is kept unused
+     */
+    OfflineCache(int maxOffline, long expireAfterAccess) {
+        this.maxOffline = maxOffline;
+        this.expireAfterAccess = expireAfterAccess;
+    }
+
+    void hit() { hits.increment(); }
+    void miss() { misses.increment(); }
+    void evicted(int n) { evictions.add(n); }
+    void blockingLoad() { blockingLoads.increment(); }
+
+    /**
+     * Whether {@code cached} accounts hold more offline ones than allowed, counting the
+     * online accounts of the last sweep.
+     */
+    boolean isOverfull(int cached) {
+        return maxOffline > 0 && cached - pinned > maxOffline;
+    }
+
+    /**
+     * Pick the accounts to evict and age every access count.
+     */
+    List<Account> victims(AccountStore store, long now) {
+        List<Candidate> kept = new ArrayList<>();
+        List<Account> victims = new ArrayList<>();
+        int[] online = {0};
+        store.forEach(acc -> {
+            if (acc.isPinned()) {
+                online[0]++;
+            } else if (now - acc.getLastAccess() >= expireAfterAccess) {
+                victims.add(acc);
+            } else {
+                // Snapshot the keys: they may change while we sort
+                kept.add(new Candidate(acc, acc.getFrequency(), acc.getLastAccess()));
+            }
+            acc.age();
+        });
+        int excess = maxOffline > 0 ? kept.size() - maxOffline : 0;
+        if (excess > 0) {
+            kept.sort(Comparator.comparingInt((Candidate c) -> c.frequency).thenComparingLong(c -> c.lastAccess));
+            for (int i = 0; i < excess; i++) victims.add(kept.get(i).account);
+        }
+        pinned = online[0];
+        offline = kept.size() - Math.max(0, excess);
+        return victims;
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    /** Cache misses loaded on the server thread, which waited for storage. */
+    public long getBlockingLoads() { return blockingLoads.sum(); }
+
+    /** Online accounts at the last sweep. */
+    public int getPinned() { return pinned; }
+
+    /** Offline accounts kept by the last sweep. */
+    public int getOffline() { return offline; }
+
+    public int getMaxOffline() { return maxOffline; }
+
+    private static final class Candidate {
+        final Account account;
+        final int frequency;
+        final long lastAccess;
+
+        Candidate(Account account, int frequency, long lastAccess) {
+            this.account = account;
+            this.frequency = frequency;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
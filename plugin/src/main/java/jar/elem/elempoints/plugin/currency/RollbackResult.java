@@ -0,0 +1,59 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of {@link CurrencyManager#rollback}: every account whose balance differs from
+ * what it was at the rollback time, with both values.
+ */
+public final class RollbackResult {
+
+    /** One account to roll back. */
+    public static final class Change {
+        private final UUID player;
+        private final double current;
+        private final double target;
+
+        Change(UUID player, double current, double target) {
+            this.player = player;
+            this.current = current;
+            this.target = target;
+        }
+
+        public UUID getPlayer() { return player; }
+        public double getCurrent() { return current; }
+
+        /** Balance at the rollback time. */
+        public double getTarget() { return target; }
+    }
+
+    private final String currencyId;
+    private final long time;
+    private final boolean applied;
+    private final long scanned;
+    private final List<Change> changes;
+
+    RollbackResult(String currencyId, long time, boolean applied, long scanned, List<Change> changes) {
+        this.currencyId = currencyId;
+        this.time = time;
+        this.applied = applied;
+        this.scanned = scanned;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public String getCurrencyId() { return currencyId; }
+
+    /** Rollback time in epoch millis. */
+    public long getTime() { return time; }
+
+    /** False for a dry run: nothing was written. */
+    public boolean isApplied() { return applied; }
+
+    /** History entries read to reconstruct the balances. */
+    public long getScanned() { return scanned; }
+
+    /** Accounts that differ, largest difference first. */
+    public List<Change> getChanges() { return changes; }
+}
@@ -7,6 +7,8 @@ import jar.elem.elempoints.plugin.util.NumberFormat;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.OfflinePlayer;
 
+import java.util.OptionalDouble;
+
 /**
  * PlaceholderAPI expansion for ElemPoints.
  *
@@ -19,6 +21,9 @@ import org.bukkit.OfflinePlayer;
  *   %elempoints_{id}_points_shorthand%     — specific currency shorthand
  *   %elempoints_{id}_symbol%               — currency symbol
  *   %elempoints_{id}_name%                 — currency display name
+ *
+ * Balances never wait for the database: a player whose balance is not cached yet shows
+ * {@code general.loading-placeholder} until it has loaded in the background.
  */
 public final class PAPIExpansion extends PlaceholderExpansion {
 
@@ -76,11 +81,13 @@ public final class PAPIExpansion extends PlaceholderExpansion {
     private String handleCurrency(OfflinePlayer player, CurrencyImpl cur, String suffix) {
         switch (suffix) {
             case "points":
-                return fmt.plain(manager.getBalance(player.getUniqueId(), cur.getId()));
             case "points_formatted":
-                return fmt.formatted(manager.getBalance(player.getUniqueId(), cur.getId()));
-            case "points_shorthand":
-                return fmt.shorthand(manager.getBalance(player.getUniqueId(), cur.getId()));
+            case "points_shorthand": {
+                OptionalDouble bal = manager.tryGetBalance(player.getUniqueId(), cur.getId());
+                if (!bal.isPresent()) return plugin.getConfig().getString("general.loading-placeholder", "...");
+                if (suffix.equals("points")) return fmt.plain(bal.getAsDouble());
+                return suffix.equals("points_formatted") ? fmt.formatted(bal.getAsDouble()) : fmt.shorthand(bal.getAsDouble());
+            }
             case "symbol":
                 return cur.getSymbol();
             case "name":
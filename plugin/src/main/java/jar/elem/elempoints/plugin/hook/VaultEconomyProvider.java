@@ -31,7 +31,10 @@ public final class VaultEconomyProvider implements Economy {
     @Override public boolean isEnabled() { return plugin.isEnabled(); }
     @Override public String getName() { return "ElemPoints"; }
     @Override public boolean hasBankSupport() { return false; }
-    @Override public int fractionalDigits() { return 2; }
+    @Override public int fractionalDigits() {
+        CurrencyImpl c = manager.getRegistry().getPrimary();
+        return c != null && c.isFixedPoint() ? c.getDecimals() : 2;
+    }
     @Override public String format(double amount) { return String.format("%.2f", amount); }
 
     @Override public String currencyNamePlural() {
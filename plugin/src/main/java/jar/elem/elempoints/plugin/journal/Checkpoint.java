@@ -0,0 +1,94 @@
+package jar.elem.elempoints.plugin.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Recovery state next to the journal: the last journal sequence number known to be in
+ * storage, and whether the plugin shut down cleanly after writing everything.
+ * <p>
+ * The file is replaced atomically, so a crash while saving leaves the previous state.
+ */
+public final class Checkpoint {
+
+    private final File file;
+    private volatile long flushedSeq;
+    private volatile boolean clean = true;
+
+    private Checkpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the checkpoint. A missing file means a first start, which counts as clean.
+     */
+    public static Checkpoint load(File file) throws IOException {
+        Checkpoint cp = new Checkpoint(file);
+        if (file.isFile()) {
+            Properties p = new Properties();
+            try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                p.load(in);
+            }
+            try {
+                cp.flushedSeq = Long.parseLong(p.getProperty("flushed", "0"));
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt journal checkpoint " + file, e);
+            }
+            cp.clean = Boolean.parseBoolean(p.getProperty("clean", "false"));
+        }
+        return cp;
+    }
+
+    /** Journal records up to this sequence number are in storage. */
+    public long getFlushedSeq() {
+        return flushedSeq;
+    }
+
+    /** False if the last run stopped without a final flush. */
+    public boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * Record that storage has everything journaled up to {@code seq}.
+     */
+    public synchronized void flushed(long seq) throws IOException {
+        if (seq <= flushedSeq) return;
+        flushedSeq = seq;
+        save();
+    }
+
+    /**
+     * Mark the run as in progress; it counts as a crash until {@link #close} is called.
+     */
+    public synchronized void open() throws IOException {
+        clean = false;
+        save();
+    }
+
+    /**
+     * Mark a clean shutdown with everything up to {@code seq} in storage.
+     */
+    public synchronized void close(long seq) throws IOException {
+        flushedSeq = Math.max(flushedSeq, seq);
+        clean = true;
+        save();
+    }
+
+    private void save() throws IOException {
+        Properties p = new Properties();
+        p.setProperty("flushed", Long.toString(flushedSeq));
+        p.setProperty("clean", Boolean.toString(clean));
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            p.store(out, "ElemPoints journal checkpoint - do not edit");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,318 @@
+package jar.elem.elempoints.plugin.journal;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Append-only binary journal of balance changes, written through memory-mapped segments.
+ * <p>
+ * Every record is {@link #RECORD_SIZE} bytes, so appending is a handful of stores into the
+ * mapped page cache under a short lock; nothing touches the disk on the mutation path.
+ * Dirty pages are forced to disk in groups every sync interval. A segment is preallocated
+ * at its full size and a new one is started when it fills up, or on every start, since
+ * currency ordinals can change between runs. Only the newest {@code maxSegments} are kept,
+ * and never one holding records past the last {@linkplain #setFlushedSeq flushed} position.
+ * <p>
+ * Segment layout: a {@link #HEADER_SIZE}-byte header (magic, format, creation time, first
+ * sequence number, then the currency id of each ordinal), followed by records:
+ * <pre>
+ *  0 seq        long   (written last; 0 marks the end of the segment)
+ *  8 timestamp  long   epoch millis
+ * 16 uuid       2 × long
+ * 32 delta      double
+ * 40 balance    double balance after the change
+ * 48 currency   short  ordinal, resolved through the header
+ * 50 reason     byte   BalanceChangeEvent.Reason ordinal
+ * 51 length     byte   of the source
+ * 52 source     28 bytes of UTF-8, truncated
+ * </pre>
+ */
+public final class Journal {
+
+    public static final int RECORD_SIZE = 80;
+    public static final int SOURCE_BYTES = 28;
+    static final int HEADER_SIZE = 4096;
+    private static final int MAGIC = 0x45504A31; // "EPJ1"
+    private static final int FORMAT = 1;
+    private static final String SUFFIX = ".seg";
+    private static final BalanceChangeEvent.Reason[] REASONS = BalanceChangeEvent.Reason.values();
+
+    private final ElemPointsPlugin plugin;
+    private final File dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long syncIntervalTicks;
+
+    // Guarded by this
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long nextSeq = 1;
+    private List<String> currencies = new ArrayList<>();
+
+    // Highest sequence number known to be on disk
+    private volatile long syncedSeq;
+    // Records above this are not in storage yet and must survive pruning
+    private volatile long flushedSeq;
+    private BukkitTask task;
+
+    /**
+     * @param segmentBytes size of one segment file, header included
+     */
+    public Journal(ElemPointsPlugin plugin, File dir, int segmentBytes, int maxSegments, long syncIntervalTicks) {
+        this.plugin = plugin;
+        this.dir = dir;
+        this.segmentBytes = Math.max(HEADER_SIZE + RECORD_SIZE * 1024, segmentBytes);
+        this.maxSegments = Math.max(2, maxSegments);
+        this.syncIntervalTicks = Math.max(1L, syncIntervalTicks);
+    }
+
+    /**
+     * Open a fresh segment after the existing ones and start group syncing.
+     *
+     * @param currencyIds currency id of each ordinal
+     */
+    public synchronized void start(List<String> currencyIds) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        currencies = new ArrayList<>(currencyIds);
+        File[] segments = segments();
+        if (segments.length > 0) {
+            File last = segments[segments.length - 1];
+            long[] lastSeq = {firstSeq(last) - 1};
+            readSegment(last, 0, r -> lastSeq[0] = r.getSeq());
+            nextSeq = lastSeq[0] + 1;
+            // A segment without records would have the name of the one we are about to create
+            if (lastSeq[0] < firstSeq(last) && !last.delete()) throw new IOException("Cannot replace " + last);
+        }
+        syncedSeq = nextSeq - 1;
+        openSegment();
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sync,
+                syncIntervalTicks, syncIntervalTicks);
+    }
+
+    /**
+     * Sync and close the current segment.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        sync();
+        synchronized (this) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Append one change. Never throws: if the journal cannot be written it is closed and
+     * the failure logged, so the balance change itself still goes through.
+     *
+     * @return the record's sequence number, or -1 if the journal is closed
+     */
+    public synchronized long append(UUID player, int ordinal, double delta, double balance,
+                                    BalanceChangeEvent.Reason reason, String source) {
+        if (buffer == null) return -1;
+        if (position + RECORD_SIZE > segmentBytes) {
+            try {
+                closeSegment();
+                openSegment();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Journal] Cannot start a new segment, journal disabled", e);
+                closeSegment();
+                return -1;
+            }
+        }
+        MappedByteBuffer b = buffer;
+        int p = position;
+        long seq = nextSeq++;
+        b.putLong(p + 8, System.currentTimeMillis());
+        b.putLong(p + 16, player.getMostSignificantBits());
+        b.putLong(p + 24, player.getLeastSignificantBits());
+        b.putDouble(p + 32, delta);
+        b.putDouble(p + 40, balance);
+        b.putShort(p + 48, (short) ordinal);
+        b.put(p + 50, (byte) (reason != null ? reason.ordinal() : -1));
+        byte[] src = source != null ? source.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int len = Math.min(src.length, SOURCE_BYTES);
+        b.put(p + 51, (byte) len);
+        for (int i = 0; i < len; i++) b.put(p + 52 + i, src[i]);
+        // The sequence number goes last: a record is only valid once it is set
+        b.putLong(p, seq);
+        position = p + RECORD_SIZE;
+        return seq;
+    }
+
+    /**
+     * Force appended records to disk.
+     */
+    public void sync() {
+        MappedByteBuffer b;
+        long seq;
+        synchronized (this) {
+            seq = nextSeq - 1;
+            if (buffer == null || seq == syncedSeq) return;
+            b = buffer;
+        }
+        // Outside the lock: appends continue while the pages are written
+        b.force();
+        syncedSeq = seq;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Records up to {@code seq} are in storage; older segments may be deleted.
+     */
+    public void setFlushedSeq(long seq) {
+        flushedSeq = seq;
+    }
+
+    /** Sequence number of the last record appended, 0 if none. */
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    /** Sequence number up to which records are known to be on disk. */
+    public long getSyncedSeq() {
+        return syncedSeq;
+    }
+
+    /**
+     * Read every record with a sequence number above {@code afterSeq}, oldest first.
+     * Records appended while reading may or may not be visited.
+     */
+    public void read(long afterSeq, Consumer<JournalRecord> visitor) throws IOException {
+        File[] segments = segments();
+        for (int i = 0; i < segments.length; i++) {
+            // Skip segments that end before the requested position
+            if (i + 1 < segments.length && firstSeq(segments[i + 1]) <= afterSeq + 1) continue;
+            readSegment(segments[i], afterSeq, visitor);
+        }
+    }
+
+    // ─── Segments ───
+
+    private void openSegment() throws IOException {
+        File file = new File(dir, String.format("%020d", nextSeq) + SUFFIX);
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            b.putInt(0, MAGIC);
+            b.putInt(4, FORMAT);
+            b.putLong(8, System.currentTimeMillis());
+            b.putLong(16, nextSeq);
+            b.putShort(24, (short) currencies.size());
+            int p = 26;
+            for (String id : currencies) {
+                byte[] name = id.getBytes(StandardCharsets.UTF_8);
+                if (p + 1 + name.length > HEADER_SIZE) throw new IOException("Too many currencies for the journal header");
+                b.put(p, (byte) name.length);
+                for (int i = 0; i < name.length; i++) b.put(p + 1 + i, name[i]);
+                p += 1 + name.length;
+            }
+            channel = ch;
+            buffer = b;
+            position = HEADER_SIZE;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+        prune();
+    }
+
+    private void closeSegment() {
+        if (buffer == null) return;
+        buffer.force();
+        syncedSeq = nextSeq - 1;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "[Journal] Could not close segment", e);
+        }
+        buffer = null;
+        channel = null;
+    }
+
+    /**
+     * Delete the oldest segments beyond {@code maxSegments} whose records are all flushed.
+     */
+    private void prune() {
+        File[] segments = segments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            // The next segment starts right after this one ends
+            if (firstSeq(segments[i + 1]) - 1 > flushedSeq) break;
+            if (!segments[i].delete()) {
+                plugin.getLogger().warning("[Journal] Could not delete old segment " + segments[i].getName());
+            }
+        }
+    }
+
+    private File[] segments() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return new File[0];
+        // Names are zero-padded sequence numbers, so name order is journal order
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long firstSeq(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static void readSegment(File file, long afterSeq, Consumer<JournalRecord> visitor) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) return;
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (b.getInt(0) != MAGIC || b.getInt(4) != FORMAT) {
+                throw new IOException("Not a journal segment: " + file.getName());
+            }
+            String[] currencies = new String[b.getShort(24)];
+            int p = 26;
+            for (int i = 0; i < currencies.length; i++) {
+                int len = b.get(p) & 0xFF;
+                byte[] name = new byte[len];
+                for (int j = 0; j < len; j++) name[j] = b.get(p + 1 + j);
+                currencies[i] = new String(name, StandardCharsets.UTF_8);
+                p += 1 + len;
+            }
+            for (p = HEADER_SIZE; p + RECORD_SIZE <= size; p += RECORD_SIZE) {
+                long seq = b.getLong(p);
+                if (seq == 0) break;
+                if (seq <= afterSeq) continue;
+                int ordinal = b.getShort(p + 48);
+                int reason = b.get(p + 50);
+                int len = Math.min(b.get(p + 51) & 0xFF, SOURCE_BYTES);
+                byte[] src = new byte[len];
+                for (int j = 0; j < len; j++) src[j] = b.get(p + 52 + j);
+                visitor.accept(new JournalRecord(seq, b.getLong(p + 8),
+                        new UUID(b.getLong(p + 16), b.getLong(p + 24)),
+                        ordinal >= 0 && ordinal < currencies.length ? currencies[ordinal] : null,
+                        b.getDouble(p + 32), b.getDouble(p + 40),
+                        reason >= 0 && reason < REASONS.length ? REASONS[reason] : null,
+                        new String(src, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package jar.elem.elempoints.plugin.journal;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+
+import java.util.UUID;
+
+/**
+ * One balance change read back from the {@link Journal}.
+ */
+public final class JournalRecord {
+
+    private final long seq;
+    private final long timestamp;
+    private final UUID player;
+    private final String currencyId;
+    private final double delta;
+    private final double balance;
+    private final BalanceChangeEvent.Reason reason;
+    private final String source;
+
+    JournalRecord(long seq, long timestamp, UUID player, String currencyId, double delta, double balance,
+                  BalanceChangeEvent.Reason reason, String source) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.player = player;
+        this.currencyId = currencyId;
+        this.delta = delta;
+        this.balance = balance;
+        this.reason = reason;
+        this.source = source;
+    }
+
+    /** Position in the journal, increasing by one per record. */
+    public long getSeq() { return seq; }
+    public long getTimestamp() { return timestamp; }
+    public UUID getPlayer() { return player; }
+    public String getCurrencyId() { return currencyId; }
+    public double getDelta() { return delta; }
+
+    /** Balance after the change. */
+    public double getBalance() { return balance; }
+
+    /** Null if the record was written by a version with a reason this one does not know. */
+    public BalanceChangeEvent.Reason getReason() { return reason; }
+
+    /** Source, truncated to {@link Journal#SOURCE_BYTES} bytes of UTF-8. */
+    public String getSource() { return source; }
+}
@@ -2,7 +2,6 @@ package jar.elem.elempoints.plugin.listener;
 
 import jar.elem.elempoints.plugin.ElemPointsPlugin;
 import jar.elem.elempoints.plugin.currency.CurrencyManager;
-import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
@@ -21,13 +20,13 @@ public final class PlayerListener implements Listener {
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onJoin(PlayerJoinEvent e) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin,
-                () -> manager.loadPlayer(e.getPlayer().getUniqueId()));
+        manager.pinPlayer(e.getPlayer().getUniqueId());
+        // Batched with other joins of the same tick
+        manager.loadPlayerAsync(e.getPlayer().getUniqueId());
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onQuit(PlayerQuitEvent e) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin,
-                () -> manager.unloadPlayer(e.getPlayer().getUniqueId()));
+        manager.unloadPlayer(e.getPlayer().getUniqueId());
     }
 }
\ No newline at end of file
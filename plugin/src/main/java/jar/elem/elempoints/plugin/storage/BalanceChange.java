@@ -0,0 +1,40 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.util.UUID;
+
+/**
+ * One balance row as returned by the change feed ({@link StorageProvider#getChangesSince}).
+ * Rows are ordered by {@code (updated, player, currencyKey)}; the last row of a page is
+ * where the next one starts.
+ */
+public final class BalanceChange {
+
+    private final UUID player;
+    private final int currencyKey;
+    private final String currencyId;
+    private final double balance;
+    private final long version;
+    private final long updated;
+
+    public BalanceChange(UUID player, int currencyKey, String currencyId, double balance, long version, long updated) {
+        this.player = player;
+        this.currencyKey = currencyKey;
+        this.currencyId = currencyId;
+        this.balance = balance;
+        this.version = version;
+        this.updated = updated;
+    }
+
+    public UUID getPlayer() { return player; }
+
+    /** Database key of the currency, part of the feed's sort order. */
+    public int getCurrencyKey() { return currencyKey; }
+
+    /** Null if the currency is not registered on this server. */
+    public String getCurrencyId() { return currencyId; }
+    public double getBalance() { return balance; }
+    public long getVersion() { return version; }
+
+    /** Time of the write in epoch millis, by the clock of the server that made it. */
+    public long getUpdated() { return updated; }
+}
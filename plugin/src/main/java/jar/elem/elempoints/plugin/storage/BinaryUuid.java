@@ -0,0 +1,31 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.util.UUID;
+
+/**
+ * 16-byte big-endian UUID encoding used by the v2 balance tables.
+ * Byte order matches {@code memcmp}, so keyset pagination on the column is stable.
+ */
+public final class BinaryUuid {
+
+    private BinaryUuid() {}
+
+    public static byte[] toBytes(UUID id) {
+        byte[] b = new byte[16];
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            b[i] = (byte) (msb >>> (56 - 8 * i));
+            b[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+        }
+        return b;
+    }
+
+    public static UUID fromBytes(byte[] b) {
+        long msb = 0, lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (b[i] & 0xFF);
+            lsb = (lsb << 8) | (b[8 + i] & 0xFF);
+        }
+        return new UUID(msb, lsb);
+    }
+}
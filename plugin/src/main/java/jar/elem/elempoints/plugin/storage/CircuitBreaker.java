@@ -0,0 +1,168 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Health of one storage provider, tracked from the outcome of its calls.
+ * <p>
+ * {@code failureThreshold} failed calls in a row open the breaker; a call slower than
+ * {@code slowCall} counts as failed even if it succeeded, since a stalled database hurts
+ * the server as much as a dead one. While open, calls are refused at once with a
+ * {@link StorageUnavailableException}. After {@code openDuration} a single probe call is
+ * let through (half-open): if it succeeds the breaker closes, otherwise it opens again.
+ * Long scans are never chosen as that probe; they wait until a quick call has closed it.
+ * Only database errors and timeouts count as failures, not refusals or invalid input.
+ */
+public final class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final Logger logger;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongAdder rejected = new LongAdder();
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long outageStart;
+    // A half-open probe is running; everything else is still refused
+    private boolean probing;
+    private long trips;
+
+    /**
+     * @param slowCallMillis calls slower than this count as failures; 0 = never
+     */
+    public CircuitBreaker(String name, Logger logger, int failureThreshold, long slowCallMillis, long openMillis) {
+        this.name = name;
+        this.logger = logger;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, slowCallMillis));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, openMillis));
+    }
+
+    /**
+     * Ask to make a call. Every granted call must end with {@link #record} or {@link #release}.
+     *
+     * @return false if the call must be refused
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) break;
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            case HALF_OPEN:
+                if (probing) break;
+                probing = true;
+                return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Like {@link #tryAcquire}, but never as the half-open probe: only granted while closed.
+     * For scans and merges, which can run for minutes and would keep every other call
+     * refused until they finish.
+     */
+    public synchronized boolean tryAcquireWithoutProbe() {
+        if (state == State.CLOSED) return true;
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Whether a call made now would be let through. Background tasks check this to keep
+     * their work queued instead of collecting refusals.
+     */
+    public synchronized boolean isAvailable() {
+        switch (state) {
+            case OPEN: return System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN: return !probing;
+            default: return true;
+        }
+    }
+
+    /**
+     * Outcome of a granted call.
+     *
+     * @param failure what the call completed with, or null on success
+     */
+    public void record(long elapsedNanos, Throwable failure) {
+        boolean failed = (failure != null && isStorageFailure(failure))
+                || (slowCallNanos > 0 && elapsedNanos > slowCallNanos);
+        synchronized (this) {
+            // Late results of calls started before the breaker opened say nothing new
+            if (state == State.OPEN) return;
+            if (!failed) {
+                failures = 0;
+                if (state == State.HALF_OPEN) {
+                    state = State.CLOSED;
+                    probing = false;
+                    logger.info("[Storage] " + name + " recovered after " +
+                            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - outageStart) + "s.");
+                }
+                return;
+            }
+            failures++;
+            if (state == State.HALF_OPEN) {
+                open();
+            } else if (failures >= failureThreshold) {
+                outageStart = System.nanoTime();
+                trips++;
+                open();
+                logger.warning("[Storage] " + name + ": " + failures + " failed or slow calls in a row, " +
+                        "serving cached balances only. Retrying every " +
+                        TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s.");
+            }
+        }
+    }
+
+    /**
+     * A granted call finished without touching the database (nothing to do, or answered
+     * from memory), so it says nothing about health.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        probing = false;
+    }
+
+    public String getName() { return name; }
+    public synchronized State getState() { return state; }
+
+    /** Calls refused while open. */
+    public long getRejected() { return rejected.sum(); }
+
+    /** Times the breaker opened after being closed. */
+    public synchronized long getTrips() { return trips; }
+
+    /**
+     * Database errors and timeouts; refusals by an open breaker are not new failures.
+     */
+    static boolean isStorageFailure(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof StorageUnavailableException) return false;
+        return t instanceof SQLException || t instanceof TimeoutException || t instanceof RejectedExecutionException;
+    }
+}
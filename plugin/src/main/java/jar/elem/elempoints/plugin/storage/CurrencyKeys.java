@@ -0,0 +1,73 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached view of a provider's currency dictionary ({@code id SMALLINT ↔ name}).
+ * <p>
+ * Balance rows store the small numeric key instead of repeating the currency name in
+ * the primary key. Keys are created once per currency when it registers, so lookups on
+ * the hot path never touch the database.
+ */
+public final class CurrencyKeys {
+
+    private final String table;
+    private final String insertIfAbsent;
+    private final Map<String, Integer> byName = new ConcurrentHashMap<>();
+    private final Map<Integer, String> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * @param table          dictionary table name
+     * @param insertIfAbsent dialect-specific insert of one {@code name} that ignores duplicates
+     */
+    public CurrencyKeys(String table, String insertIfAbsent) {
+        this.table = table;
+        this.insertIfAbsent = insertIfAbsent;
+    }
+
+    /**
+     * @throws SQLException if the currency was never registered with this provider
+     */
+    public int get(String currencyId) throws SQLException {
+        Integer key = byName.get(currencyId);
+        if (key == null) {
+            throw new SQLException("Currency '" + currencyId + "' is not registered with storage");
+        }
+        return key;
+    }
+
+    /**
+     * Look up the key of a currency, inserting it if missing.
+     * Pass the result to {@link #remember} only once the insert is committed.
+     */
+    public int lookupOrCreate(Connection c, String currencyId) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(insertIfAbsent)) {
+            ps.setString(1, currencyId);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement("SELECT id FROM " + table + " WHERE name=?")) {
+            ps.setString(1, currencyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getInt(1);
+            }
+        }
+        throw new SQLException("No key for currency '" + currencyId + "' in " + table);
+    }
+
+    public void remember(String currencyId, int key) {
+        byName.put(currencyId, key);
+        byKey.put(key, currencyId);
+    }
+
+    /**
+     * @return the currency with this key, or null if it is not registered on this server
+     */
+    public String name(int key) {
+        return byKey.get(key);
+    }
+}
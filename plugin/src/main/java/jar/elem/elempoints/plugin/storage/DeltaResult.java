@@ -0,0 +1,26 @@
+package jar.elem.elempoints.plugin.storage;
+
+/**
+ * Outcome of {@link StorageProvider#addBalance}: the balance and row version as stored
+ * after the call, and whether the change was applied or refused by its guard.
+ */
+public final class DeltaResult {
+
+    private final boolean applied;
+    private final double balance;
+    private final long version;
+
+    public DeltaResult(boolean applied, double balance, long version) {
+        this.applied = applied;
+        this.balance = balance;
+        this.version = version;
+    }
+
+    public boolean isApplied() { return applied; }
+
+    /** Authoritative balance read back in the same transaction. */
+    public double getBalance() { return balance; }
+
+    /** Row version read back with the balance; the change feed skips rows not newer than it. */
+    public long getVersion() { return version; }
+}
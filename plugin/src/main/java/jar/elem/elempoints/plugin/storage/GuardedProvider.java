@@ -0,0 +1,221 @@
+package jar.elem.elempoints.plugin.storage;
+
+import jar.elem.elempoints.api.history.HistoryEntry;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Wraps a provider with per-operation deadlines and a {@link CircuitBreaker}.
+ * <p>
+ * A call still running after its deadline completes exceptionally with a
+ * {@link java.util.concurrent.TimeoutException}, so no caller waits on a stalled database
+ * for longer than that. The providers get the same {@link StorageTimeouts} and cancel the
+ * statement at that deadline as well (query and network timeouts, or skipping a queued
+ * write whose caller gave up), so it does not finish later in the background. Batch writes
+ * get the bulk deadline plus a share per row. Whole-currency scans and merges have none,
+ * they can legitimately run for minutes; the providers bound each of their round trips
+ * instead, and they are never let through as the half-open probe. Only single-row calls
+ * count as slow for the breaker; batches trip it through errors and deadlines alone.
+ * While the breaker is open every call fails at once with a {@link StorageUnavailableException}.
+ */
+public final class GuardedProvider implements StorageProvider {
+
+    private final StorageProvider delegate;
+    private final CircuitBreaker breaker;
+    private final StorageTimeouts timeouts;
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final long bulkTimeout;
+
+    public GuardedProvider(StorageProvider delegate, CircuitBreaker breaker, StorageTimeouts timeouts) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.timeouts = timeouts;
+        this.readTimeout = timeouts.getRead();
+        this.writeTimeout = timeouts.getWrite();
+        this.bulkTimeout = timeouts.getBulk();
+    }
+
+    public StorageProvider getDelegate() { return delegate; }
+    public CircuitBreaker getBreaker() { return breaker; }
+
+    /**
+     * Single-row call: its latency is a health signal, so a slow one counts as failed.
+     */
+    private <T> CompletableFuture<T> call(long timeoutMillis, Supplier<CompletableFuture<T>> call) {
+        return call(timeoutMillis, true, call);
+    }
+
+    /**
+     * Batch or scan: slow by nature, only errors and deadlines count.
+     */
+    private <T> CompletableFuture<T> batch(long timeoutMillis, Supplier<CompletableFuture<T>> call) {
+        return call(timeoutMillis, false, call);
+    }
+
+    /**
+     * Whole-currency scan or merge: no deadline, and never the half-open probe.
+     */
+    private <T> CompletableFuture<T> scan(Supplier<CompletableFuture<T>> call) {
+        return call(0L, false, false, call);
+    }
+
+    private <T> CompletableFuture<T> call(long timeoutMillis, boolean timed, Supplier<CompletableFuture<T>> call) {
+        return call(timeoutMillis, timed, true, call);
+    }
+
+    private <T> CompletableFuture<T> call(long timeoutMillis, boolean timed, boolean mayProbe,
+                                          Supplier<CompletableFuture<T>> call) {
+        if (!(mayProbe ? breaker.tryAcquire() : breaker.tryAcquireWithoutProbe())) {
+            return CompletableFuture.failedFuture(new StorageUnavailableException(breaker.getName()));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> f;
+        try {
+            f = call.get();
+        } catch (RuntimeException e) {
+            breaker.release();
+            throw e;
+        }
+        // Answered without a query (empty input); a failure (migration still running) is recorded below
+        if (f.isDone() && !f.isCompletedExceptionally()) {
+            breaker.release();
+            return f;
+        }
+        if (timeoutMillis > 0) f.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        return f.whenComplete((v, t) -> breaker.record(timed ? System.nanoTime() - start : 0L, t));
+    }
+
+    // ─── Lifecycle ───
+
+    @Override public void init() { delegate.init(); }
+    @Override public void shutdown() { delegate.shutdown(); }
+    @Override public boolean isConnected() { return delegate.isConnected(); }
+    @Override public boolean isAvailable() { return breaker.isAvailable(); }
+    @Override public StorageExecutor getExecutor() { return delegate.getExecutor(); }
+    @Override public List<StorageExecutor> getExecutors() { return delegate.getExecutors(); }
+    // Waits on writes the breaker already let through, so it is not guarded itself
+    @Override public CompletableFuture<Void> flush() { return delegate.flush(); }
+
+    @Override
+    public CompletableFuture<Void> registerCurrency(String currencyId) {
+        return call(writeTimeout, () -> delegate.registerCurrency(currencyId));
+    }
+
+    // ─── Single rows ───
+
+    @Override
+    public CompletableFuture<Double> getBalance(UUID player, String currencyId) {
+        return call(readTimeout, () -> delegate.getBalance(player, currencyId));
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID player, String currencyId, double amount) {
+        return call(writeTimeout, () -> delegate.setBalance(player, currencyId, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hasAccount(UUID player, String currencyId) {
+        return call(readTimeout, () -> delegate.hasAccount(player, currencyId));
+    }
+
+    @Override
+    public CompletableFuture<Void> createAccount(UUID player, String currencyId, double defaultBalance) {
+        return call(writeTimeout, () -> delegate.createAccount(player, currencyId, defaultBalance));
+    }
+
+    @Override
+    public CompletableFuture<DeltaResult> addBalance(UUID player, String currencyId, double delta,
+                                                     Double min, Double max) {
+        return call(writeTimeout, () -> delegate.addBalance(player, currencyId, delta, min, max));
+    }
+
+    @Override
+    public CompletableFuture<VersionedBalance> getVersionedBalance(UUID player, String currencyId) {
+        return call(readTimeout, () -> delegate.getVersionedBalance(player, currencyId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSetBalance(UUID player, String currencyId, double amount,
+                                                           long expectedVersion) {
+        return call(writeTimeout, () -> delegate.compareAndSetBalance(player, currencyId, amount, expectedVersion));
+    }
+
+    @Override
+    public CompletableFuture<Void> createAccounts(UUID player, Map<String, Double> defaultBalances) {
+        return call(writeTimeout, () -> delegate.createAccounts(player, defaultBalances));
+    }
+
+    // ─── Batches ───
+
+    @Override
+    public CompletableFuture<List<BalanceChange>> getChangesSince(long since, BalanceChange after, int limit) {
+        return batch(bulkTimeout, () -> delegate.getChangesSince(since, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, Map<String, Double>>> loadAccounts(Collection<UUID> players,
+                                                                         Collection<String> currencyIds) {
+        return batch(bulkTimeout, () -> delegate.loadAccounts(players, currencyIds));
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances) {
+        return batch(timeouts.getBulkWrite(balances.size()), () -> delegate.bulkSetBalances(currencyId, balances));
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkAddBalances(String currencyId, Map<UUID, Double> amounts) {
+        return batch(timeouts.getBulkWrite(amounts.size()), () -> delegate.bulkAddBalances(currencyId, amounts));
+    }
+
+    @Override
+    public CompletableFuture<LinkedHashMap<UUID, Double>> getBalancePage(String currencyId, UUID after, int limit) {
+        return batch(bulkTimeout, () -> delegate.getBalancePage(currencyId, after, limit));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendHistory(List<HistoryEntry> entries) {
+        return batch(timeouts.getBulkWrite(entries.size()), () -> delegate.appendHistory(entries));
+    }
+
+    @Override
+    public CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit) {
+        return batch(bulkTimeout, () -> delegate.getHistory(player, currencyId, beforeId, limit));
+    }
+
+    @Override
+    public CompletableFuture<long[]> getHistoryBounds(long since) {
+        return batch(bulkTimeout, () -> delegate.getHistoryBounds(since));
+    }
+
+    // ─── Scans (no deadline, never the probe) ───
+
+    @Override
+    public CompletableFuture<Long> scanBalances(String currencyId, int fetchSize, BalanceVisitor visitor) {
+        return scan(() -> delegate.scanBalances(currencyId, fetchSize, visitor));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, Double>> getAllBalances(String currencyId) {
+        return scan(() -> delegate.getAllBalances(currencyId));
+    }
+
+    @Override
+    public CompletableFuture<Integer> mergeCurrency(String fromId, String toId, double rate) {
+        return scan(() -> delegate.mergeCurrency(fromId, toId, rate));
+    }
+
+    @Override
+    public CompletableFuture<Long> scanHistory(String currencyId, UUID player, long since, long fromId, long toId,
+                                               HistoryVisitor visitor) {
+        return scan(() -> delegate.scanHistory(currencyId, player, since, fromId, toId, visitor));
+    }
+}
@@ -0,0 +1,135 @@
+package jar.elem.elempoints.plugin.storage;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.api.history.HistoryEntry;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Row mapping of the history table, shared by every provider.
+ * <p>
+ * Columns: {@code id} (auto-increment), {@code uuid}, {@code currency} (dictionary key),
+ * {@code time}, {@code delta}, {@code balance}, {@code reason}, {@code source}, with an index
+ * on {@code (uuid, currency, id)} so each page is one index range scan, and one on
+ * {@code time} to find where a rollback starts.
+ */
+public final class HistoryRows {
+
+    /** Longest source kept; longer ones are truncated. */
+    public static final int SOURCE_LENGTH = 64;
+
+    private HistoryRows() {}
+
+    public static String insertSql(String table) {
+        return "INSERT INTO " + table + "(uuid,currency,time,delta,balance,reason,source) VALUES(?,?,?,?,?,?,?)";
+    }
+
+    /**
+     * Keyset page, newest first: binds uuid, currency, id bound and limit.
+     */
+    public static String pageSql(String table) {
+        return "SELECT id, time, delta, balance, reason, source FROM " + table +
+                " WHERE uuid=? AND currency=? AND id<? ORDER BY id DESC LIMIT ?";
+    }
+
+    /**
+     * Lowest and highest id recorded after a time: binds the time.
+     */
+    public static String boundsSql(String table) {
+        return "SELECT MIN(id), MAX(id) FROM " + table + " WHERE time>?";
+    }
+
+    /**
+     * One id range of a currency after a time, in id order: binds the range, currency,
+     * time and, for one player, the uuid.
+     */
+    public static String scanSql(String table, boolean onePlayer) {
+        return "SELECT id, uuid, time, delta, balance, reason, source FROM " + table +
+                " WHERE id>=? AND id<? AND currency=? AND time>?" + (onePlayer ? " AND uuid=?" : "") +
+                " ORDER BY id";
+    }
+
+    public static void bind(PreparedStatement ps, CurrencyKeys keys, HistoryEntry e) throws SQLException {
+        ps.setBytes(1, BinaryUuid.toBytes(e.getPlayer()));
+        ps.setInt(2, keys.get(e.getCurrencyId()));
+        ps.setLong(3, e.getTimestamp());
+        ps.setDouble(4, e.getDelta());
+        ps.setDouble(5, e.getBalance());
+        ps.setString(6, e.getReason() != null ? e.getReason().name() : null);
+        String source = e.getSource();
+        ps.setString(7, source != null && source.length() > SOURCE_LENGTH ? source.substring(0, SOURCE_LENGTH) : source);
+    }
+
+    /**
+     * Bind and run {@link #pageSql}.
+     *
+     * @param beforeId only entries older than this id; 0 for the newest page
+     */
+    public static List<HistoryEntry> page(PreparedStatement ps, CurrencyKeys keys, UUID player, String currencyId,
+                                          long beforeId, int limit) throws SQLException {
+        ps.setBytes(1, BinaryUuid.toBytes(player));
+        ps.setInt(2, keys.get(currencyId));
+        ps.setLong(3, beforeId > 0 ? beforeId : Long.MAX_VALUE);
+        ps.setInt(4, limit);
+        List<HistoryEntry> entries = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                entries.add(new HistoryEntry(rs.getLong(1), rs.getLong(2), player, currencyId,
+                        rs.getDouble(3), rs.getDouble(4), reason(rs.getString(5)), rs.getString(6)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Bind and run {@link #boundsSql}.
+     *
+     * @return {@code {min, max}}, or null if nothing was recorded after {@code since}
+     */
+    public static long[] bounds(PreparedStatement ps, long since) throws SQLException {
+        ps.setLong(1, since);
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return null;
+            long min = rs.getLong(1);
+            if (rs.wasNull()) return null;
+            return new long[]{min, rs.getLong(2)};
+        }
+    }
+
+    /**
+     * Bind and run {@link #scanSql}, streaming rows to the visitor.
+     *
+     * @return rows visited
+     */
+    public static long scan(PreparedStatement ps, CurrencyKeys keys, String currencyId, UUID player, long since,
+                            long fromId, long toId, StorageProvider.HistoryVisitor visitor) throws SQLException {
+        ps.setLong(1, fromId);
+        ps.setLong(2, toId);
+        ps.setInt(3, keys.get(currencyId));
+        ps.setLong(4, since);
+        if (player != null) ps.setBytes(5, BinaryUuid.toBytes(player));
+        long n = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                visitor.visit(new HistoryEntry(rs.getLong(1), rs.getLong(3), BinaryUuid.fromBytes(rs.getBytes(2)),
+                        currencyId, rs.getDouble(4), rs.getDouble(5), reason(rs.getString(6)), rs.getString(7)));
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static BalanceChangeEvent.Reason reason(String name) {
+        if (name == null) return null;
+        try {
+            return BalanceChangeEvent.Reason.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
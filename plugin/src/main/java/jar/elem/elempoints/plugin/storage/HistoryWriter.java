@@ -0,0 +1,167 @@
+package jar.elem.elempoints.plugin.storage;
+
+import jar.elem.elempoints.api.history.HistoryEntry;
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Batches history entries and appends them with {@link StorageProvider#appendHistory},
+ * one insert per provider on every flush interval.
+ * <p>
+ * Recording an entry only queues it, so the mutation path never waits for the history
+ * table. Only one flush is in flight at a time and the next one polls the queue after it
+ * settled, so a failed batch, which goes back to the front of the queue, is still written
+ * ahead of everything recorded after it. The batch of a provider that is
+ * {@linkplain StorageProvider#isAvailable unavailable} is put back the same way. Ids thus
+ * follow the order entries were added in. Beyond {@code maxPending} queued entries new ones
+ * are dropped and counted rather than growing without bound while the database is down;
+ * {@link #getLastDropped} tells a rollback that the history after that point has gaps.
+ */
+public final class HistoryWriter {
+
+    private final ElemPointsPlugin plugin;
+    private final StorageFactory storageFactory;
+    private final long flushIntervalTicks;
+    private final int maxPending;
+
+    private final ConcurrentLinkedDeque<HistoryEntry> queue = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastDropped;
+    // Set while the queue is full, so dropping is logged once per episode
+    private final AtomicBoolean full = new AtomicBoolean();
+    // Set while flushes fail, so the failure is logged once rather than every interval
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private BukkitTask task;
+
+    public HistoryWriter(ElemPointsPlugin plugin, StorageFactory storageFactory,
+                         long flushIntervalTicks, int maxPending) {
+        this.plugin = plugin;
+        this.storageFactory = storageFactory;
+        this.flushIntervalTicks = Math.max(1L, flushIntervalTicks);
+        this.maxPending = maxPending;
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flushIfIdle,
+                flushIntervalTicks, flushIntervalTicks);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Queue one entry for the next flush.
+     */
+    public void add(HistoryEntry entry) {
+        if (maxPending > 0 && size.get() >= maxPending) {
+            dropped.incrementAndGet();
+            lastDropped = System.currentTimeMillis();
+            if (full.compareAndSet(false, true)) {
+                plugin.getLogger().warning("[Storage] History queue is full (" + maxPending +
+                        " entries), new entries are dropped until it drains.");
+            }
+            return;
+        }
+        full.set(false);
+        queue.addLast(entry);
+        size.incrementAndGet();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /** Entries dropped because the queue was full. */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /** Epoch millis of the last dropped entry, or 0 if none was dropped since startup. */
+    public long getLastDropped() {
+        return lastDropped;
+    }
+
+    private synchronized void flushIfIdle() {
+        if (lastFlush.isDone()) flush();
+    }
+
+    /**
+     * Write every queued entry.
+     *
+     * @return future completing once this flush (and every earlier one) finished; never
+     *         completes exceptionally, failed entries are queued again
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        // Wait for the batch in flight: if it fails it goes back ahead of what is queued now
+        if (!lastFlush.isDone()) return lastFlush.thenCompose(v -> flush());
+        Map<StorageProvider, List<HistoryEntry>> batches = new LinkedHashMap<>();
+        HistoryEntry e;
+        while ((e = queue.pollFirst()) != null) {
+            size.decrementAndGet();
+            batches.computeIfAbsent(storageFactory.getProvider(e.getCurrencyId()), k -> new ArrayList<>()).add(e);
+        }
+        if (batches.isEmpty()) return lastFlush;
+
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        batches.forEach((sp, batch) -> {
+            if (!sp.isAvailable()) {
+                requeue(batch);
+                return;
+            }
+            CompletableFuture<Void> append;
+            try {
+                append = sp.appendHistory(batch);
+            } catch (RuntimeException ex) {
+                append = CompletableFuture.failedFuture(ex);
+            }
+            writes.add(append
+                    .handle((v, t) -> {
+                        if (t == null) {
+                            if (failing.compareAndSet(true, false)) {
+                                plugin.getLogger().info("[Storage] History writes recovered.");
+                            }
+                            return null;
+                        }
+                        requeue(batch);
+                        if (!(t.getCause() instanceof StorageUnavailableException) && failing.compareAndSet(false, true)) {
+                            plugin.getLogger().log(Level.WARNING,
+                                    "[Storage] Could not write transaction history, retrying on the next flush", t);
+                        }
+                        return null;
+                    }));
+        });
+        if (writes.isEmpty()) return lastFlush;
+        if (plugin.getConfig().getBoolean("general.debug", false)) {
+            plugin.getLogger().info("[Storage] Flushing " + batches.values().stream().mapToInt(List::size).sum() +
+                    " history entries.");
+        }
+        lastFlush = CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+        return lastFlush;
+    }
+
+    /**
+     * Put a batch back at the front in its original order, ahead of newer entries.
+     */
+    private void requeue(List<HistoryEntry> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            queue.addFirst(batch.get(i));
+            size.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Copies the v1 balance table (text uuid, currency name in the key) into the v2 layout
+ * (binary uuid, currency dictionary key).
+ * <p>
+ * Rows are copied in uuid order, one small chunk per transaction, so neither table is
+ * locked for long and the plugin keeps serving while it runs. Rows already present in v2
+ * are newer writes and are never overwritten. The position of the last committed chunk is
+ * kept in the meta table, so a restart resumes where it stopped.
+ */
+public final class LegacyBalancesMigration implements SchemaMigrator.BackgroundStep {
+
+    private static final String DONE_KEY = "balances_v2";
+    private static final String CURSOR_KEY = "balances_v2.cursor";
+
+    private final String legacyTable;
+    private final String metaTable;
+    private final String upsertMeta;
+    private final String insertIfAbsent;
+    private final CurrencyKeys keys;
+    private final int chunkSize;
+
+    /**
+     * @param upsertMeta     dialect-specific upsert of {@code (k, v)} into the meta table
+     * @param insertIfAbsent dialect-specific insert of {@code (uuid, currency, balance, units, updated)}
+     *                       into the v2 table that keeps existing rows
+     */
+    public LegacyBalancesMigration(String legacyTable, String metaTable, String upsertMeta,
+                                   String insertIfAbsent, CurrencyKeys keys, int chunkSize) {
+        this.legacyTable = legacyTable;
+        this.metaTable = metaTable;
+        this.upsertMeta = upsertMeta;
+        this.insertIfAbsent = insertIfAbsent;
+        this.keys = keys;
+        this.chunkSize = chunkSize;
+    }
+
+    public static boolean tableExists(Connection c, String table) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getTables(c.getCatalog(), null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Check whether there is anything left to copy and, if so, create dictionary keys for
+     * every currency found in the legacy table.
+     */
+    @Override
+    public boolean prepare(Connection c) throws SQLException {
+        if ("done".equals(getMeta(c, DONE_KEY))) return false;
+        if (!tableExists(c, legacyTable)) {
+            setMeta(c, DONE_KEY, "done");
+            return false;
+        }
+
+        MinorUnits.ensureColumn(c, legacyTable);
+        List<String> names = new ArrayList<>();
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT DISTINCT currency FROM " + legacyTable)) {
+            while (rs.next()) names.add(rs.getString(1));
+        }
+        for (String name : names) keys.remember(name, keys.lookupOrCreate(c, name));
+        return true;
+    }
+
+    @Override
+    public int runChunk(Connection c) throws SQLException {
+        String cursor = getMeta(c, CURSOR_KEY);
+        String lastUuid = "", lastCurrency = "";
+        if (cursor != null) {
+            int tab = cursor.indexOf('\t');
+            lastUuid = cursor.substring(0, tab);
+            lastCurrency = cursor.substring(tab + 1);
+        }
+
+        int read = 0;
+        try (PreparedStatement select = c.prepareStatement(
+                "SELECT uuid, currency, balance, units, updated FROM " + legacyTable +
+                        " WHERE (uuid, currency) > (?, ?) ORDER BY uuid, currency LIMIT ?");
+             PreparedStatement insert = c.prepareStatement(insertIfAbsent)) {
+            select.setString(1, lastUuid);
+            select.setString(2, lastCurrency);
+            select.setInt(3, chunkSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    read++;
+                    lastUuid = rs.getString(1);
+                    lastCurrency = rs.getString(2);
+                    UUID uuid;
+                    try {
+                        uuid = UUID.fromString(lastUuid);
+                    } catch (IllegalArgumentException e) {
+                        continue; // not a player row
+                    }
+                    insert.setBytes(1, BinaryUuid.toBytes(uuid));
+                    insert.setInt(2, keys.get(lastCurrency));
+                    insert.setDouble(3, rs.getDouble(3));
+                    long units = rs.getLong(4);
+                    if (rs.wasNull()) insert.setNull(4, Types.BIGINT);
+                    else insert.setLong(4, units);
+                    insert.setLong(5, rs.getLong(5));
+                    insert.addBatch();
+                }
+            }
+            if (read > 0) insert.executeBatch();
+        }
+
+        if (read == 0) {
+            setMeta(c, DONE_KEY, "done");
+            return -1;
+        }
+        setMeta(c, CURSOR_KEY, lastUuid + "\t" + lastCurrency);
+        return read;
+    }
+
+    private String getMeta(Connection c, String key) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT v FROM " + metaTable + " WHERE k=?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private void setMeta(Connection c, String key, String value) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(upsertMeta)) {
+            ps.setString(1, key);
+            ps.setString(2, value);
+            ps.executeUpdate();
+        }
+    }
+}
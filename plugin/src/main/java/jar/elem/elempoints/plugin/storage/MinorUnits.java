@@ -0,0 +1,84 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precision of fixed-point currencies, shared by every provider.
+ * <p>
+ * Rows keep both columns: {@code balance} (floating point, for compatibility and for
+ * currencies without decimals) and {@code units} (BIGINT minor units, authoritative for
+ * fixed-point currencies). Writing both means {@code economy.decimals} can be switched on
+ * or off without a migration.
+ * <p>
+ * Balances cross the provider interface as doubles. For a fixed-point currency such a
+ * double is always {@code units / 10^decimals}, which converts back to the same units
+ * exactly while {@code |units| < 2^53}.
+ */
+public final class MinorUnits {
+
+    private final Map<String, Long> scales = new ConcurrentHashMap<>();
+
+    /**
+     * @param decimals decimal places, or -1 for a floating-point currency
+     */
+    public void register(String currencyId, int decimals) {
+        if (decimals < 0) {
+            scales.remove(currencyId);
+            return;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        scales.put(currencyId, scale);
+    }
+
+    public boolean isFixedPoint(String currencyId) {
+        return scales.containsKey(currencyId);
+    }
+
+    /**
+     * @return minor units per major unit, or null for a floating-point currency
+     */
+    public Long getScale(String currencyId) {
+        return scales.get(currencyId);
+    }
+
+    /**
+     * Bind the {@code units} parameter: minor units for fixed-point currencies, NULL otherwise.
+     */
+    public void bind(PreparedStatement ps, int index, String currencyId, double balance) throws SQLException {
+        Long scale = scales.get(currencyId);
+        if (scale != null) ps.setLong(index, Math.round(balance * scale));
+        else ps.setNull(index, Types.BIGINT);
+    }
+
+    /**
+     * Bind an amount in the unit of the column that is authoritative for the currency:
+     * minor units for fixed-point currencies, a double otherwise.
+     */
+    public void bindAmount(PreparedStatement ps, int index, String currencyId, double amount) throws SQLException {
+        Long scale = scales.get(currencyId);
+        if (scale != null) ps.setLong(index, Math.round(amount * scale));
+        else ps.setDouble(index, amount);
+    }
+
+    /**
+     * Read a balance from a row, preferring exact units when the currency is fixed-point.
+     */
+    public double read(ResultSet rs, String currencyId, int balanceColumn, int unitsColumn) throws SQLException {
+        Long scale = scales.get(currencyId);
+        if (scale != null) {
+            long units = rs.getLong(unitsColumn);
+            if (!rs.wasNull()) return units / (double) scale;
+        }
+        return rs.getDouble(balanceColumn);
+    }
+
+    /**
+     * Add the {@code units} column to a balance table created by an older version.
+     */
+    public static void ensureColumn(Connection c, String table) throws SQLException {
+        SchemaMigrator.addColumn(c, table, "units", "BIGINT NULL");
+    }
+}
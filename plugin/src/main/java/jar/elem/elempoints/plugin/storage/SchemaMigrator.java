@@ -0,0 +1,231 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered schema migrations for one database, tracked in a version table.
+ * <p>
+ * Each provider registers its steps for its own dialect, numbered from 1. Short steps
+ * (DDL, small fixes) run at startup. Long steps are {@link BackgroundStep}s: they run in
+ * chunks, one transaction each, while the plugin keeps serving, and remember their own
+ * position so a restart resumes them. Steps after an unfinished background step wait for
+ * it and then run on the same background path.
+ * <p>
+ * Steps must be safe to run again: a step can be interrupted between its work and the
+ * version row that records it.
+ * <p>
+ * Background progress is staged until the caller reports the chunk's transaction as
+ * committed, so a rolled-back chunk is simply run again.
+ */
+public final class SchemaMigrator {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection c) throws SQLException;
+    }
+
+    public interface BackgroundStep {
+        /**
+         * Called once before the first chunk, inside its own transaction.
+         *
+         * @return false if there is nothing left to do
+         */
+        boolean prepare(Connection c) throws SQLException;
+
+        /**
+         * Process the next chunk and save its position in the same transaction.
+         *
+         * @return rows processed, or -1 if nothing was left (the step is then complete)
+         */
+        int runChunk(Connection c) throws SQLException;
+    }
+
+    private static final class Entry {
+        final int version;
+        final String description;
+        final Step step;
+        final BackgroundStep background;
+
+        Entry(int version, String description, Step step, BackgroundStep background) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+            this.background = background;
+        }
+    }
+
+    private final String versionTable;
+    private final String recordSql;
+    private final List<Entry> steps = new ArrayList<>();
+    private volatile int version;
+    // Index of the next step to run, or steps.size() when up to date
+    private volatile int next;
+    // Progress of the chunk in flight, published by committed()
+    private int stagedVersion, stagedNext;
+
+    /**
+     * @param recordSql dialect-specific insert of {@code (version, description, applied)} into
+     *                  the version table that ignores duplicates, since servers sharing a
+     *                  database may apply the same step at once
+     */
+    public SchemaMigrator(String versionTable, String recordSql) {
+        this.versionTable = versionTable;
+        this.recordSql = recordSql;
+    }
+
+    public SchemaMigrator step(int version, String description, Step step) {
+        return add(new Entry(version, description, step, null));
+    }
+
+    public SchemaMigrator background(int version, String description, BackgroundStep step) {
+        return add(new Entry(version, description, null, step));
+    }
+
+    private SchemaMigrator add(Entry e) {
+        if (!steps.isEmpty() && steps.get(steps.size() - 1).version >= e.version) {
+            throw new IllegalArgumentException("Schema step " + e.version + " is out of order");
+        }
+        steps.add(e);
+        return this;
+    }
+
+    /** Highest version fully applied. */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getLatestVersion() {
+        return steps.isEmpty() ? 0 : steps.get(steps.size() - 1).version;
+    }
+
+    /** True while a background step (or a step queued behind it) is still pending. */
+    public boolean isRunning() {
+        return version < getLatestVersion();
+    }
+
+    /**
+     * Description of the step currently running, or null when up to date.
+     */
+    public String getCurrentStep() {
+        int i = next;
+        return i < steps.size() ? steps.get(i).description : null;
+    }
+
+    /**
+     * Bring the schema up to date as far as possible at startup. Commits after each step
+     * unless the connection is in auto-commit mode.
+     *
+     * @return true if a background step still has to run; drive it with {@link #runChunk}
+     */
+    public boolean migrate(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE IF NOT EXISTS " + versionTable + " (" +
+                    "  version INT NOT NULL PRIMARY KEY," +
+                    "  description VARCHAR(255) NOT NULL," +
+                    "  applied BIGINT NOT NULL" +
+                    ")");
+            try (ResultSet rs = s.executeQuery("SELECT MAX(version) FROM " + versionTable)) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        stagedVersion = version;
+        stagedNext = 0;
+        while (stagedNext < steps.size() && steps.get(stagedNext).version <= version) stagedNext++;
+        boolean pending = advance(c, true);
+        commit(c);
+        committed();
+        return pending;
+    }
+
+    /**
+     * Run one chunk of the current background step and, once that step is complete, the
+     * short steps it was holding back. The caller commits and then calls {@link #committed}.
+     *
+     * @return rows processed by the chunk
+     */
+    public int runChunk(Connection c) throws SQLException {
+        stagedVersion = version;
+        stagedNext = next;
+        Entry e = steps.get(stagedNext);
+        int rows = e.background.runChunk(c);
+        if (rows < 0) {
+            record(c, e);
+            stagedNext++;
+            advance(c, false);
+        }
+        return rows;
+    }
+
+    /**
+     * Publish the progress of the last {@link #runChunk} after its transaction committed.
+     */
+    public void committed() {
+        next = stagedNext;
+        version = stagedVersion;
+    }
+
+    /**
+     * Apply steps from {@link #stagedNext} until one needs background work.
+     */
+    private boolean advance(Connection c, boolean commitEach) throws SQLException {
+        while (stagedNext < steps.size()) {
+            Entry e = steps.get(stagedNext);
+            if (e.background != null) {
+                if (e.background.prepare(c)) return true;
+            } else {
+                e.step.apply(c);
+            }
+            record(c, e);
+            stagedNext++;
+            if (commitEach) {
+                commit(c);
+                committed();
+            }
+        }
+        return false;
+    }
+
+    private void record(Connection c, Entry e) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(recordSql)) {
+            ps.setInt(1, e.version);
+            ps.setString(2, e.description);
+            ps.setLong(3, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+        stagedVersion = e.version;
+    }
+
+    /**
+     * Add a column unless it already exists, so a step that adds one can run again.
+     *
+     * @param definition column type and constraints, e.g. {@code BIGINT NOT NULL DEFAULT 0}
+     */
+    public static void addColumn(Connection c, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getColumns(c.getCatalog(), null, table, column)) {
+            if (rs.next()) return;
+        }
+        try (Statement s = c.createStatement()) {
+            s.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * Create an index unless one with this name already exists on the table.
+     */
+    public static void addIndex(Connection c, String table, String index, String columns) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getIndexInfo(c.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return;
+            }
+        }
+        try (Statement s = c.createStatement()) {
+            s.execute("CREATE INDEX " + index + " ON " + table + "(" + columns + ")");
+        }
+    }
+
+    private static void commit(Connection c) throws SQLException {
+        if (!c.getAutoCommit()) c.commit();
+    }
+}
@@ -0,0 +1,262 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of balance writes that did not reach the database, replayed from the
+ * front in file order.
+ * <p>
+ * Layout: a {@link #HEADER_SIZE}-byte header (magic, format, offset of the first record
+ * not yet replayed), followed by length-prefixed records, one per spooled batch:
+ * <pre>
+ *  0 length     int    of the payload
+ *  4 crc        int    CRC32 of the payload
+ *  8 payload    short currency id length, currency id (UTF-8), int count,
+ *               then count × (uuid as 2 × long, double balance)
+ * </pre>
+ * A record torn by a crash fails its length or checksum and is cut off on open. Once every
+ * record is replayed the file is truncated back to its header. Nothing but the header
+ * offsets is held in memory. Appends may come from any thread; {@link #read} and
+ * {@link #commit} from one replayer at a time.
+ */
+public final class SpoolFile {
+
+    static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x45505331; // "EPS1"
+    private static final int FORMAT = 1;
+    private static final int ENTRY_SIZE = 24;
+
+    private final File file;
+    private final long maxBytes;
+
+    // Guarded by this
+    private FileChannel channel;
+    private long readPos = HEADER_SIZE;
+    private long writePos = HEADER_SIZE;
+
+    /**
+     * @param maxBytes largest file size; appends beyond it fail
+     */
+    public SpoolFile(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = Math.max(HEADER_SIZE + 1024L * 1024L, maxBytes);
+    }
+
+    /**
+     * Open or create the file and find where its records end.
+     *
+     * @return bytes of a torn record cut off the end, 0 if none
+     */
+    public synchronized long open() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                writeHeader(HEADER_SIZE);
+                channel.truncate(HEADER_SIZE);
+                channel.force(true);
+                readPos = writePos = HEADER_SIZE;
+                return 0;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                throw new IOException("Not a spool file: " + file.getName());
+            }
+            readPos = Math.max(HEADER_SIZE, Math.min(header.getLong(8), size));
+            long end = readPos;
+            while (end < size) {
+                long next = recordEnd(end, size);
+                if (next < 0) break;
+                end = next;
+            }
+            writePos = end;
+            if (end < size) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return size - end;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            channel = null;
+            throw e;
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        channel = null;
+    }
+
+    /** True while some records are not replayed yet. */
+    public synchronized boolean isPending() {
+        return writePos > readPos;
+    }
+
+    /** Bytes of records not replayed yet. */
+    public synchronized long getPendingBytes() {
+        return writePos - readPos;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append one batch and force it to disk.
+     */
+    public synchronized void append(String currencyId, Map<UUID, Double> balances) throws IOException {
+        if (channel == null) throw new IOException("Spool " + file.getName() + " is closed");
+        if (balances.isEmpty()) return;
+        byte[] id = currencyId.getBytes(StandardCharsets.UTF_8);
+        int payload = 2 + id.length + 4 + balances.size() * ENTRY_SIZE;
+        if (writePos + 8 + payload > maxBytes) throw new IOException("Spool " + file.getName() + " is full");
+
+        ByteBuffer b = ByteBuffer.allocate(8 + payload);
+        b.position(8);
+        b.putShort((short) id.length).put(id).putInt(balances.size());
+        for (Map.Entry<UUID, Double> e : balances.entrySet()) {
+            b.putLong(e.getKey().getMostSignificantBits())
+                    .putLong(e.getKey().getLeastSignificantBits())
+                    .putDouble(e.getValue());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 8, payload);
+        b.putInt(0, payload).putInt(4, (int) crc.getValue());
+        b.flip();
+        long p = writePos;
+        while (b.hasRemaining()) p += channel.write(b, p);
+        channel.force(false);
+        writePos = p;
+    }
+
+    /**
+     * Append only if earlier records are still waiting, so the batch lands behind them.
+     *
+     * @return false if the spool was empty and nothing was written
+     */
+    public synchronized boolean appendIfPending(String currencyId, Map<UUID, Double> balances) throws IOException {
+        if (writePos <= readPos) return false;
+        append(currencyId, balances);
+        return true;
+    }
+
+    /**
+     * Read records from the front until at least {@code maxBalances} balances are
+     * collected. Later values of the same account replace earlier ones.
+     */
+    public Batch read(int maxBalances) throws IOException {
+        long from, to;
+        synchronized (this) {
+            from = readPos;
+            to = writePos;
+        }
+        Batch batch = new Batch();
+        long p = from;
+        while (p < to && batch.balances < maxBalances) {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            readFully(head, p);
+            int length = head.getInt(0);
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, p + 8);
+            payload.flip();
+            byte[] id = new byte[payload.getShort()];
+            payload.get(id);
+            Map<UUID, Double> target = batch.byCurrency.computeIfAbsent(
+                    new String(id, StandardCharsets.UTF_8), k -> new LinkedHashMap<>());
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                target.put(new UUID(payload.getLong(), payload.getLong()), payload.getDouble());
+            }
+            batch.balances += count;
+            p += 8 + length;
+        }
+        batch.end = p;
+        return batch;
+    }
+
+    /**
+     * Everything before {@code end} is in the database. Truncates the file once it is
+     * fully replayed.
+     */
+    public synchronized void commit(long end) throws IOException {
+        if (channel == null) return;
+        readPos = end;
+        if (readPos >= writePos) {
+            readPos = writePos = HEADER_SIZE;
+            writeHeader(HEADER_SIZE);
+            channel.truncate(HEADER_SIZE);
+        } else {
+            writeHeader(readPos);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Balances read by {@link #read}, grouped by currency.
+     */
+    public static final class Batch {
+        private final Map<String, Map<UUID, Double>> byCurrency = new HashMap<>();
+        private int balances;
+        private long end;
+
+        public Map<String, Map<UUID, Double>> getBalances() { return byCurrency; }
+
+        /** Balances read, before collapsing repeated accounts. */
+        public int size() { return balances; }
+
+        /** Position to {@link #commit} once the batch is written. */
+        public long getEnd() { return end; }
+    }
+
+    // ─── Internal ───
+
+    private void writeHeader(long firstRecord) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+        b.putInt(MAGIC).putInt(FORMAT).putLong(firstRecord).flip();
+        long p = 0;
+        while (b.hasRemaining()) p += channel.write(b, p);
+    }
+
+    /**
+     * @return end of the intact record starting at {@code p}, or -1 if it is torn
+     */
+    private long recordEnd(long p, long size) throws IOException {
+        if (p + 8 > size) return -1;
+        ByteBuffer head = ByteBuffer.allocate(8);
+        readFully(head, p);
+        int length = head.getInt(0);
+        if (length < 6 || p + 8 + length > size) return -1;
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, p + 8);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        return (int) crc.getValue() == head.getInt(4) ? p + 8 + length : -1;
+    }
+
+    private void readFully(ByteBuffer b, long p) throws IOException {
+        FileChannel ch;
+        synchronized (this) {
+            ch = channel;
+        }
+        if (ch == null) throw new IOException("Spool " + file.getName() + " is closed");
+        while (b.hasRemaining()) {
+            int n = ch.read(b, p + b.position());
+            if (n < 0) throw new IOException("Unexpected end of " + file.getName());
+        }
+    }
+}
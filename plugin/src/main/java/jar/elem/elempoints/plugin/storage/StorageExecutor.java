@@ -0,0 +1,203 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Named, bounded executor that runs the blocking JDBC work of one storage provider.
+ * <p>
+ * Keeps database calls off {@link ForkJoinPool#commonPool()}, which is shared with the
+ * server and every other plugin. When the queue is full the submitting thread runs the
+ * task itself, which slows producers down instead of dropping writes. The server thread
+ * must not be slowed down that way; it submits with {@link #tryExecute} instead.
+ * <p>
+ * On Java 21+ it can run each task on its own virtual thread instead of a platform pool.
+ * Concurrency is then capped by a semaphore with {@code threads} permits, so a blocked
+ * JDBC call parks a cheap virtual thread while the number of queries in flight still
+ * matches the connection pool.
+ */
+public final class StorageExecutor implements Executor {
+
+    // Set while tryExecute submits, so a full queue rejects instead of running on the caller
+    private static final ThreadLocal<Boolean> NO_CALLER_RUNS = new ThreadLocal<>();
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+
+    // Platform mode
+    private final ThreadPoolExecutor pool;
+
+    // Virtual mode
+    private final ExecutorService virtual;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public StorageExecutor(String name, int threads, int queueCapacity) {
+        this(name, threads, queueCapacity, false);
+    }
+
+    /**
+     * @param preferVirtual use virtual threads if this JVM supports them, otherwise fall back to a platform pool
+     */
+    public StorageExecutor(String name, int threads, int queueCapacity, boolean preferVirtual) {
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+
+        ExecutorService vt = preferVirtual ? newVirtualExecutor(name) : null;
+        if (vt != null) {
+            this.virtual = vt;
+            this.permits = new Semaphore(threads);
+            this.pool = null;
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            this.pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    r -> {
+                        Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new RejectedExecutionHandler() {
+                        private final RejectedExecutionHandler callerRuns = new ThreadPoolExecutor.CallerRunsPolicy();
+
+                        @Override
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                            if (NO_CALLER_RUNS.get() != null) throw new RejectedExecutionException("Queue full");
+                            callerRuns.rejectedExecution(r, executor);
+                        }
+                    });
+            this.pool.allowCoreThreadTimeOut(true);
+            this.virtual = null;
+            this.permits = null;
+        }
+    }
+
+    /**
+     * @return true if virtual threads are available on this JVM (Java 21+)
+     */
+    public static boolean isVirtualSupported() {
+        ExecutorService probe = newVirtualExecutor("ElemPoints-Probe");
+        if (probe == null) return false;
+        probe.shutdown();
+        return true;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (pool != null) {
+            pool.execute(command);
+            return;
+        }
+        if (virtual.isShutdown() || waiting.get() >= queueCapacity) {
+            // Same back-pressure as CallerRunsPolicy
+            command.run();
+            return;
+        }
+        submitVirtual(command);
+    }
+
+    private void submitVirtual(Runnable command) {
+        waiting.incrementAndGet();
+        virtual.execute(() -> {
+            permits.acquireUninterruptibly();
+            waiting.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                active.decrementAndGet();
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Queue a task without ever running it on the calling thread, for callers that must
+     * not block (the server thread).
+     *
+     * @return false if the queue is full or the executor is shut down; the task did not run
+     */
+    public boolean tryExecute(Runnable command) {
+        if (pool != null) {
+            NO_CALLER_RUNS.set(Boolean.TRUE);
+            try {
+                if (pool.isShutdown()) return false;
+                pool.execute(command);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            } finally {
+                NO_CALLER_RUNS.remove();
+            }
+        }
+        if (virtual.isShutdown() || waiting.get() >= queueCapacity) return false;
+        submitVirtual(command);
+        return true;
+    }
+
+    public String getName() { return name; }
+
+    public boolean isVirtual() { return virtual != null; }
+
+    public boolean isShutdown() {
+        return pool != null ? pool.isShutdown() : virtual.isShutdown();
+    }
+
+    /** Maximum number of tasks running at once. */
+    public int getConcurrency() { return threads; }
+
+    /** Tasks waiting for a thread. */
+    public int getQueueDepth() {
+        return pool != null ? pool.getQueue().size() : waiting.get();
+    }
+
+    public int getQueueCapacity() { return queueCapacity; }
+
+    /** Tasks currently running. */
+    public int getActiveCount() {
+        return pool != null ? pool.getActiveCount() : active.get();
+    }
+
+    /**
+     * Stop accepting work and wait for queued tasks to finish.
+     */
+    public void shutdown(long timeoutMillis, Logger logger) {
+        ExecutorService es = pool != null ? pool : virtual;
+        es.shutdown();
+        try {
+            if (!es.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("[Storage] " + name + " did not finish " + getQueueDepth() +
+                        " queued tasks in time; abandoning them.");
+                es.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            es.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory())},
+     * looked up reflectively because the plugin is compiled for Java 17.
+     *
+     * @return the executor, or null if virtual threads are unavailable
+     */
+    private static ExecutorService newVirtualExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Older JVM, or virtual threads still behind --enable-preview
+            return null;
+        }
+    }
+}
@@ -6,29 +6,43 @@ import jar.elem.elempoints.plugin.storage.mysql.MySQLProvider;
 import jar.elem.elempoints.plugin.storage.sqlite.SQLiteProvider;
 import org.bukkit.configuration.ConfigurationSection;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
 
 /**
  * Factory that creates storage providers from configuration.
  */
 public final class StorageFactory {
 
+    // Read-only SQLite connections per database file
+    private static final int DEFAULT_READERS = 4;
+
     private final ElemPointsPlugin plugin;
     private final Map<String, StorageProvider> providers = new HashMap<>();
+    private final MinorUnits minorUnits = new MinorUnits();
+    private final StorageTimeouts timeouts;
     private StorageProvider globalProvider;
 
     public StorageFactory(ElemPointsPlugin plugin) {
         this.plugin = plugin;
+        ConfigurationSection t = plugin.getConfig().getConfigurationSection("storage.timeouts");
+        this.timeouts = new StorageTimeouts(
+                t != null ? t.getLong("read", 3000L) : 3000L,
+                t != null ? t.getLong("write", 5000L) : 5000L,
+                t != null ? t.getLong("bulk", 30000L) : 30000L,
+                t != null ? t.getLong("bulk-per-row", 5L) : 5L);
     }
 
     /**
      * Initialize the global storage provider from config.yml database section.
      */
     public void initGlobal() {
+        if (virtualThreads() && !StorageExecutor.isVirtualSupported()) {
+            plugin.getLogger().warning("[Storage] virtual-threads requires Java 21+; using platform threads.");
+        }
         ConfigurationSection dbSection = plugin.getConfig().getConfigurationSection("database");
-        globalProvider = createFromSection(dbSection, "storage/global.db");
+        globalProvider = guard(createFromSection(dbSection, "storage/global.db"));
         globalProvider.init();
     }
 
@@ -38,11 +52,17 @@ public final class StorageFactory {
     public void initCurrency(CurrencyConfig config) {
         if (config.hasCustomDatabase()) {
             Map<String, Object> dbMap = config.getDatabaseOverride();
-            StorageProvider sp = createFromMap(dbMap, "storage/" + config.getId() + ".db");
+            StorageProvider sp = guard(createFromMap(dbMap, "storage/" + config.getId() + ".db"));
             sp.init();
             providers.put(config.getId(), sp);
             plugin.getLogger().info("[Storage] Custom storage for '" + config.getId() + "' initialized.");
         }
+        try {
+            getProvider(config.getId()).registerCurrency(config.getId()).join();
+        } catch (CompletionException e) {
+            plugin.getLogger().log(Level.SEVERE, "[Storage] Could not register currency '" +
+                    config.getId() + "' with storage", e.getCause());
+        }
     }
 
     /**
@@ -53,7 +73,37 @@ public final class StorageFactory {
     }
 
     /**
-     * Shutdown all providers.
+     * Precision of fixed-point currencies, consulted by every provider when reading and writing rows.
+     */
+    public MinorUnits getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * Group currencies by the provider that stores them, so each backend can be queried once.
+     */
+    public Map<StorageProvider, List<String>> groupByProvider(Collection<String> currencyIds) {
+        Map<StorageProvider, List<String>> groups = new IdentityHashMap<>();
+        for (String id : currencyIds) {
+            groups.computeIfAbsent(getProvider(id), k -> new ArrayList<>()).add(id);
+        }
+        return groups;
+    }
+
+    /**
+     * All distinct providers, global first.
+     */
+    public Collection<StorageProvider> all() {
+        List<StorageProvider> all = new ArrayList<>();
+        if (globalProvider != null) all.add(globalProvider);
+        for (StorageProvider sp : providers.values()) {
+            if (!all.contains(sp)) all.add(sp);
+        }
+        return all;
+    }
+
+    /**
+     * Shutdown all providers. Each one drains its executor before closing connections.
      */
     public void shutdownAll() {
         providers.values().forEach(StorageProvider::shutdown);
@@ -63,20 +113,48 @@ public final class StorageFactory {
 
     // ─── Internal factory methods ───
 
+    /**
+     * Put deadlines and a circuit breaker in front of a provider.
+     */
+    private StorageProvider guard(StorageProvider sp) {
+        ConfigurationSection b = plugin.getConfig().getConfigurationSection("storage.breaker");
+        CircuitBreaker breaker = new CircuitBreaker(sp.getExecutor().getName(), plugin.getLogger(),
+                b != null ? b.getInt("failure-threshold", 5) : 5,
+                b != null ? b.getLong("slow-call", 2000L) : 2000L,
+                (b != null ? b.getLong("open-duration", 30L) : 30L) * 1000L);
+        return new GuardedProvider(sp, breaker, timeouts);
+    }
+
+    private int queueSize() {
+        return Math.max(16, plugin.getConfig().getInt("storage.executor.queue-size", 4096));
+    }
+
+    /**
+     * MySQL work runs on virtual threads when enabled and supported by the JVM.
+     * SQLite keeps its single platform thread: it has one connection and relies on FIFO order.
+     */
+    private boolean virtualThreads() {
+        return plugin.getConfig().getBoolean("storage.executor.virtual-threads", false);
+    }
+
     private StorageProvider createFromSection(ConfigurationSection section, String defaultFile) {
-        if (section == null) return new SQLiteProvider(plugin, defaultFile);
+        if (section == null) return new SQLiteProvider(plugin, defaultFile, DEFAULT_READERS, queueSize(), minorUnits, timeouts);
         String type = section.getString("type", "SQLITE").toUpperCase();
         if ("MYSQL".equals(type)) {
             return createMySQL(section.getConfigurationSection("mysql"));
         }
         String file = defaultFile;
+        int readers = DEFAULT_READERS;
         ConfigurationSection sqlite = section.getConfigurationSection("sqlite");
-        if (sqlite != null) file = sqlite.getString("file", defaultFile);
-        return new SQLiteProvider(plugin, file);
+        if (sqlite != null) {
+            file = sqlite.getString("file", defaultFile);
+            readers = sqlite.getInt("readers", DEFAULT_READERS);
+        }
+        return new SQLiteProvider(plugin, file, readers, queueSize(), minorUnits, timeouts);
     }
 
     private StorageProvider createMySQL(ConfigurationSection mysql) {
-        if (mysql == null) return new SQLiteProvider(plugin, "storage/global.db");
+        if (mysql == null) return new SQLiteProvider(plugin, "storage/global.db", DEFAULT_READERS, queueSize(), minorUnits, timeouts);
         Map<String, String> props = new LinkedHashMap<>();
         ConfigurationSection propsSection = mysql.getConfigurationSection("properties");
         if (propsSection != null) {
@@ -94,7 +172,7 @@ public final class StorageFactory {
                 pool != null ? pool.getInt("min-idle", 2) : 2,
                 pool != null ? pool.getLong("max-lifetime", 1800000L) : 1800000L,
                 pool != null ? pool.getLong("timeout", 5000L) : 5000L,
-                props);
+                props, queueSize(), virtualThreads(), minorUnits, timeouts);
     }
 
     @SuppressWarnings("unchecked")
@@ -119,10 +197,11 @@ public final class StorageFactory {
                     ((Number) pool.getOrDefault("min-idle", 2)).intValue(),
                     ((Number) pool.getOrDefault("max-lifetime", 1800000L)).longValue(),
                     ((Number) pool.getOrDefault("timeout", 5000L)).longValue(),
-                    props);
+                    props, queueSize(), virtualThreads(), minorUnits, timeouts);
         }
         Map<String, Object> sqlite = (Map<String, Object>) map.getOrDefault("sqlite", new HashMap<>());
         String file = (String) sqlite.getOrDefault("file", defaultFile);
-        return new SQLiteProvider(plugin, file);
+        int readers = ((Number) sqlite.getOrDefault("readers", DEFAULT_READERS)).intValue();
+        return new SQLiteProvider(plugin, file, readers, queueSize(), minorUnits, timeouts);
     }
 }
\ No newline at end of file
@@ -1,5 +1,12 @@
 package jar.elem.elempoints.plugin.storage;
 
+import jar.elem.elempoints.api.history.HistoryEntry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -13,10 +20,203 @@ public interface StorageProvider {
     void shutdown();
     boolean isConnected();
 
+    /**
+     * False while calls are refused because the database keeps failing or stalling.
+     * Background writers check this to keep their work queued until it recovers.
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Executor that runs this provider's blocking database work.
+     */
+    StorageExecutor getExecutor();
+
+    /**
+     * Every executor owned by this provider, for status output.
+     */
+    default List<StorageExecutor> getExecutors() {
+        return Collections.singletonList(getExecutor());
+    }
+
+    /**
+     * Make sure the currency has a key in this provider's currency dictionary.
+     * Called once per currency at startup, before any balance of it is read or written.
+     */
+    CompletableFuture<Void> registerCurrency(String currencyId);
+
+    /**
+     * Reads do not wait for writes still queued inside the provider. This completes once
+     * every write submitted before it has been committed (or has failed), for callers that
+     * read back what they wrote. Providers that write synchronously have nothing to wait for.
+     */
+    default CompletableFuture<Void> flush() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return the stored balance, or a negative value if the player has no row;
+     *         completes exceptionally on a database error
+     */
     CompletableFuture<Double> getBalance(UUID player, String currencyId);
+    /**
+     * @return completes exceptionally if the write failed
+     */
     CompletableFuture<Void> setBalance(UUID player, String currencyId, double amount);
     CompletableFuture<Boolean> hasAccount(UUID player, String currencyId);
     CompletableFuture<Void> createAccount(UUID player, String currencyId, double defaultBalance);
-    CompletableFuture<Map<UUID, Double>> getAllBalances(String currencyId);
+
+    /**
+     * Add {@code delta} to an existing balance in one atomic statement and read the result
+     * back in the same transaction, so servers sharing the database never overwrite each
+     * other's changes. The change is refused if the result would fall below {@code min}
+     * or rise above {@code max}; pass null for no bound.
+     *
+     * @return the stored balance and whether the change was applied; completes exceptionally
+     *         on a database error or if the account has no row
+     */
+    CompletableFuture<DeltaResult> addBalance(UUID player, String currencyId, double delta, Double min, Double max);
+
+    /**
+     * Read a balance with its row version, for {@link #compareAndSetBalance}.
+     *
+     * @return the row, or null if the account has no row; completes exceptionally on a database error
+     */
+    CompletableFuture<VersionedBalance> getVersionedBalance(UUID player, String currencyId);
+
+    /**
+     * Overwrite a balance only if its row still has {@code expectedVersion}; the version is
+     * then incremented. Every other write increments it too.
+     *
+     * @return true if written, false if the row changed meanwhile; completes exceptionally on a database error
+     */
+    CompletableFuture<Boolean> compareAndSetBalance(UUID player, String currencyId, double amount, long expectedVersion);
+
+    /**
+     * Change feed: rows written at or after {@code since} (epoch millis of the {@code updated}
+     * column), ordered by {@code (updated, uuid, currency)}. Lets servers sharing the database
+     * refresh what others changed. Rows of currencies not registered on this server are
+     * returned with a null currency id, so they still mark the position in the feed.
+     *
+     * @param after last row of the previous page to continue right after it (then {@code since}
+     *              is not used), or null to start at {@code since}
+     * @return up to {@code limit} rows; completes exceptionally on a database error
+     */
+    CompletableFuture<List<BalanceChange>> getChangesSince(long since, BalanceChange after, int limit);
+
+    /**
+     * Load the listed currencies of many players with one {@code IN} query per chunk of players.
+     *
+     * @return uuid → (currencyId → balance); players or currencies without a row are absent.
+     *         Completes exceptionally on a database error, never with part of the rows
+     */
+    CompletableFuture<Map<UUID, Map<String, Double>>> loadAccounts(Collection<UUID> players,
+                                                                  Collection<String> currencyIds);
+
+    /**
+     * Insert rows for several currencies of one player in a single statement.
+     * Rows that already exist are left untouched. Completes exceptionally on a database error.
+     */
+    CompletableFuture<Void> createAccounts(UUID player, Map<String, Double> defaultBalances);
+
+    /**
+     * Stream every balance of a currency without holding them in memory.
+     * The visitor is called on the provider's thread, one row at a time, so it should be quick.
+     *
+     * @param fetchSize rows fetched per round trip
+     * @return number of rows visited; completes exceptionally if the scan failed
+     */
+    CompletableFuture<Long> scanBalances(String currencyId, int fetchSize, BalanceVisitor visitor);
+
+    /**
+     * Every balance of a currency in one map. Prefer {@link #scanBalances} for large currencies.
+     */
+    default CompletableFuture<Map<UUID, Double>> getAllBalances(String currencyId) {
+        Map<UUID, Double> map = new HashMap<>();
+        return scanBalances(currencyId, 1000, map::put).thenApply(n -> map);
+    }
+
+    /**
+     * Write many balances of one currency in a single transaction.
+     *
+     * @return completes exceptionally if the write failed; then none of the rows were written
+     */
     CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances);
-}
\ No newline at end of file
+
+    /**
+     * Add an amount to many balances of one currency in a single transaction, creating
+     * missing rows with the amount as their balance. Each row is changed in the database
+     * itself, so a write that lands meanwhile is kept.
+     *
+     * @return completes exceptionally if the write failed; then none of the rows were changed
+     */
+    CompletableFuture<Void> bulkAddBalances(String currencyId, Map<UUID, Double> amounts);
+
+    /**
+     * One page of a currency ordered by uuid (keyset pagination).
+     *
+     * @param after last uuid of the previous page, or null for the first page
+     * @return up to {@code limit} balances in uuid order; completes exceptionally if the query failed
+     */
+    CompletableFuture<LinkedHashMap<UUID, Double>> getBalancePage(String currencyId, UUID after, int limit);
+
+    /**
+     * Add {@code rate ×} every balance of {@code fromId} to {@code toId} inside the database,
+     * creating missing rows. Both currencies must live in this provider.
+     *
+     * @return number of source accounts merged
+     */
+    CompletableFuture<Integer> mergeCurrency(String fromId, String toId, double rate);
+
+    /**
+     * Insert history entries in one batch. Their ids are ignored; the table assigns them.
+     *
+     * @return completes exceptionally if the insert failed; then none were stored
+     */
+    CompletableFuture<Void> appendHistory(List<HistoryEntry> entries);
+
+    /**
+     * One page of an account's history, newest first (keyset pagination on the entry id).
+     *
+     * @param beforeId id of the last entry of the previous page, or 0 for the newest page
+     * @return completes exceptionally on a database error
+     */
+    CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit);
+
+    /**
+     * Lowest and highest history id among entries recorded after a time, so a scan of
+     * everything since then can be split into id ranges.
+     *
+     * @param since epoch millis
+     * @return {@code {min, max}}, or null if nothing was recorded since; completes
+     *         exceptionally on a database error
+     */
+    CompletableFuture<long[]> getHistoryBounds(long since);
+
+    /**
+     * Visit the history of one currency with ids in {@code [fromId, toId)} recorded after
+     * {@code since}, in id order. Ranges are independent and can be scanned in parallel.
+     *
+     * @param player only this player's entries, or null for every account
+     * @return number of entries visited; completes exceptionally if the scan failed
+     */
+    CompletableFuture<Long> scanHistory(String currencyId, UUID player, long since, long fromId, long toId,
+                                        HistoryVisitor visitor);
+
+    /**
+     * Receives rows from {@link #scanBalances}.
+     */
+    @FunctionalInterface
+    interface BalanceVisitor {
+        void visit(UUID player, double balance);
+    }
+
+    /**
+     * Receives entries from {@link #scanHistory}.
+     */
+    @FunctionalInterface
+    interface HistoryVisitor {
+        void visit(HistoryEntry entry);
+    }
+}
@@ -0,0 +1,49 @@
+package jar.elem.elempoints.plugin.storage;
+
+/**
+ * Deadlines of database calls ({@code storage.timeouts}), in millis; 0 = none.
+ * <p>
+ * {@link GuardedProvider} fails the caller's future at the deadline, and the providers pass
+ * the same values to the driver so the statement itself is cancelled too.
+ */
+public final class StorageTimeouts {
+
+    public static final StorageTimeouts NONE = new StorageTimeouts(0L, 0L, 0L, 0L);
+
+    private final long read;
+    private final long write;
+    private final long bulk;
+    private final long bulkPerRow;
+
+    public StorageTimeouts(long read, long write, long bulk, long bulkPerRow) {
+        this.read = Math.max(0L, read);
+        this.write = Math.max(0L, write);
+        this.bulk = Math.max(0L, bulk);
+        this.bulkPerRow = Math.max(0L, bulkPerRow);
+    }
+
+    /** Single-row reads. */
+    public long getRead() { return read; }
+
+    /** Single-row writes. */
+    public long getWrite() { return write; }
+
+    /** Batch reads: player loads, pages, the change feed. */
+    public long getBulk() { return bulk; }
+
+    /**
+     * Batch write of {@code rows} rows: the bulk deadline plus a share per row, so a large
+     * flush is not cut off at the same point as a small one.
+     */
+    public long getBulkWrite(int rows) {
+        return bulk > 0 ? bulk + bulkPerRow * rows : 0L;
+    }
+
+    /**
+     * JDBC query timeout for a deadline: whole seconds, rounded up so it never fires early.
+     */
+    public static int toSeconds(long millis) {
+        if (millis <= 0) return 0;
+        return (int) Math.min(Integer.MAX_VALUE, (millis + 999L) / 1000L);
+    }
+}
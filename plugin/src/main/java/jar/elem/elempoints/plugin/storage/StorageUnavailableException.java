@@ -0,0 +1,26 @@
+package jar.elem.elempoints.plugin.storage;
+
+import java.sql.SQLTransientException;
+
+/**
+ * A storage call was refused without reaching the database because the provider's
+ * {@link CircuitBreaker} is open or a schema migration is still running. Retrying later
+ * may succeed. It says nothing about the database's health, so the breaker ignores it.
+ */
+public final class StorageUnavailableException extends SQLTransientException {
+
+    public StorageUnavailableException(String provider) {
+        super(provider + " is unavailable, serving cached balances only");
+    }
+
+    private StorageUnavailableException(String reason, Throwable cause) {
+        super(reason, cause);
+    }
+
+    /**
+     * The call needs a table or column the background migration has not created yet.
+     */
+    public static StorageUnavailableException migrating() {
+        return new StorageUnavailableException("Storage migration in progress, try again later", null);
+    }
+}
@@ -0,0 +1,20 @@
+package jar.elem.elempoints.plugin.storage;
+
+/**
+ * A stored balance together with its row version, for compare-and-set writes.
+ */
+public final class VersionedBalance {
+
+    private final double balance;
+    private final long version;
+
+    public VersionedBalance(double balance, long version) {
+        this.balance = balance;
+        this.version = version;
+    }
+
+    public double getBalance() { return balance; }
+
+    /** Incremented by every write to the row. */
+    public long getVersion() { return version; }
+}
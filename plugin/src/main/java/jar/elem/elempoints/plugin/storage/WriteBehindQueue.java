@@ -0,0 +1,189 @@
+package jar.elem.elempoints.plugin.storage;
+
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import jar.elem.elempoints.plugin.currency.Account;
+import jar.elem.elempoints.plugin.currency.CurrencyImpl;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Write-behind buffer for balance updates.
+ * <p>
+ * Each mutation marks its {@code (currency, uuid)} key dirty; the balance itself is read
+ * from the {@link Account} when the flush runs, so repeated changes to the same account
+ * collapse into a single row.
+ * Pending rows are written with {@link StorageProvider#bulkSetBalances} either
+ * on the flush interval or as soon as {@code maxPending} accounts are dirty.
+ * Flushes are chained so two batches never race for the same row. Accounts of a batch
+ * that failed are marked dirty again and retried by the next flush. With a
+ * {@link WriteSpool}, batches go through it instead: a batch the database refuses is
+ * spooled to disk, so the accounts are no longer dirty and may leave the cache. Without
+ * one, while a provider is {@linkplain StorageProvider#isAvailable unavailable} its
+ * accounts stay dirty and are not drained at all; they are written by the first flush
+ * after it recovers.
+ */
+public final class WriteBehindQueue {
+
+    private final ElemPointsPlugin plugin;
+    private final StorageFactory storageFactory;
+    private final long flushIntervalTicks;
+    private final int maxPending;
+    // Null when failed batches are kept in memory instead
+    private final WriteSpool spool;
+
+    // currencyId → dirty accounts
+    private final Map<String, Dirty> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong failures = new AtomicLong();
+
+    private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+    private BukkitTask task;
+
+    public WriteBehindQueue(ElemPointsPlugin plugin, StorageFactory storageFactory,
+                            long flushIntervalTicks, int maxPending, WriteSpool spool) {
+        this.plugin = plugin;
+        this.storageFactory = storageFactory;
+        this.flushIntervalTicks = flushIntervalTicks;
+        this.maxPending = maxPending;
+        this.spool = spool;
+    }
+
+    public void start() {
+        if (flushIntervalTicks > 0) {
+            task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::flush,
+                    flushIntervalTicks, flushIntervalTicks);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Mark an account dirty. Must be called after its slot was updated.
+     */
+    public void enqueue(CurrencyImpl currency, Account account) {
+        Dirty cur = pending.computeIfAbsent(currency.getId(), k -> new Dirty(currency));
+        if (cur.accounts.put(account.getOwner(), account) == null
+                && size.incrementAndGet() >= maxPending && maxPending > 0) {
+            if (flushScheduled.compareAndSet(false, true)) {
+                Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the account holding a value that has not reached storage yet, or null.
+     */
+    public Account peek(String currencyId, UUID player) {
+        Dirty cur = pending.get(currencyId);
+        if (cur == null) return null;
+        Account acc = cur.accounts.get(player);
+        if (acc != null) return acc;
+        Map<UUID, Account> flushing = cur.inFlight.get(player);
+        return flushing != null ? flushing.get(player) : null;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Number of failed or deferred batches so far. A flush that completes while this is
+     * unchanged wrote everything that was dirty when it started.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Write every dirty row in one batch per currency.
+     *
+     * @return future completing once this flush (and every earlier one) reached storage
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (Map.Entry<String, Dirty> entry : pending.entrySet()) {
+            String curId = entry.getKey();
+            Dirty cur = entry.getValue();
+            if (cur.accounts.isEmpty()) continue;
+            StorageProvider sp = storageFactory.getProvider(curId);
+            if (spool == null && !sp.isAvailable()) {
+                // Counts as failed, so a save waiting on this flush knows it is incomplete
+                failures.incrementAndGet();
+                continue;
+            }
+
+            int ordinal = cur.currency.getOrdinal();
+            Map<UUID, Double> batch = new HashMap<>();
+            // Read by peek() while it fills
+            Map<UUID, Account> drained = new ConcurrentHashMap<>();
+            for (Map.Entry<UUID, Account> e : cur.accounts.entrySet()) {
+                // Unmark first, then read: a change racing with us re-marks the account
+                Account acc = e.getValue();
+                if (cur.accounts.remove(e.getKey(), acc)) {
+                    size.decrementAndGet();
+                    drained.put(e.getKey(), acc);
+                    // Keep it visible to peek() until the row is actually written
+                    cur.inFlight.put(e.getKey(), drained);
+                    batch.put(e.getKey(), cur.currency.fromSlot(acc.get(ordinal)));
+                }
+            }
+            if (batch.isEmpty()) continue;
+
+            writes.add(lastFlush.thenCompose(v -> spool != null
+                            ? spool.bulkSetBalances(curId, batch) : sp.bulkSetBalances(curId, batch))
+                    .whenComplete((v, t) -> {
+                        if (t != null) {
+                            failures.incrementAndGet();
+                            // Re-mark before leaving inFlight, so peek() never misses the value
+                            drained.forEach((id, acc) -> {
+                                if (cur.accounts.putIfAbsent(id, acc) == null) size.incrementAndGet();
+                            });
+                        }
+                        // A later flush of the same account owns its entry now
+                        drained.keySet().forEach(id -> cur.inFlight.remove(id, drained));
+                    }));
+            if (plugin.getConfig().getBoolean("general.debug", false)) {
+                plugin.getLogger().info("[Storage] Flushing " + batch.size() + " '" + curId + "' balances.");
+            }
+        }
+        if (writes.isEmpty()) return lastFlush;
+
+        lastFlush = CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .exceptionally(t -> {
+                    // The breaker already reported the outage
+                    if (!(t.getCause() instanceof StorageUnavailableException)) {
+                        plugin.getLogger().log(Level.SEVERE, "[Storage] Write-behind flush failed, retrying on the next flush", t);
+                    }
+                    return null;
+                });
+        return lastFlush;
+    }
+
+    private static final class Dirty {
+        final CurrencyImpl currency;
+        final ConcurrentHashMap<UUID, Account> accounts = new ConcurrentHashMap<>();
+        // uuid → batch of the latest flush writing it
+        final ConcurrentHashMap<UUID, Map<UUID, Account>> inFlight = new ConcurrentHashMap<>();
+
+        Dirty(CurrencyImpl currency) {
+            this.currency = currency;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package jar.elem.elempoints.plugin.storage;
+
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Absolute balance writes that fall back to a {@link SpoolFile} on disk, one per provider,
+ * when the database refuses them.
+ * <p>
+ * A write goes to the database directly while its provider's spool is empty. If that
+ * fails, or the provider is {@linkplain StorageProvider#isAvailable unavailable}, the
+ * balances are appended to the spool instead and the write counts as done. While a spool
+ * has records every later write of that provider is appended behind them, so each account
+ * reaches the database in the order it changed. Routing decisions and appends run on one
+ * thread, so none can slip past a spool that is being emptied.
+ * <p>
+ * A replay task writes spooled batches back with {@link StorageProvider#bulkSetBalances}
+ * once the provider is available, collapsing repeated accounts, and moves the spool's
+ * front past each batch only after it is stored. Until a spool is empty, balances of its
+ * provider must not be loaded from the database: {@link #isPending} tells the cache.
+ * Not for multi-server mode, where absolute writes would overwrite other servers' changes.
+ */
+public final class WriteSpool {
+
+    private final ElemPointsPlugin plugin;
+    private final StorageFactory storageFactory;
+    private final File dir;
+    private final long maxBytes;
+    private final int batchSize;
+    private final long replayIntervalTicks;
+    // Currencies still registered; spooled balances of removed ones are dropped on replay
+    private final Predicate<String> registered;
+
+    private final Map<StorageProvider, SpoolFile> files = new IdentityHashMap<>();
+    private final StorageExecutor appender;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private BukkitTask task;
+
+    public WriteSpool(ElemPointsPlugin plugin, StorageFactory storageFactory, File dir, long maxBytes,
+                      int batchSize, long replayIntervalTicks, int queueSize, Predicate<String> registered) {
+        this.plugin = plugin;
+        this.storageFactory = storageFactory;
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.batchSize = Math.max(100, batchSize);
+        this.replayIntervalTicks = Math.max(1L, replayIntervalTicks);
+        this.registered = registered;
+        // One thread: routing and appends stay in submission order
+        this.appender = new StorageExecutor("ElemPoints-Spool", 1, queueSize);
+    }
+
+    /**
+     * Open a spool for every provider. Called once all currencies are registered, before
+     * anything is written.
+     */
+    public void open() {
+        Set<String> names = new HashSet<>();
+        for (StorageProvider sp : storageFactory.all()) {
+            String name = sp.getExecutor().getName().replaceAll("[^A-Za-z0-9._-]", "_") + ".spool";
+            names.add(name);
+            SpoolFile f = new SpoolFile(new File(dir, name), maxBytes);
+            try {
+                long torn = f.open();
+                if (torn > 0) {
+                    plugin.getLogger().warning("[Storage] Cut " + torn + " bytes of an incomplete record off " + name + ".");
+                }
+                if (f.isPending()) {
+                    plugin.getLogger().warning("[Storage] " + name + " holds " + f.getPendingBytes() +
+                            " bytes of unwritten balances; they are written back before that database is read.");
+                }
+                files.put(sp, f);
+            } catch (IOException e) {
+                // Writes of this provider go straight to the database, as without a spool
+                plugin.getLogger().log(Level.SEVERE, "[Storage] Could not open " + name + ", failed writes are not spooled", e);
+            }
+        }
+        File[] stray = dir.listFiles((d, n) -> n.endsWith(".spool") && !names.contains(n));
+        if (stray != null) {
+            for (File f : stray) {
+                if (f.length() > SpoolFile.HEADER_SIZE) {
+                    plugin.getLogger().warning("[Storage] " + f.getName() + " belongs to a database that is no longer " +
+                            "configured and was left unreplayed.");
+                }
+            }
+        }
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::replay,
+                replayIntervalTicks, replayIntervalTicks);
+    }
+
+    /**
+     * Stop replaying and close the spools. Whatever is still spooled is replayed on the
+     * next start.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        appender.shutdown(10_000L, plugin.getLogger());
+        for (SpoolFile f : files.values()) {
+            try {
+                f.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "[Storage] Could not close " + f.getFile().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * True while balances of this currency's provider wait in the spool, so the database
+     * holds older values for some accounts.
+     */
+    public boolean isPending(String currencyId) {
+        SpoolFile f = files.get(storageFactory.getProvider(currencyId));
+        return f != null && f.isPending();
+    }
+
+    /** Bytes waiting in all spools. */
+    public long getPendingBytes() {
+        long sum = 0;
+        for (SpoolFile f : files.values()) sum += f.getPendingBytes();
+        return sum;
+    }
+
+    /** Balances appended to a spool so far. */
+    public long getSpooled() { return spooled.get(); }
+
+    /** Balances written back from a spool so far. */
+    public long getReplayed() { return replayed.get(); }
+
+    // ═══════ Writes ═══════
+
+    /**
+     * Write one balance. {@code balance} is read when the write is issued and again if it
+     * has to be spooled, so a spooled value is never older than one written meanwhile.
+     *
+     * @return completes once the balance is stored or spooled; exceptionally if neither worked
+     */
+    public CompletableFuture<Void> setBalance(UUID player, String currencyId, DoubleSupplier balance) {
+        StorageProvider sp = storageFactory.getProvider(currencyId);
+        return route(sp, currencyId, () -> Collections.singletonMap(player, balance.getAsDouble()),
+                () -> sp.setBalance(player, currencyId, balance.getAsDouble()));
+    }
+
+    /**
+     * Write many balances of one currency, like {@link StorageProvider#bulkSetBalances}.
+     * Callers must not issue a newer batch for the same accounts before this one completes.
+     *
+     * @return completes once the balances are stored or spooled; exceptionally if neither worked
+     */
+    public CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances) {
+        StorageProvider sp = storageFactory.getProvider(currencyId);
+        return route(sp, currencyId, () -> balances, () -> sp.bulkSetBalances(currencyId, balances));
+    }
+
+    private CompletableFuture<Void> route(StorageProvider sp, String currencyId,
+                                          Supplier<Map<UUID, Double>> values,
+                                          Supplier<CompletableFuture<Void>> direct) {
+        SpoolFile f = files.get(sp);
+        if (f == null) return direct.get();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        appender.execute(() -> {
+            try {
+                if (!sp.isAvailable()) {
+                    append(f, currencyId, values.get());
+                } else if (!appendIfPending(f, currencyId, values.get())) {
+                    direct.get().whenComplete((v, t) -> {
+                        if (t == null) result.complete(null);
+                        else appender.execute(() -> spoolFailed(f, currencyId, values, t, result));
+                    });
+                    return;
+                }
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * A direct write failed: spool it instead, or report the original failure if the
+     * spool cannot take it either.
+     */
+    private void spoolFailed(SpoolFile f, String currencyId, Supplier<Map<UUID, Double>> values,
+                             Throwable failure, CompletableFuture<Void> result) {
+        try {
+            append(f, currencyId, values.get());
+            result.complete(null);
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "[Storage] Could not spool failed '" + currencyId + "' writes", e);
+            result.completeExceptionally(failure);
+        }
+    }
+
+    private void append(SpoolFile f, String currencyId, Map<UUID, Double> balances) throws IOException {
+        f.append(currencyId, balances);
+        spooled.addAndGet(balances.size());
+    }
+
+    private boolean appendIfPending(SpoolFile f, String currencyId, Map<UUID, Double> balances) throws IOException {
+        if (!f.appendIfPending(currencyId, balances)) return false;
+        spooled.addAndGet(balances.size());
+        return true;
+    }
+
+    // ═══════ Replay ═══════
+
+    private void replay() {
+        // A long replay must not overlap the next run
+        if (!replaying.compareAndSet(false, true)) return;
+        try {
+            files.forEach(this::replay);
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * Write a spool back batch by batch until it is empty or the database fails again.
+     */
+    private void replay(StorageProvider sp, SpoolFile f) {
+        if (!f.isPending() || !sp.isAvailable()) return;
+        long start = System.currentTimeMillis();
+        long count = 0;
+        int dropped = 0;
+        try {
+            while (f.isPending() && sp.isAvailable()) {
+                SpoolFile.Batch batch = f.read(batchSize);
+                List<CompletableFuture<Void>> writes = new ArrayList<>();
+                for (Map.Entry<String, Map<UUID, Double>> e : batch.getBalances().entrySet()) {
+                    if (!registered.test(e.getKey())) {
+                        dropped += e.getValue().size();
+                        continue;
+                    }
+                    // Straight to the provider: going through route() would spool it again
+                    writes.add(storageFactory.getProvider(e.getKey()).bulkSetBalances(e.getKey(), e.getValue()));
+                }
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+                f.commit(batch.getEnd());
+                count += batch.size();
+                replayed.addAndGet(batch.size());
+            }
+        } catch (CompletionException e) {
+            // Still spooled; the next run retries from the same batch
+            if (!(e.getCause() instanceof StorageUnavailableException)) {
+                plugin.getLogger().log(Level.WARNING, "[Storage] Replaying " + f.getFile().getName() +
+                        " failed, retrying later", e.getCause());
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "[Storage] Could not read " + f.getFile().getName(), e);
+        }
+        if (count > 0) {
+            plugin.getLogger().info("[Storage] Replayed " + count + " spooled balances from " + f.getFile().getName() +
+                    " in " + (System.currentTimeMillis() - start) + " ms" +
+                    (f.isPending() ? ", " + f.getPendingBytes() + " bytes left." : "."));
+        }
+        if (dropped > 0) {
+            plugin.getLogger().warning("[Storage] Dropped " + dropped + " spooled balances of currencies that are no longer enabled.");
+        }
+    }
+}
@@ -2,29 +2,71 @@ package jar.elem.elempoints.plugin.storage.mysql;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import jar.elem.elempoints.plugin.storage.BalanceChange;
+import jar.elem.elempoints.plugin.storage.BinaryUuid;
+import jar.elem.elempoints.plugin.storage.CurrencyKeys;
+import jar.elem.elempoints.plugin.storage.DeltaResult;
+import jar.elem.elempoints.plugin.storage.GuardedProvider;
+import jar.elem.elempoints.plugin.storage.HistoryRows;
+import jar.elem.elempoints.plugin.storage.LegacyBalancesMigration;
+import jar.elem.elempoints.plugin.storage.MinorUnits;
+import jar.elem.elempoints.plugin.storage.SchemaMigrator;
+import jar.elem.elempoints.plugin.storage.StorageExecutor;
 import jar.elem.elempoints.plugin.storage.StorageProvider;
+import jar.elem.elempoints.plugin.storage.StorageTimeouts;
+import jar.elem.elempoints.plugin.storage.StorageUnavailableException;
+import jar.elem.elempoints.plugin.storage.VersionedBalance;
 
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 public final class MySQLProvider implements StorageProvider {
 
+    // Players per IN (...) query, well below every driver's bind-parameter limit
+    private static final int LOAD_CHUNK = 500;
+    // Legacy rows copied per migration transaction
+    private static final int MIGRATION_CHUNK = 1000;
+    // Socket reads outlast the query timeout by this much, so the server cancels first
+    private static final long NETWORK_GRACE_MS = 2000L;
+
+    // Schema versions
+    private static final int V_COMPACT = 1;
+    private static final int V_LEGACY_COPIED = 2;
+    private static final int V_ROW_VERSION = 3;
+    private static final int V_CHANGE_INDEX = 4;
+    private static final int V_HISTORY = 5;
+    private static final int V_HISTORY_TIME = 6;
+
     private final ElemPointsPlugin plugin;
     private final String host, database, username, password, prefix;
     private final int port, maxPool, minIdle;
     private final long maxLifetime, timeout;
     private final Map<String, String> props;
+    private final MinorUnits units;
+    private final StorageTimeouts timeouts;
+    private final boolean cursorFetch;
+    // One thread (or virtual-thread permit) per pooled connection: more would only wait on Hikari
+    private final StorageExecutor executor;
+    private final CurrencyKeys keys;
+    private final SchemaMigrator schema;
+    private final AtomicLong migrated = new AtomicLong();
 
     private HikariDataSource pool;
 
     public MySQLProvider(ElemPointsPlugin plugin, String host, int port,
                          String database, String username, String password, String prefix,
                          int maxPool, int minIdle, long maxLifetime, long timeout,
-                         Map<String, String> props) {
+                         Map<String, String> props, int queueSize, boolean virtualThreads,
+                         MinorUnits units, StorageTimeouts timeouts) {
         this.plugin = plugin;
+        this.units = units;
+        this.timeouts = timeouts;
         this.host = host;
         this.port = port;
         this.database = database;
@@ -36,9 +78,34 @@ public final class MySQLProvider implements StorageProvider {
         this.maxLifetime = maxLifetime;
         this.timeout = timeout;
         this.props = props != null ? props : Collections.emptyMap();
+        this.cursorFetch = "true".equalsIgnoreCase(this.props.get("useCursorFetch"));
+        this.executor = new StorageExecutor("ElemPoints-MySQL-" + database, maxPool, queueSize, virtualThreads);
+        this.keys = new CurrencyKeys(prefix + "currencies",
+                "INSERT INTO " + prefix + "currencies(name) VALUES(?) ON DUPLICATE KEY UPDATE name=name");
+        this.schema = new SchemaMigrator(prefix + "schema_version",
+                "INSERT IGNORE INTO " + prefix + "schema_version(version,description,applied) VALUES(?,?,?)")
+                .step(V_COMPACT, "Compact balance layout", this::createTables)
+                .background(V_LEGACY_COPIED, "Copy " + legacyTable() + " to the compact layout",
+                        new LegacyBalancesMigration(legacyTable(), prefix + "meta",
+                                "INSERT INTO " + prefix + "meta(k,v) VALUES(?,?) ON DUPLICATE KEY UPDATE v=VALUES(v)",
+                                "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                                        "ON DUPLICATE KEY UPDATE uuid=uuid",
+                                keys, MIGRATION_CHUNK))
+                .step(V_ROW_VERSION, "Row version for optimistic locking", c ->
+                        SchemaMigrator.addColumn(c, table(), "version", "BIGINT NOT NULL DEFAULT 0"))
+                .step(V_CHANGE_INDEX, "Index balances by update time for the change feed", c ->
+                        SchemaMigrator.addIndex(c, table(), "idx_updated", "updated"))
+                .step(V_HISTORY, "Transaction history", this::createHistory)
+                .step(V_HISTORY_TIME, "Index history by time for rollbacks", c ->
+                        SchemaMigrator.addIndex(c, historyTable(), "idx_time", "time"));
     }
 
-    private String table() { return prefix + "balances"; }
+    private String table() { return prefix + "balances_v2"; }
+
+    private String historyTable() { return prefix + "history"; }
+
+    /** Table of versions before the compact layout: text uuid, currency name in the key. */
+    private String legacyTable() { return prefix + "balances"; }
 
     @Override
     public void init() {
@@ -59,71 +126,381 @@ public final class MySQLProvider implements StorageProvider {
             cfg.setMinimumIdle(minIdle);
             cfg.setMaxLifetime(maxLifetime);
             cfg.setConnectionTimeout(timeout);
+            // Connector/J waits for an unreachable host for the OS TCP timeout otherwise
+            if (!props.containsKey("connectTimeout")) cfg.addDataSourceProperty("connectTimeout", String.valueOf(timeout));
             cfg.setPoolName("ElemPoints-MySQL");
             pool = new HikariDataSource(cfg);
 
-            try (Connection c = pool.getConnection(); Statement s = c.createStatement()) {
-                s.execute(
-                        "CREATE TABLE IF NOT EXISTS " + table() + " (" +
-                                "  uuid VARCHAR(36) NOT NULL," +
-                                "  currency VARCHAR(64) NOT NULL," +
-                                "  balance DOUBLE NOT NULL DEFAULT 0," +
-                                "  updated BIGINT NOT NULL DEFAULT 0," +
-                                "  PRIMARY KEY (uuid, currency)," +
-                                "  INDEX idx_cur (currency)" +
-                                ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"
-                );
-            }
-            plugin.getLogger().info("[Storage] MySQL initialized: " + host + ":" + port + "/" + database);
+            boolean background;
+            try (Connection c = pool.getConnection()) {
+                background = schema.migrate(c);
+            }
+            plugin.getLogger().info("[Storage] MySQL initialized: " + host + ":" + port + "/" + database +
+                    " (schema v" + schema.getVersion() + ")");
+            if (background) {
+                plugin.getLogger().info("[Storage] '" + schema.getCurrentStep() + "' is running in the background...");
+                executor.execute(this::migrateNext);
+            }
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "[Storage] MySQL init failed", e);
         }
     }
 
+    // ─── Schema ───
+
+    private void createTables(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS " + prefix + "currencies (" +
+                            "  id SMALLINT UNSIGNED NOT NULL AUTO_INCREMENT," +
+                            "  name VARCHAR(64) NOT NULL," +
+                            "  PRIMARY KEY (id)," +
+                            "  UNIQUE KEY uk_name (name)" +
+                            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"
+            );
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS " + table() + " (" +
+                            "  uuid BINARY(16) NOT NULL," +
+                            "  currency SMALLINT UNSIGNED NOT NULL," +
+                            "  balance DOUBLE NOT NULL DEFAULT 0," +
+                            "  units BIGINT NULL," +
+                            "  updated BIGINT NOT NULL DEFAULT 0," +
+                            "  version BIGINT NOT NULL DEFAULT 0," +
+                            "  PRIMARY KEY (uuid, currency)," +
+                            "  INDEX idx_cur (currency, uuid)" +
+                            ") ENGINE=InnoDB"
+            );
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS " + prefix + "meta (" +
+                            "  k VARCHAR(64) NOT NULL," +
+                            "  v VARCHAR(255) NULL," +
+                            "  PRIMARY KEY (k)" +
+                            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"
+            );
+        }
+    }
+
+    private void createHistory(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS " + historyTable() + " (" +
+                            "  id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT," +
+                            "  uuid BINARY(16) NOT NULL," +
+                            "  currency SMALLINT UNSIGNED NOT NULL," +
+                            "  time BIGINT NOT NULL," +
+                            "  delta DOUBLE NOT NULL," +
+                            "  balance DOUBLE NOT NULL," +
+                            "  reason VARCHAR(32) NULL," +
+                            "  source VARCHAR(" + HistoryRows.SOURCE_LENGTH + ") NULL," +
+                            "  PRIMARY KEY (id)," +
+                            "  INDEX idx_account (uuid, currency, id)" +
+                            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4"
+            );
+        }
+    }
+
     @Override
     public void shutdown() {
+        executor.shutdown(10_000L, plugin.getLogger());
         if (pool != null && !pool.isClosed()) pool.close();
     }
 
+    @Override
+    public StorageExecutor getExecutor() {
+        return executor;
+    }
+
     @Override
     public boolean isConnected() {
         return pool != null && !pool.isClosed();
     }
 
+    /**
+     * True until legacy rows are fully copied; reads that miss then check the old table.
+     */
+    private boolean migrating() {
+        return schema.getVersion() < V_LEGACY_COPIED;
+    }
+
+    /**
+     * Run one chunk of background migration in its own transaction, then queue the next.
+     * Servers sharing the database may run this at the same time; every step tolerates that.
+     */
+    private void migrateNext() {
+        int rows;
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                rows = schema.runChunk(c);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "[Storage] '" + schema.getCurrentStep() + "' paused after " +
+                    migrated.get() + " rows; it resumes on next start.", e);
+            return;
+        }
+        schema.committed();
+        long total = rows > 0 ? migrated.addAndGet(rows) : migrated.get();
+        if (!schema.isRunning()) {
+            plugin.getLogger().info("[Storage] Schema migrated to v" + schema.getVersion() + " (" + total + " rows).");
+            return;
+        }
+        if (rows > 0 && total % (MIGRATION_CHUNK * 100L) == 0) {
+            plugin.getLogger().info("[Storage] " + total + " rows migrated...");
+        }
+        if (!executor.isShutdown()) executor.execute(this::migrateNext);
+    }
+
+    private static <T> CompletableFuture<T> migrationInProgress() {
+        return CompletableFuture.failedFuture(StorageUnavailableException.migrating());
+    }
+
+    /**
+     * A pooled connection whose socket reads give up a little after {@code timeoutMillis}, so a
+     * dead server or a lost packet can't hold the connection past the caller's deadline.
+     * Hikari restores the default network timeout when the connection goes back to the pool.
+     */
+    private Connection connection(long timeoutMillis) throws SQLException {
+        Connection c = pool.getConnection();
+        try {
+            networkTimeout(c, timeoutMillis);
+            return c;
+        } catch (SQLException | RuntimeException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    private static void networkTimeout(Connection c, long timeoutMillis) throws SQLException {
+        if (timeoutMillis <= 0) return;
+        c.setNetworkTimeout(Runnable::run, (int) Math.min(Integer.MAX_VALUE, timeoutMillis + NETWORK_GRACE_MS));
+    }
+
+    /**
+     * A statement the server kills once it runs past {@code timeoutMillis}, instead of leaving
+     * it running after {@link GuardedProvider} gave up on it.
+     */
+    private static PreparedStatement prepare(Connection c, String sql, long timeoutMillis) throws SQLException {
+        PreparedStatement ps = c.prepareStatement(sql);
+        try {
+            ps.setQueryTimeout(StorageTimeouts.toSeconds(timeoutMillis));
+            return ps;
+        } catch (SQLException | RuntimeException e) {
+            ps.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> registerCurrency(String currencyId) {
+        return CompletableFuture.runAsync(() -> {
+            try (Connection c = connection(timeouts.getWrite())) {
+                keys.remember(currencyId, keys.lookupOrCreate(c, currencyId));
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
     @Override
     public CompletableFuture<Double> getBalance(UUID player, String currencyId) {
         return CompletableFuture.supplyAsync(() -> {
-            try (Connection c = pool.getConnection();
-                 PreparedStatement ps = c.prepareStatement(
-                         "SELECT balance FROM " + table() + " WHERE uuid=? AND currency=?")) {
-                ps.setString(1, player.toString());
-                ps.setString(2, currencyId);
+            try (Connection c = connection(timeouts.getRead());
+                 PreparedStatement ps = prepare(c,
+                         "SELECT balance, units FROM " + table() + " WHERE uuid=? AND currency=?", timeouts.getRead())) {
+                ps.setBytes(1, BinaryUuid.toBytes(player));
+                ps.setInt(2, keys.get(currencyId));
                 ResultSet rs = ps.executeQuery();
-                if (rs.next()) return rs.getDouble(1);
+                if (rs.next()) return units.read(rs, currencyId, 1, 2);
+                if (migrating()) {
+                    try (PreparedStatement legacy = prepare(c,
+                            "SELECT balance, units FROM " + legacyTable() + " WHERE uuid=? AND currency=?",
+                            timeouts.getRead())) {
+                        legacy.setString(1, player.toString());
+                        legacy.setString(2, currencyId);
+                        rs = legacy.executeQuery();
+                        if (rs.next()) return units.read(rs, currencyId, 1, 2);
+                    }
+                }
                 return -1.0;
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "[Storage] getBalance error", e);
-                return 0.0;
+                throw new CompletionException(e);
             }
-        });
+        }, executor);
     }
 
     @Override
     public CompletableFuture<Void> setBalance(UUID player, String currencyId, double amount) {
         return CompletableFuture.runAsync(() -> {
-            try (Connection c = pool.getConnection();
-                 PreparedStatement ps = c.prepareStatement(
-                         "INSERT INTO " + table() + "(uuid,currency,balance,updated) VALUES(?,?,?,?) " +
-                                 "ON DUPLICATE KEY UPDATE balance=VALUES(balance), updated=VALUES(updated)")) {
-                ps.setString(1, player.toString());
-                ps.setString(2, currencyId);
+            try (Connection c = connection(timeouts.getWrite());
+                 PreparedStatement ps = prepare(c,
+                         "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                                 "ON DUPLICATE KEY UPDATE balance=VALUES(balance), units=VALUES(units), " +
+                                 "updated=VALUES(updated), version=version+1", timeouts.getWrite())) {
+                ps.setBytes(1, BinaryUuid.toBytes(player));
+                ps.setInt(2, keys.get(currencyId));
                 ps.setDouble(3, amount);
-                ps.setLong(4, System.currentTimeMillis());
+                units.bind(ps, 4, currencyId, amount);
+                ps.setLong(5, System.currentTimeMillis());
                 ps.executeUpdate();
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "[Storage] setBalance error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<VersionedBalance> getVersionedBalance(UUID player, String currencyId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getRead());
+                 PreparedStatement ps = prepare(c,
+                         "SELECT balance, units, version FROM " + table() + " WHERE uuid=? AND currency=?",
+                         timeouts.getRead())) {
+                ps.setBytes(1, BinaryUuid.toBytes(player));
+                ps.setInt(2, keys.get(currencyId));
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) return null;
+                return new VersionedBalance(units.read(rs, currencyId, 1, 2), rs.getLong(3));
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] getVersionedBalance error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSetBalance(UUID player, String currencyId, double amount,
+                                                           long expectedVersion) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getWrite());
+                 PreparedStatement ps = prepare(c,
+                         "UPDATE " + table() + " SET balance=?, units=?, updated=?, version=version+1 " +
+                                 "WHERE uuid=? AND currency=? AND version=?", timeouts.getWrite())) {
+                ps.setDouble(1, amount);
+                units.bind(ps, 2, currencyId, amount);
+                ps.setLong(3, System.currentTimeMillis());
+                ps.setBytes(4, BinaryUuid.toBytes(player));
+                ps.setInt(5, keys.get(currencyId));
+                ps.setLong(6, expectedVersion);
+                return ps.executeUpdate() > 0;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] compareAndSet error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<BalanceChange>> getChangesSince(long since, BalanceChange after, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            // idx_updated ends with the primary key, so InnoDB reads this order straight off it
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = prepare(c,
+                         "SELECT uuid, currency, balance, units, version, updated FROM " + table() +
+                                 " WHERE updated>=?" +
+                                 (after != null ? " AND (updated>? OR uuid>? OR (uuid=? AND currency>?))" : "") +
+                                 " ORDER BY updated, uuid, currency LIMIT ?", timeouts.getBulk())) {
+                int i = 1;
+                if (after != null) {
+                    byte[] uuid = BinaryUuid.toBytes(after.getPlayer());
+                    ps.setLong(i++, after.getUpdated());
+                    ps.setLong(i++, after.getUpdated());
+                    ps.setBytes(i++, uuid);
+                    ps.setBytes(i++, uuid);
+                    ps.setInt(i++, after.getCurrencyKey());
+                } else {
+                    ps.setLong(i++, since);
+                }
+                ps.setInt(i, limit);
+                List<BalanceChange> changes = new ArrayList<>();
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    int key = rs.getInt(2);
+                    String currencyId = keys.name(key);
+                    changes.add(new BalanceChange(BinaryUuid.fromBytes(rs.getBytes(1)), key, currencyId,
+                            currencyId != null ? units.read(rs, currencyId, 3, 4) : rs.getDouble(3),
+                            rs.getLong(5), rs.getLong(6)));
+                }
+                return changes;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] getChangesSince error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendHistory(List<HistoryEntry> entries) {
+        if (entries.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (schema.getVersion() < V_HISTORY) return migrationInProgress();
+        return CompletableFuture.runAsync(() -> {
+            long deadline = timeouts.getBulkWrite(entries.size());
+            try (Connection c = connection(deadline);
+                 PreparedStatement ps = prepare(c, HistoryRows.insertSql(historyTable()), deadline)) {
+                for (HistoryEntry e : entries) {
+                    HistoryRows.bind(ps, keys, e);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] appendHistory error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit) {
+        if (schema.getVersion() < V_HISTORY) return CompletableFuture.completedFuture(Collections.emptyList());
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = prepare(c, HistoryRows.pageSql(historyTable()), timeouts.getBulk())) {
+                return HistoryRows.page(ps, keys, player, currencyId, beforeId, limit);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] getHistory error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<long[]> getHistoryBounds(long since) {
+        if (schema.getVersion() < V_HISTORY_TIME) return migrationInProgress();
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = prepare(c, HistoryRows.boundsSql(historyTable()), timeouts.getBulk())) {
+                return HistoryRows.bounds(ps, since);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] getHistoryBounds error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> scanHistory(String currencyId, UUID player, long since, long fromId, long toId,
+                                               HistoryVisitor visitor) {
+        if (schema.getVersion() < V_HISTORY_TIME) return migrationInProgress();
+        return CompletableFuture.supplyAsync(() -> {
+            // Scans have no overall deadline, but each round trip of the stream gets the bulk one
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = c.prepareStatement(HistoryRows.scanSql(historyTable(), player != null),
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Stream the range instead of buffering it, as in scanBalances
+                ps.setFetchSize(cursorFetch ? 1000 : Integer.MIN_VALUE);
+                return HistoryRows.scan(ps, keys, currencyId, player, since, fromId, toId, visitor);
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] scanHistory error", e);
+                throw new CompletionException(e);
             }
-        });
+        }, executor);
     }
 
     @Override
@@ -137,36 +514,222 @@ public final class MySQLProvider implements StorageProvider {
     }
 
     @Override
-    public CompletableFuture<Map<UUID, Double>> getAllBalances(String currencyId) {
+    public CompletableFuture<Map<UUID, Map<String, Double>>> loadAccounts(Collection<UUID> players,
+                                                                         Collection<String> currencyIds) {
         return CompletableFuture.supplyAsync(() -> {
-            Map<UUID, Double> map = new HashMap<>();
-            try (Connection c = pool.getConnection();
-                 PreparedStatement ps = c.prepareStatement(
-                         "SELECT uuid, balance FROM " + table() + " WHERE currency=?")) {
-                ps.setString(1, currencyId);
-                ResultSet rs = ps.executeQuery();
-                while (rs.next()) map.put(UUID.fromString(rs.getString(1)), rs.getDouble(2));
+            Map<UUID, Map<String, Double>> map = new HashMap<>();
+            if (players.isEmpty() || currencyIds.isEmpty()) return map;
+            List<UUID> all = new ArrayList<>(players);
+            try (Connection c = connection(timeouts.getBulk())) {
+                Map<Integer, String> byKey = new HashMap<>();
+                for (String id : currencyIds) byKey.put(keys.get(id), id);
+                for (int from = 0; from < all.size(); from += LOAD_CHUNK) {
+                    List<UUID> chunk = all.subList(from, Math.min(all.size(), from + LOAD_CHUNK));
+                    try (PreparedStatement ps = prepare(c,
+                            "SELECT uuid, currency, balance, units FROM " + table() + " WHERE uuid IN (" +
+                                    String.join(",", Collections.nCopies(chunk.size(), "?")) + ") AND currency IN (" +
+                                    String.join(",", Collections.nCopies(byKey.size(), "?")) + ")", timeouts.getBulk())) {
+                        int i = 1;
+                        for (UUID u : chunk) ps.setBytes(i++, BinaryUuid.toBytes(u));
+                        for (int key : byKey.keySet()) ps.setInt(i++, key);
+                        ResultSet rs = ps.executeQuery();
+                        while (rs.next()) {
+                            String cur = byKey.get(rs.getInt(2));
+                            map.computeIfAbsent(BinaryUuid.fromBytes(rs.getBytes(1)), k -> new HashMap<>())
+                                    .put(cur, units.read(rs, cur, 3, 4));
+                        }
+                    }
+                    if (migrating()) loadLegacy(c, chunk, currencyIds, map);
+                }
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "[Storage] getAll error", e);
+                // A partial map would read as missing accounts and be overwritten with defaults
+                plugin.getLogger().log(Level.SEVERE, "[Storage] loadAccounts error", e);
+                throw new CompletionException(e);
             }
             return map;
-        });
+        }, executor);
+    }
+
+    /**
+     * Fill in rows that have not been copied to the new layout yet.
+     */
+    private void loadLegacy(Connection c, List<UUID> chunk, Collection<String> currencyIds,
+                            Map<UUID, Map<String, Double>> map) throws SQLException {
+        try (PreparedStatement ps = prepare(c,
+                "SELECT uuid, currency, balance, units FROM " + legacyTable() + " WHERE uuid IN (" +
+                        String.join(",", Collections.nCopies(chunk.size(), "?")) + ") AND currency IN (" +
+                        String.join(",", Collections.nCopies(currencyIds.size(), "?")) + ")", timeouts.getBulk())) {
+            int i = 1;
+            for (UUID u : chunk) ps.setString(i++, u.toString());
+            for (String id : currencyIds) ps.setString(i++, id);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                String cur = rs.getString(2);
+                map.computeIfAbsent(UUID.fromString(rs.getString(1)), k -> new HashMap<>())
+                        .putIfAbsent(cur, units.read(rs, cur, 3, 4));
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> createAccounts(UUID player, Map<String, Double> defaultBalances) {
+        return CompletableFuture.runAsync(() -> {
+            if (defaultBalances.isEmpty()) return;
+            try (Connection c = connection(timeouts.getWrite());
+                 PreparedStatement ps = prepare(c,
+                         "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES " +
+                                 String.join(",", Collections.nCopies(defaultBalances.size(), "(?,?,?,?,?)")) +
+                                 " ON DUPLICATE KEY UPDATE uuid=uuid", timeouts.getWrite())) {
+                long now = System.currentTimeMillis();
+                int i = 1;
+                byte[] uuid = BinaryUuid.toBytes(player);
+                for (Map.Entry<String, Double> e : defaultBalances.entrySet()) {
+                    ps.setBytes(i++, uuid);
+                    ps.setInt(i++, keys.get(e.getKey()));
+                    ps.setDouble(i++, e.getValue());
+                    units.bind(ps, i++, e.getKey(), e.getValue());
+                    ps.setLong(i++, now);
+                }
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] createAccounts error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> scanBalances(String currencyId, int fetchSize, BalanceVisitor visitor) {
+        if (migrating()) return migrationInProgress();
+        return CompletableFuture.supplyAsync(() -> {
+            // No overall deadline, it may take minutes; a stalled round trip still fails
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = c.prepareStatement(
+                         "SELECT uuid, balance, units FROM " + table() + " WHERE currency=?",
+                         ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // With useCursorFetch the server keeps a cursor and sends fetchSize rows per trip;
+                // otherwise MIN_VALUE makes Connector/J stream rows instead of buffering them all
+                ps.setFetchSize(cursorFetch ? fetchSize : Integer.MIN_VALUE);
+                ps.setInt(1, keys.get(currencyId));
+                long n = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.visit(BinaryUuid.fromBytes(rs.getBytes(1)), units.read(rs, currencyId, 2, 3));
+                        n++;
+                    }
+                }
+                return n;
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] scanBalances error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<DeltaResult> addBalance(UUID player, String currencyId, double delta,
+                                                     Double min, Double max) {
+        Long scale = units.getScale(currencyId);
+        // New value of the authoritative column; every occurrence binds the delta
+        String next = scale != null
+                ? "COALESCE(units, CAST(ROUND(balance * " + scale + ") AS SIGNED)) + ?"
+                : "balance + ?";
+        // MySQL assigns left to right, so balance sees the updated units; WHERE sees the old row
+        String sql = "UPDATE " + table() + " SET " +
+                (scale != null ? "units=" + next + ", balance=units / " + scale : "balance=" + next) +
+                ", updated=?, version=version+1 WHERE uuid=? AND currency=?" +
+                (min != null ? " AND " + next + " >= ?" : "") +
+                (max != null ? " AND " + next + " <= ?" : "");
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getWrite())) {
+                c.setAutoCommit(false);
+                try {
+                    if (migrating()) copyLegacyRow(c, player, currencyId);
+                    boolean applied;
+                    try (PreparedStatement ps = prepare(c, sql, timeouts.getWrite())) {
+                        int i = 1;
+                        units.bindAmount(ps, i++, currencyId, delta);
+                        ps.setLong(i++, System.currentTimeMillis());
+                        ps.setBytes(i++, BinaryUuid.toBytes(player));
+                        ps.setInt(i++, keys.get(currencyId));
+                        if (min != null) {
+                            units.bindAmount(ps, i++, currencyId, delta);
+                            units.bindAmount(ps, i++, currencyId, min);
+                        }
+                        if (max != null) {
+                            units.bindAmount(ps, i++, currencyId, delta);
+                            units.bindAmount(ps, i, currencyId, max);
+                        }
+                        applied = ps.executeUpdate() > 0;
+                    }
+                    DeltaResult result;
+                    try (PreparedStatement ps = prepare(c,
+                            "SELECT balance, units, version FROM " + table() + " WHERE uuid=? AND currency=?",
+                            timeouts.getWrite())) {
+                        ps.setBytes(1, BinaryUuid.toBytes(player));
+                        ps.setInt(2, keys.get(currencyId));
+                        ResultSet rs = ps.executeQuery();
+                        if (!rs.next()) throw new SQLException("No '" + currencyId + "' account for " + player);
+                        result = new DeltaResult(applied, units.read(rs, currencyId, 1, 2), rs.getLong(3));
+                    }
+                    c.commit();
+                    return result;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] addBalance error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Copy one row that the background migration has not reached yet, so it can be updated in place.
+     */
+    private void copyLegacyRow(Connection c, UUID player, String currencyId) throws SQLException {
+        double balance;
+        try (PreparedStatement ps = prepare(c,
+                "SELECT balance, units FROM " + legacyTable() + " WHERE uuid=? AND currency=?", timeouts.getWrite())) {
+            ps.setString(1, player.toString());
+            ps.setString(2, currencyId);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) return;
+            balance = units.read(rs, currencyId, 1, 2);
+        }
+        try (PreparedStatement ps = prepare(c,
+                "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                        "ON DUPLICATE KEY UPDATE uuid=uuid", timeouts.getWrite())) {
+            ps.setBytes(1, BinaryUuid.toBytes(player));
+            ps.setInt(2, keys.get(currencyId));
+            ps.setDouble(3, balance);
+            units.bind(ps, 4, currencyId, balance);
+            ps.setLong(5, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
     }
 
     @Override
     public CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances) {
+        long deadline = timeouts.getBulkWrite(balances.size());
         return CompletableFuture.runAsync(() -> {
-            try (Connection c = pool.getConnection()) {
+            try (Connection c = connection(deadline)) {
                 c.setAutoCommit(false);
-                try (PreparedStatement ps = c.prepareStatement(
-                        "INSERT INTO " + table() + "(uuid,currency,balance,updated) VALUES(?,?,?,?) " +
-                                "ON DUPLICATE KEY UPDATE balance=VALUES(balance), updated=VALUES(updated)")) {
+                try (PreparedStatement ps = prepare(c,
+                        "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                                "ON DUPLICATE KEY UPDATE balance=VALUES(balance), units=VALUES(units), " +
+                                "updated=VALUES(updated), version=version+1", deadline)) {
                     long now = System.currentTimeMillis();
+                    int key = keys.get(currencyId);
                     for (Map.Entry<UUID, Double> e : balances.entrySet()) {
-                        ps.setString(1, e.getKey().toString());
-                        ps.setString(2, currencyId);
+                        ps.setBytes(1, BinaryUuid.toBytes(e.getKey()));
+                        ps.setInt(2, key);
                         ps.setDouble(3, e.getValue());
-                        ps.setLong(4, now);
+                        units.bind(ps, 4, currencyId, e.getValue());
+                        ps.setLong(5, now);
                         ps.addBatch();
                     }
                     ps.executeBatch();
@@ -179,7 +742,139 @@ public final class MySQLProvider implements StorageProvider {
                 }
             } catch (SQLException e) {
                 plugin.getLogger().log(Level.SEVERE, "[Storage] bulkSet error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkAddBalances(String currencyId, Map<UUID, Double> amounts) {
+        if (amounts.isEmpty()) return CompletableFuture.completedFuture(null);
+        // A row not copied from the old table yet would lose its old balance
+        if (migrating()) return migrationInProgress();
+        Long scale = units.getScale(currencyId);
+        // MySQL assigns left to right, so balance sees the updated units
+        String sql = "INSERT INTO " + table() + "(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                "ON DUPLICATE KEY UPDATE " +
+                (scale != null
+                        ? "units=COALESCE(units, CAST(ROUND(balance * " + scale + ") AS SIGNED)) + VALUES(units), " +
+                          "balance=units / " + scale + ", "
+                        : "balance=balance + VALUES(balance), ") +
+                "updated=VALUES(updated), version=version+1";
+        long deadline = timeouts.getBulkWrite(amounts.size());
+        return CompletableFuture.runAsync(() -> {
+            try (Connection c = connection(deadline)) {
+                c.setAutoCommit(false);
+                try (PreparedStatement ps = prepare(c, sql, deadline)) {
+                    long now = System.currentTimeMillis();
+                    int key = keys.get(currencyId);
+                    for (Map.Entry<UUID, Double> e : amounts.entrySet()) {
+                        ps.setBytes(1, BinaryUuid.toBytes(e.getKey()));
+                        ps.setInt(2, key);
+                        ps.setDouble(3, e.getValue());
+                        units.bind(ps, 4, currencyId, e.getValue());
+                        ps.setLong(5, now);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] bulkAdd error", e);
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<LinkedHashMap<UUID, Double>> getBalancePage(String currencyId, UUID after, int limit) {
+        if (migrating()) return migrationInProgress();
+        return CompletableFuture.supplyAsync(() -> {
+            LinkedHashMap<UUID, Double> page = new LinkedHashMap<>();
+            try (Connection c = connection(timeouts.getBulk());
+                 PreparedStatement ps = prepare(c,
+                         "SELECT uuid, balance, units FROM " + table() +
+                                 " WHERE currency=? AND uuid>? ORDER BY uuid LIMIT ?", timeouts.getBulk())) {
+                ps.setInt(1, keys.get(currencyId));
+                // Any 16-byte uuid sorts after the empty binary string
+                ps.setBytes(2, after != null ? BinaryUuid.toBytes(after) : new byte[0]);
+                ps.setInt(3, limit);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) page.put(BinaryUuid.fromBytes(rs.getBytes(1)), units.read(rs, currencyId, 2, 3));
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] getBalancePage error", e);
+                throw new CompletionException(e);
+            }
+            return page;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Integer> mergeCurrency(String fromId, String toId, double rate) {
+        if (migrating()) return migrationInProgress();
+        Long fromScale = units.getScale(fromId);
+        Long toScale = units.getScale(toId);
+        String t = table();
+        String source = fromScale != null ? "COALESCE(units / " + fromScale + ", balance)" : "balance";
+        // The derived table is materialized first, so reading and writing the same table is fine.
+        // ON DUPLICATE KEY assignments run left to right: balance sees the updated units.
+        String sql;
+        if (toScale != null) {
+            String added = "CAST(ROUND(" + source + " * ? * " + toScale + ") AS SIGNED)";
+            sql = "INSERT INTO " + t + "(uuid,currency,balance,units,updated) " +
+                    "SELECT * FROM (SELECT uuid, ? AS cur, " + added + " / " + toScale + " AS bal, " +
+                    added + " AS un, ? AS upd FROM " + t + " WHERE currency=?) AS src " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "units=COALESCE(" + t + ".units, CAST(ROUND(" + t + ".balance * " + toScale + ") AS SIGNED)) + src.un, " +
+                    "balance=" + t + ".units / " + toScale + ", updated=src.upd, version=" + t + ".version+1";
+        } else {
+            sql = "INSERT INTO " + t + "(uuid,currency,balance,units,updated) " +
+                    "SELECT * FROM (SELECT uuid, ? AS cur, " + source + " * ? AS bal, NULL AS un, ? AS upd " +
+                    "FROM " + t + " WHERE currency=?) AS src " +
+                    "ON DUPLICATE KEY UPDATE balance=" + t + ".balance + src.bal, updated=src.upd, " +
+                    "version=" + t + ".version+1";
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection c = connection(timeouts.getBulk())) {
+                c.setAutoCommit(false);
+                try {
+                    int merged = 0;
+                    // Affected-row counts of ON DUPLICATE KEY are 1 or 2 per row, so count separately
+                    try (PreparedStatement ps = prepare(c, "SELECT COUNT(*) FROM " + t + " WHERE currency=?",
+                            timeouts.getBulk())) {
+                        ps.setInt(1, keys.get(fromId));
+                        ResultSet rs = ps.executeQuery();
+                        if (rs.next()) merged = rs.getInt(1);
+                    }
+                    // One statement over every row: give it the deadline of a batch write that size
+                    long deadline = timeouts.getBulkWrite(merged);
+                    networkTimeout(c, deadline);
+                    try (PreparedStatement ps = prepare(c, sql, deadline)) {
+                        int i = 1;
+                        ps.setInt(i++, keys.get(toId));
+                        ps.setDouble(i++, rate);
+                        if (toScale != null) ps.setDouble(i++, rate);
+                        ps.setLong(i++, System.currentTimeMillis());
+                        ps.setInt(i, keys.get(fromId));
+                        ps.executeUpdate();
+                    }
+                    c.commit();
+                    return merged;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                } finally {
+                    c.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] mergeCurrency error", e);
+                throw new CompletionException(e);
             }
-        });
+        }, executor);
     }
-}
\ No newline at end of file
+}
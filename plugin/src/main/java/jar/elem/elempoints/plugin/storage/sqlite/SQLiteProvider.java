@@ -1,122 +1,317 @@
 package jar.elem.elempoints.plugin.storage.sqlite;
 
+import jar.elem.elempoints.api.history.HistoryEntry;
 import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import jar.elem.elempoints.plugin.storage.BalanceChange;
+import jar.elem.elempoints.plugin.storage.BinaryUuid;
+import jar.elem.elempoints.plugin.storage.CurrencyKeys;
+import jar.elem.elempoints.plugin.storage.DeltaResult;
+import jar.elem.elempoints.plugin.storage.HistoryRows;
+import jar.elem.elempoints.plugin.storage.LegacyBalancesMigration;
+import jar.elem.elempoints.plugin.storage.MinorUnits;
+import jar.elem.elempoints.plugin.storage.SchemaMigrator;
+import jar.elem.elempoints.plugin.storage.StorageExecutor;
 import jar.elem.elempoints.plugin.storage.StorageProvider;
+import jar.elem.elempoints.plugin.storage.StorageTimeouts;
+import jar.elem.elempoints.plugin.storage.StorageUnavailableException;
+import jar.elem.elempoints.plugin.storage.VersionedBalance;
 
 import java.io.File;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
+/**
+ * SQLite backend in WAL mode.
+ * <p>
+ * One long-lived writer connection owns all inserts and updates. Writes are queued and the
+ * writer thread commits everything queued so far in one transaction, using statements that
+ * are prepared once. Reads run on a small pool of read-only connections, which under WAL
+ * never wait for the writer.
+ * <p>
+ * sqlite-jdbc's query timeout only bounds lock waits, so deadlines are enforced here: a read
+ * still running at its deadline is interrupted, and a write still queued at its deadline is
+ * dropped instead of committed.
+ * <p>
+ * Rows are keyed by the 16-byte uuid and a small currency key from {@code ep_currencies}.
+ * The schema is versioned in {@code ep_schema_version}; databases from older versions are
+ * copied from {@code ep_balances} in the background, and until that finishes reads that
+ * miss fall back to the old table.
+ */
 public final class SQLiteProvider implements StorageProvider {
 
+    // Players per IN (...) query, well below every driver's bind-parameter limit
+    private static final int LOAD_CHUNK = 500;
+    // Upper bound on queued writes committed in one transaction
+    private static final int MAX_TX_WRITES = 1000;
+    // Legacy rows copied per migration transaction
+    private static final int MIGRATION_CHUNK = 1000;
+
+    // Schema versions
+    private static final int V_COMPACT = 1;
+    private static final int V_LEGACY_COPIED = 2;
+    private static final int V_ROW_VERSION = 3;
+    private static final int V_CHANGE_INDEX = 4;
+    private static final int V_HISTORY = 5;
+    private static final int V_HISTORY_TIME = 6;
+
+    private static final String SELECT_ONE = "SELECT balance, units FROM ep_balances_v2 WHERE uuid=? AND currency=?";
+    private static final String SELECT_VERSIONED =
+            "SELECT balance, units, version FROM ep_balances_v2 WHERE uuid=? AND currency=?";
+    private static final String SELECT_CURRENCY = "SELECT uuid, balance, units FROM ep_balances_v2 WHERE currency=?";
+    private static final String UPSERT = "INSERT INTO ep_balances_v2(uuid,currency,balance,units,updated) " +
+            "VALUES(?,?,?,?,?) ON CONFLICT(uuid,currency) DO UPDATE SET " +
+            "balance=excluded.balance,units=excluded.units,updated=excluded.updated,version=version+1";
+    private static final String INSERT_IF_ABSENT = "INSERT INTO ep_balances_v2(uuid,currency,balance,units,updated) " +
+            "VALUES(?,?,?,?,?) ON CONFLICT(uuid,currency) DO NOTHING";
+
     private final ElemPointsPlugin plugin;
     private final String filePath;
-    private Connection connection;
-    private final ReentrantLock lock = new ReentrantLock();
+    private final int readerCount;
+    private final MinorUnits units;
+    private final StorageTimeouts timeouts;
+    private final CurrencyKeys keys = new CurrencyKeys("ep_currencies",
+            "INSERT INTO ep_currencies(name) VALUES(?) ON CONFLICT(name) DO NOTHING");
+    private final SchemaMigrator schema = new SchemaMigrator("ep_schema_version",
+            "INSERT OR IGNORE INTO ep_schema_version(version,description,applied) VALUES(?,?,?)")
+            .step(V_COMPACT, "Compact balance layout", SQLiteProvider::createTables)
+            .background(V_LEGACY_COPIED, "Copy ep_balances to the compact layout",
+                    new LegacyBalancesMigration("ep_balances", "ep_meta",
+                            "INSERT INTO ep_meta(k,v) VALUES(?,?) ON CONFLICT(k) DO UPDATE SET v=excluded.v",
+                            INSERT_IF_ABSENT, keys, MIGRATION_CHUNK))
+            .step(V_ROW_VERSION, "Row version for optimistic locking", c ->
+                    SchemaMigrator.addColumn(c, "ep_balances_v2", "version", "INTEGER NOT NULL DEFAULT 0"))
+            .step(V_CHANGE_INDEX, "Index balances by update time for the change feed", c ->
+                    SchemaMigrator.addIndex(c, "ep_balances_v2", "idx_balances_v2_updated", "updated"))
+            .step(V_HISTORY, "Transaction history", SQLiteProvider::createHistory)
+            .step(V_HISTORY_TIME, "Index history by time for rollbacks", c ->
+                    SchemaMigrator.addIndex(c, "ep_history", "idx_history_time", "time"));
+    private final AtomicLong migrated = new AtomicLong();
+
+    // SQLite allows one writer at a time, so a single thread owns the writer connection
+    private final StorageExecutor writeExecutor;
+    private final StorageExecutor readExecutor;
+    private Writer writer;
+    private final BlockingQueue<Reader> readers;
 
-    public SQLiteProvider(ElemPointsPlugin plugin, String filePath) {
+    // Bounded like the executors: a full queue refuses writes instead of growing without limit
+    private final BlockingQueue<WriteOp> writes;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // Set when shutdown starts (no new writes) and once the writer has stopped (nothing drains any more)
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    public SQLiteProvider(ElemPointsPlugin plugin, String filePath, int readers, int queueSize, MinorUnits units,
+                          StorageTimeouts timeouts) {
         this.plugin = plugin;
         this.filePath = filePath;
+        this.units = units;
+        this.timeouts = timeouts;
+        this.readerCount = Math.max(1, readers);
+        String name = "ElemPoints-SQLite-" + new File(filePath).getName();
+        this.writeExecutor = new StorageExecutor(name, 1, queueSize);
+        this.readExecutor = new StorageExecutor(name + "-Read", readerCount, queueSize);
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        this.writes = new LinkedBlockingQueue<>(queueSize);
     }
 
     @Override
     public void init() {
         try {
+            Class.forName("org.sqlite.JDBC");
             File file = new File(plugin.getDataFolder(), filePath);
             file.getParentFile().mkdirs();
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
-            connection.createStatement().execute("PRAGMA journal_mode=WAL");
-            connection.createStatement().execute("PRAGMA synchronous=NORMAL");
-            createTable();
-            plugin.getLogger().info("[Storage] SQLite initialized: " + filePath);
+            Connection c = open(false);
+            c.setAutoCommit(false);
+            boolean background = schema.migrate(c);
+            writer = new Writer(c);
+            for (int i = 0; i < readerCount; i++) readers.add(new Reader(open(true)));
+            plugin.getLogger().info("[Storage] SQLite initialized: " + filePath +
+                    " (" + readerCount + " readers, schema v" + schema.getVersion() + ")");
+            if (background) {
+                plugin.getLogger().info("[Storage] " + filePath + ": '" + schema.getCurrentStep() +
+                        "' is running in the background...");
+                migrateNext();
+            }
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "[Storage] SQLite init failed: " + filePath, e);
         }
     }
 
-    private void createTable() throws SQLException {
-        try (Statement s = connection.createStatement()) {
+    private Connection open(boolean readOnly) throws SQLException {
+        File file = new File(plugin.getDataFolder(), filePath);
+        Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        // Lock waits give up with the statement's deadline
+        long busy = readOnly ? timeouts.getRead() : timeouts.getWrite();
+        try (Statement s = c.createStatement()) {
+            s.execute("PRAGMA busy_timeout=" + (busy > 0 ? busy : 5000L));
+            if (readOnly) {
+                s.execute("PRAGMA query_only=ON");
+            } else {
+                s.execute("PRAGMA journal_mode=WAL");
+                s.execute("PRAGMA synchronous=NORMAL");
+            }
+        }
+        return c;
+    }
+
+    // ─── Schema ───
+
+    private static void createTables(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS ep_currencies (" +
+                            "  id INTEGER PRIMARY KEY," +
+                            "  name TEXT NOT NULL UNIQUE" +
+                            ")"
+            );
             s.execute(
-                    "CREATE TABLE IF NOT EXISTS ep_balances (" +
-                            "  uuid TEXT NOT NULL," +
-                            "  currency TEXT NOT NULL," +
+                    "CREATE TABLE IF NOT EXISTS ep_balances_v2 (" +
+                            "  uuid BLOB NOT NULL," +
+                            "  currency INTEGER NOT NULL," +
                             "  balance REAL NOT NULL DEFAULT 0," +
+                            "  units BIGINT," +
                             "  updated INTEGER NOT NULL DEFAULT 0," +
+                            "  version INTEGER NOT NULL DEFAULT 0," +
                             "  PRIMARY KEY (uuid, currency)" +
+                            ") WITHOUT ROWID"
+            );
+            s.execute("CREATE INDEX IF NOT EXISTS idx_balances_v2_cur ON ep_balances_v2(currency, uuid)");
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS ep_meta (" +
+                            "  k TEXT PRIMARY KEY," +
+                            "  v TEXT" +
                             ")"
             );
         }
     }
 
-    private Connection conn() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            File file = new File(plugin.getDataFolder(), filePath);
-            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+    private static void createHistory(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.execute(
+                    "CREATE TABLE IF NOT EXISTS ep_history (" +
+                            "  id INTEGER PRIMARY KEY," +
+                            "  uuid BLOB NOT NULL," +
+                            "  currency INTEGER NOT NULL," +
+                            "  time INTEGER NOT NULL," +
+                            "  delta REAL NOT NULL," +
+                            "  balance REAL NOT NULL," +
+                            "  reason TEXT," +
+                            "  source TEXT" +
+                            ")"
+            );
+            s.execute("CREATE INDEX IF NOT EXISTS idx_history_account ON ep_history(uuid, currency, id)");
         }
-        return connection;
+    }
+
+    /**
+     * True until legacy rows are fully copied; reads that miss then check {@code ep_balances}.
+     */
+    private boolean migrating() {
+        return schema.getVersion() < V_LEGACY_COPIED;
+    }
+
+    /**
+     * Run the next chunk of background migration as an ordinary queued write, so it
+     * interleaves with live writes instead of holding the writer.
+     */
+    private void migrateNext() {
+        int[] rows = {0};
+        write("migrate", 0L, w -> rows[0] = schema.runChunk(w.connection)).whenComplete((v, error) -> {
+            if (error != null) {
+                plugin.getLogger().warning("[Storage] " + filePath + ": '" + schema.getCurrentStep() +
+                        "' paused after " + migrated.get() + " rows; it resumes on next start.");
+                return;
+            }
+            schema.committed();
+            long total = rows[0] > 0 ? migrated.addAndGet(rows[0]) : migrated.get();
+            if (!schema.isRunning()) {
+                plugin.getLogger().info("[Storage] " + filePath + ": schema migrated to v" +
+                        schema.getVersion() + " (" + total + " rows).");
+                return;
+            }
+            if (rows[0] > 0 && total % (MIGRATION_CHUNK * 100L) == 0) {
+                plugin.getLogger().info("[Storage] " + filePath + ": " + total + " rows migrated...");
+            }
+            if (!writeExecutor.isShutdown()) migrateNext();
+        });
     }
 
     @Override
     public void shutdown() {
-        lock.lock();
-        try {
-            if (connection != null && !connection.isClosed()) connection.close();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.WARNING, "[Storage] SQLite close error", e);
-        } finally {
-            lock.unlock();
-        }
+        // Writer first: reads queued behind pending writes still need the read pool
+        closed = true;
+        writeExecutor.shutdown(10_000L, plugin.getLogger());
+        stopped = true;
+        abandon();
+        readExecutor.shutdown(10_000L, plugin.getLogger());
+        Reader r;
+        while ((r = readers.poll()) != null) r.close();
+        if (writer != null) writer.close();
+    }
+
+    @Override
+    public StorageExecutor getExecutor() {
+        return writeExecutor;
+    }
+
+    @Override
+    public List<StorageExecutor> getExecutors() {
+        return Arrays.asList(writeExecutor, readExecutor);
     }
 
     @Override
     public boolean isConnected() {
-        try { return connection != null && !connection.isClosed(); }
+        try { return writer != null && !writer.connection.isClosed(); }
         catch (SQLException e) { return false; }
     }
 
+    // ═══════════════════════════════════════════
+    //  Reads
+    // ═══════════════════════════════════════════
+
     @Override
     public CompletableFuture<Double> getBalance(UUID player, String currencyId) {
-        return CompletableFuture.supplyAsync(() -> {
-            lock.lock();
-            try (PreparedStatement ps = conn().prepareStatement(
-                    "SELECT balance FROM ep_balances WHERE uuid=? AND currency=?")) {
-                ps.setString(1, player.toString());
-                ps.setString(2, currencyId);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) return rs.getDouble(1);
-                return -1.0; // no account
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "[Storage] getBalance error", e);
-                return 0.0;
-            } finally {
-                lock.unlock();
+        return read("getBalance", timeouts.getRead(), r -> {
+            r.selectOne.setBytes(1, BinaryUuid.toBytes(player));
+            r.selectOne.setInt(2, keys.get(currencyId));
+            try (ResultSet rs = r.selectOne.executeQuery()) {
+                if (rs.next()) return units.read(rs, currencyId, 1, 2);
             }
+            if (migrating()) {
+                try (PreparedStatement ps = r.connection.prepareStatement(
+                        "SELECT balance, units FROM ep_balances WHERE uuid=? AND currency=?")) {
+                    ps.setString(1, player.toString());
+                    ps.setString(2, currencyId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) return units.read(rs, currencyId, 1, 2);
+                    }
+                }
+            }
+            return -1.0; // no account
         });
     }
 
     @Override
-    public CompletableFuture<Void> setBalance(UUID player, String currencyId, double amount) {
-        return CompletableFuture.runAsync(() -> {
-            lock.lock();
-            try (PreparedStatement ps = conn().prepareStatement(
-                    "INSERT INTO ep_balances(uuid,currency,balance,updated) VALUES(?,?,?,?) " +
-                            "ON CONFLICT(uuid,currency) DO UPDATE SET balance=?,updated=?")) {
-                long now = System.currentTimeMillis();
-                ps.setString(1, player.toString());
-                ps.setString(2, currencyId);
-                ps.setDouble(3, amount);
-                ps.setLong(4, now);
-                ps.setDouble(5, amount);
-                ps.setLong(6, now);
-                ps.executeUpdate();
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "[Storage] setBalance error", e);
-            } finally {
-                lock.unlock();
+    public CompletableFuture<VersionedBalance> getVersionedBalance(UUID player, String currencyId) {
+        return read("getVersionedBalance", timeouts.getRead(), r -> {
+            try (PreparedStatement ps = r.connection.prepareStatement(SELECT_VERSIONED)) {
+                ps.setBytes(1, BinaryUuid.toBytes(player));
+                ps.setInt(2, keys.get(currencyId));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    return new VersionedBalance(units.read(rs, currencyId, 1, 2), rs.getLong(3));
+                }
             }
         });
     }
@@ -127,64 +322,660 @@ public final class SQLiteProvider implements StorageProvider {
     }
 
     @Override
-    public CompletableFuture<Void> createAccount(UUID player, String currencyId, double defaultBalance) {
-        return setBalance(player, currencyId, defaultBalance);
+    public CompletableFuture<Map<UUID, Map<String, Double>>> loadAccounts(Collection<UUID> players,
+                                                                         Collection<String> currencyIds) {
+        if (players.isEmpty() || currencyIds.isEmpty()) return CompletableFuture.completedFuture(new HashMap<>());
+        List<UUID> all = new ArrayList<>(players);
+        return read("loadAccounts", timeouts.getBulk(), r -> {
+            Map<UUID, Map<String, Double>> map = new HashMap<>();
+            Map<Integer, String> byKey = new HashMap<>();
+            for (String id : currencyIds) byKey.put(keys.get(id), id);
+            for (int from = 0; from < all.size(); from += LOAD_CHUNK) {
+                List<UUID> chunk = all.subList(from, Math.min(all.size(), from + LOAD_CHUNK));
+                try (PreparedStatement ps = r.connection.prepareStatement(
+                        "SELECT uuid, currency, balance, units FROM ep_balances_v2 WHERE uuid IN (" +
+                                String.join(",", Collections.nCopies(chunk.size(), "?")) + ") AND currency IN (" +
+                                String.join(",", Collections.nCopies(byKey.size(), "?")) + ")")) {
+                    int i = 1;
+                    for (UUID u : chunk) ps.setBytes(i++, BinaryUuid.toBytes(u));
+                    for (int key : byKey.keySet()) ps.setInt(i++, key);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String cur = byKey.get(rs.getInt(2));
+                            map.computeIfAbsent(BinaryUuid.fromBytes(rs.getBytes(1)), k -> new HashMap<>())
+                                    .put(cur, units.read(rs, cur, 3, 4));
+                        }
+                    }
+                }
+                if (migrating()) loadLegacy(r.connection, chunk, currencyIds, map);
+            }
+            return map;
+        });
+    }
+
+    /**
+     * Fill in rows that have not been copied to the new layout yet.
+     */
+    private void loadLegacy(Connection c, List<UUID> chunk, Collection<String> currencyIds,
+                            Map<UUID, Map<String, Double>> map) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT uuid, currency, balance, units FROM ep_balances WHERE uuid IN (" +
+                        String.join(",", Collections.nCopies(chunk.size(), "?")) + ") AND currency IN (" +
+                        String.join(",", Collections.nCopies(currencyIds.size(), "?")) + ")")) {
+            int i = 1;
+            for (UUID u : chunk) ps.setString(i++, u.toString());
+            for (String id : currencyIds) ps.setString(i++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String cur = rs.getString(2);
+                    map.computeIfAbsent(UUID.fromString(rs.getString(1)), k -> new HashMap<>())
+                            .putIfAbsent(cur, units.read(rs, cur, 3, 4));
+                }
+            }
+        }
     }
 
     @Override
-    public CompletableFuture<Map<UUID, Double>> getAllBalances(String currencyId) {
-        return CompletableFuture.supplyAsync(() -> {
-            Map<UUID, Double> map = new HashMap<>();
-            lock.lock();
-            try (PreparedStatement ps = conn().prepareStatement(
-                    "SELECT uuid, balance FROM ep_balances WHERE currency=?")) {
-                ps.setString(1, currencyId);
-                ResultSet rs = ps.executeQuery();
+    public CompletableFuture<Long> scanBalances(String currencyId, int fetchSize, BalanceVisitor visitor) {
+        if (migrating()) return migrationInProgress();
+        return read("scanBalances", 0L, r -> {
+            long n = 0;
+            // sqlite-jdbc steps through the result lazily, so rows are never buffered
+            r.selectCurrency.setFetchSize(fetchSize);
+            r.selectCurrency.setInt(1, keys.get(currencyId));
+            try (ResultSet rs = r.selectCurrency.executeQuery()) {
                 while (rs.next()) {
-                    map.put(UUID.fromString(rs.getString(1)), rs.getDouble(2));
+                    visitor.visit(BinaryUuid.fromBytes(rs.getBytes(1)), units.read(rs, currencyId, 2, 3));
+                    n++;
                 }
-            } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "[Storage] getAllBalances error", e);
-            } finally {
-                lock.unlock();
             }
-            return map;
+            return n;
         });
     }
 
     @Override
-    public CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances) {
-        return CompletableFuture.runAsync(() -> {
-            lock.lock();
-            try {
-                Connection c = conn();
-                c.setAutoCommit(false);
-                try (PreparedStatement ps = c.prepareStatement(
-                        "INSERT INTO ep_balances(uuid,currency,balance,updated) VALUES(?,?,?,?) " +
-                                "ON CONFLICT(uuid,currency) DO UPDATE SET balance=?,updated=?")) {
-                    long now = System.currentTimeMillis();
-                    for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
-                        ps.setString(1, entry.getKey().toString());
-                        ps.setString(2, currencyId);
-                        ps.setDouble(3, entry.getValue());
-                        ps.setLong(4, now);
-                        ps.setDouble(5, entry.getValue());
-                        ps.setLong(6, now);
-                        ps.addBatch();
+    public CompletableFuture<LinkedHashMap<UUID, Double>> getBalancePage(String currencyId, UUID after, int limit) {
+        if (migrating()) return migrationInProgress();
+        return read("getBalancePage", timeouts.getBulk(), r -> {
+            LinkedHashMap<UUID, Double> page = new LinkedHashMap<>();
+            try (PreparedStatement ps = r.connection.prepareStatement(
+                    "SELECT uuid, balance, units FROM ep_balances_v2 WHERE currency=? AND uuid>? ORDER BY uuid LIMIT ?")) {
+                ps.setInt(1, keys.get(currencyId));
+                // Any 16-byte uuid sorts after the empty blob
+                ps.setBytes(2, after != null ? BinaryUuid.toBytes(after) : new byte[0]);
+                ps.setInt(3, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        page.put(BinaryUuid.fromBytes(rs.getBytes(1)), units.read(rs, currencyId, 2, 3));
                     }
-                    ps.executeBatch();
-                    c.commit();
-                } catch (SQLException e) {
-                    c.rollback();
-                    throw e;
-                } finally {
-                    c.setAutoCommit(true);
                 }
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<BalanceChange>> getChangesSince(long since, BalanceChange after, int limit) {
+        return read("getChangesSince", timeouts.getBulk(), r -> {
+            List<BalanceChange> changes = new ArrayList<>();
+            // The index on updated ends with the primary key of this WITHOUT ROWID table,
+            // so it serves the whole order without a sort
+            try (PreparedStatement ps = r.connection.prepareStatement(
+                    "SELECT uuid, currency, balance, units, version, updated FROM ep_balances_v2 " +
+                            "WHERE updated>=?" +
+                            (after != null ? " AND (updated>? OR uuid>? OR (uuid=? AND currency>?))" : "") +
+                            " ORDER BY updated, uuid, currency LIMIT ?")) {
+                int i = 1;
+                if (after != null) {
+                    byte[] uuid = BinaryUuid.toBytes(after.getPlayer());
+                    ps.setLong(i++, after.getUpdated());
+                    ps.setLong(i++, after.getUpdated());
+                    ps.setBytes(i++, uuid);
+                    ps.setBytes(i++, uuid);
+                    ps.setInt(i++, after.getCurrencyKey());
+                } else {
+                    ps.setLong(i++, since);
+                }
+                ps.setInt(i, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int key = rs.getInt(2);
+                        String currencyId = keys.name(key);
+                        changes.add(new BalanceChange(BinaryUuid.fromBytes(rs.getBytes(1)), key, currencyId,
+                                currencyId != null ? units.read(rs, currencyId, 3, 4) : rs.getDouble(3),
+                                rs.getLong(5), rs.getLong(6)));
+                    }
+                }
+            }
+            return changes;
+        });
+    }
+
+    /**
+     * Run a query on a pooled reader. It does not wait for queued writes: the cache already
+     * answers for changes it has not stored yet, and callers that need those changes in the
+     * database wait on their write futures or on {@link #flush}.
+     * <p>
+     * Completes exceptionally if the query fails or no reader frees up in time: a default
+     * in place of an unread value would be taken for the stored one.
+     *
+     * @param timeoutMillis counted from now, waits included; the query is interrupted once
+     *                      it runs past it. 0 = none
+     */
+    private <T> CompletableFuture<T> read(String what, long timeoutMillis, ReadWork<T> work) {
+        long deadline = deadline(timeoutMillis);
+        Supplier<T> task = () -> {
+            long left = deadline != 0L ? deadline - System.nanoTime() : TimeUnit.SECONDS.toNanos(10);
+            if (left <= 0) throw new CompletionException(timedOut(what, timeoutMillis));
+            Reader r;
+            try {
+                r = readers.poll(left, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(new SQLException(what + " interrupted waiting for a reader", e));
+            }
+            if (r == null) {
+                if (deadline != 0L) throw new CompletionException(timedOut(what, timeoutMillis));
+                plugin.getLogger().severe("[Storage] " + what + " error: no SQLite reader available");
+                throw new CompletionException(new SQLTransientException("No SQLite reader available for " + what));
+            }
+            Object token = new Object();
+            r.hold(token);
+            CompletableFuture<Void> watchdog = deadline == 0L ? null : CompletableFuture.runAsync(() -> r.interrupt(token),
+                    CompletableFuture.delayedExecutor(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+            try {
+                return work.run(r);
             } catch (SQLException e) {
-                plugin.getLogger().log(Level.SEVERE, "[Storage] bulkSet error", e);
+                if (watchdog != null && watchdog.isDone()) throw new CompletionException(timedOut(what, timeoutMillis));
+                plugin.getLogger().log(Level.SEVERE, "[Storage] " + what + " error", e);
+                throw new CompletionException(e);
             } finally {
-                lock.unlock();
+                if (watchdog != null) watchdog.cancel(false);
+                r.release();
+                readers.add(r);
+            }
+        };
+        return CompletableFuture.supplyAsync(task, readExecutor);
+    }
+
+    private static long deadline(long timeoutMillis) {
+        return timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0L;
+    }
+
+    private static SQLTimeoutException timedOut(String what, long timeoutMillis) {
+        return new SQLTimeoutException(what + " timed out after " + timeoutMillis + " ms");
+    }
+
+    private static <T> CompletableFuture<T> migrationInProgress() {
+        return CompletableFuture.failedFuture(StorageUnavailableException.migrating());
+    }
+
+    // ═══════════════════════════════════════════
+    //  Writes
+    // ═══════════════════════════════════════════
+
+    @Override
+    public CompletableFuture<Void> registerCurrency(String currencyId) {
+        int[] key = {-1};
+        return write("registerCurrency", timeouts.getWrite(), w -> key[0] = keys.lookupOrCreate(w.connection, currencyId))
+                .thenRun(() -> keys.remember(currencyId, key[0]));
+    }
+
+    /**
+     * Writes commit in queue order, so an empty write completes once everything before it has.
+     */
+    @Override
+    public CompletableFuture<Void> flush() {
+        return write("flush", 0L, w -> { });
+    }
+
+    @Override
+    public CompletableFuture<Void> setBalance(UUID player, String currencyId, double amount) {
+        return write("setBalance", timeouts.getWrite(), w -> {
+            bindRow(w.upsert, player, currencyId, amount, System.currentTimeMillis());
+            w.upsert.executeUpdate();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> createAccount(UUID player, String currencyId, double defaultBalance) {
+        return setBalance(player, currencyId, defaultBalance);
+    }
+
+    @Override
+    public CompletableFuture<Void> createAccounts(UUID player, Map<String, Double> defaultBalances) {
+        if (defaultBalances.isEmpty()) return CompletableFuture.completedFuture(null);
+        return write("createAccounts", timeouts.getWrite(), w -> {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Double> e : defaultBalances.entrySet()) {
+                bindRow(w.insertIfAbsent, player, e.getKey(), e.getValue(), now);
+                w.insertIfAbsent.addBatch();
+            }
+            w.insertIfAbsent.executeBatch();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeltaResult> addBalance(UUID player, String currencyId, double delta,
+                                                     Double min, Double max) {
+        Long scale = units.getScale(currencyId);
+        // New value of the authoritative column; every occurrence binds the delta
+        String next = scale != null
+                ? "COALESCE(units, CAST(ROUND(balance * " + scale + ") AS INTEGER)) + ?"
+                : "balance + ?";
+        // SQLite evaluates every SET expression against the old row
+        String sql = "UPDATE ep_balances_v2 SET " +
+                (scale != null ? "units=" + next + ", balance=(" + next + ") / " + scale + ".0" : "balance=" + next) +
+                ", updated=?, version=version+1 WHERE uuid=? AND currency=?" +
+                (min != null ? " AND " + next + " >= ?" : "") +
+                (max != null ? " AND " + next + " <= ?" : "");
+        DeltaResult[] result = {null};
+        return write("addBalance", timeouts.getWrite(), w -> {
+            if (migrating()) copyLegacyRow(w, player, currencyId);
+            boolean applied;
+            try (PreparedStatement ps = w.connection.prepareStatement(sql)) {
+                int i = 1;
+                units.bindAmount(ps, i++, currencyId, delta);
+                if (scale != null) units.bindAmount(ps, i++, currencyId, delta);
+                ps.setLong(i++, System.currentTimeMillis());
+                ps.setBytes(i++, BinaryUuid.toBytes(player));
+                ps.setInt(i++, keys.get(currencyId));
+                if (min != null) {
+                    units.bindAmount(ps, i++, currencyId, delta);
+                    units.bindAmount(ps, i++, currencyId, min);
+                }
+                if (max != null) {
+                    units.bindAmount(ps, i++, currencyId, delta);
+                    units.bindAmount(ps, i, currencyId, max);
+                }
+                applied = ps.executeUpdate() > 0;
+            }
+            try (PreparedStatement ps = w.connection.prepareStatement(SELECT_VERSIONED)) {
+                ps.setBytes(1, BinaryUuid.toBytes(player));
+                ps.setInt(2, keys.get(currencyId));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("No '" + currencyId + "' account for " + player);
+                    result[0] = new DeltaResult(applied, units.read(rs, currencyId, 1, 2), rs.getLong(3));
+                }
+            }
+        }).thenApply(v -> result[0]);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSetBalance(UUID player, String currencyId, double amount,
+                                                           long expectedVersion) {
+        boolean[] written = {false};
+        return write("compareAndSet", timeouts.getWrite(), w -> {
+            try (PreparedStatement ps = w.connection.prepareStatement(
+                    "UPDATE ep_balances_v2 SET balance=?, units=?, updated=?, version=version+1 " +
+                            "WHERE uuid=? AND currency=? AND version=?")) {
+                ps.setDouble(1, amount);
+                units.bind(ps, 2, currencyId, amount);
+                ps.setLong(3, System.currentTimeMillis());
+                ps.setBytes(4, BinaryUuid.toBytes(player));
+                ps.setInt(5, keys.get(currencyId));
+                ps.setLong(6, expectedVersion);
+                written[0] = ps.executeUpdate() > 0;
+            }
+        }).thenApply(v -> written[0]);
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkSetBalances(String currencyId, Map<UUID, Double> balances) {
+        if (balances.isEmpty()) return CompletableFuture.completedFuture(null);
+        return write("bulkSet", timeouts.getBulkWrite(balances.size()), w -> {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<UUID, Double> entry : balances.entrySet()) {
+                bindRow(w.upsert, entry.getKey(), currencyId, entry.getValue(), now);
+                w.upsert.addBatch();
+            }
+            w.upsert.executeBatch();
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> bulkAddBalances(String currencyId, Map<UUID, Double> amounts) {
+        if (amounts.isEmpty()) return CompletableFuture.completedFuture(null);
+        // A row not copied from the old table yet would lose its old balance
+        if (migrating()) return migrationInProgress();
+        Long scale = units.getScale(currencyId);
+        String add;
+        if (scale != null) {
+            // Existing rows may predate the units column; SQLite evaluates every SET against the old row
+            String sum = "COALESCE(ep_balances_v2.units, CAST(ROUND(ep_balances_v2.balance * " + scale + ") AS INTEGER))" +
+                    " + excluded.units";
+            add = "units=" + sum + ", balance=(" + sum + ") / " + scale + ".0";
+        } else {
+            add = "balance=ep_balances_v2.balance + excluded.balance";
+        }
+        String sql = "INSERT INTO ep_balances_v2(uuid,currency,balance,units,updated) VALUES(?,?,?,?,?) " +
+                "ON CONFLICT(uuid,currency) DO UPDATE SET " + add +
+                ", updated=excluded.updated, version=ep_balances_v2.version+1";
+        return write("bulkAdd", timeouts.getBulkWrite(amounts.size()), w -> {
+            try (PreparedStatement ps = w.connection.prepareStatement(sql)) {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<UUID, Double> entry : amounts.entrySet()) {
+                    bindRow(ps, entry.getKey(), currencyId, entry.getValue(), now);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
             }
         });
     }
-}
\ No newline at end of file
+
+    @Override
+    public CompletableFuture<Integer> mergeCurrency(String fromId, String toId, double rate) {
+        if (migrating()) return migrationInProgress();
+        Long fromScale = units.getScale(fromId);
+        Long toScale = units.getScale(toId);
+        String source = fromScale != null ? "COALESCE(units / " + fromScale + ".0, balance)" : "balance";
+        String sql;
+        if (toScale != null) {
+            // Round once to target units; existing rows may predate the units column
+            String added = "CAST(ROUND(" + source + " * ? * " + toScale + ") AS INTEGER)";
+            String old = "COALESCE(ep_balances_v2.units, CAST(ROUND(ep_balances_v2.balance * " + toScale + ") AS INTEGER))";
+            sql = "INSERT INTO ep_balances_v2(uuid,currency,balance,units,updated) " +
+                    "SELECT uuid, ?, " + added + " / " + toScale + ".0, " + added + ", ? " +
+                    "FROM ep_balances_v2 WHERE currency=? " +
+                    "ON CONFLICT(uuid,currency) DO UPDATE SET " +
+                    "units=" + old + " + excluded.units, " +
+                    "balance=(" + old + " + excluded.units) / " + toScale + ".0, " +
+                    "updated=excluded.updated, version=ep_balances_v2.version+1";
+        } else {
+            sql = "INSERT INTO ep_balances_v2(uuid,currency,balance,units,updated) " +
+                    "SELECT uuid, ?, " + source + " * ?, NULL, ? FROM ep_balances_v2 WHERE currency=? " +
+                    "ON CONFLICT(uuid,currency) DO UPDATE SET " +
+                    "balance=ep_balances_v2.balance + excluded.balance, updated=excluded.updated, " +
+                    "version=ep_balances_v2.version+1";
+        }
+        int[] merged = {0};
+        return write("mergeCurrency", 0L, w -> {
+            try (PreparedStatement ps = w.connection.prepareStatement(sql)) {
+                int i = 1;
+                ps.setInt(i++, keys.get(toId));
+                ps.setDouble(i++, rate);
+                if (toScale != null) ps.setDouble(i++, rate);
+                ps.setLong(i++, System.currentTimeMillis());
+                ps.setInt(i, keys.get(fromId));
+                merged[0] = ps.executeUpdate();
+            }
+        }).thenApply(v -> merged[0]);
+    }
+
+    // ═══════════════════════════════════════════
+    //  History
+    // ═══════════════════════════════════════════
+
+    @Override
+    public CompletableFuture<Void> appendHistory(List<HistoryEntry> entries) {
+        if (entries.isEmpty()) return CompletableFuture.completedFuture(null);
+        // The table is created after the background migration
+        if (schema.getVersion() < V_HISTORY) return migrationInProgress();
+        return write("appendHistory", timeouts.getBulkWrite(entries.size()), w -> {
+            try (PreparedStatement ps = w.connection.prepareStatement(HistoryRows.insertSql("ep_history"))) {
+                for (HistoryEntry e : entries) {
+                    HistoryRows.bind(ps, keys, e);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<HistoryEntry>> getHistory(UUID player, String currencyId, long beforeId, int limit) {
+        if (schema.getVersion() < V_HISTORY) return CompletableFuture.completedFuture(Collections.emptyList());
+        return read("getHistory", timeouts.getBulk(), r -> {
+            try (PreparedStatement ps = r.connection.prepareStatement(HistoryRows.pageSql("ep_history"))) {
+                return HistoryRows.page(ps, keys, player, currencyId, beforeId, limit);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<long[]> getHistoryBounds(long since) {
+        if (schema.getVersion() < V_HISTORY_TIME) return migrationInProgress();
+        return read("getHistoryBounds", timeouts.getBulk(), r -> {
+            try (PreparedStatement ps = r.connection.prepareStatement(HistoryRows.boundsSql("ep_history"))) {
+                return HistoryRows.bounds(ps, since);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> scanHistory(String currencyId, UUID player, long since, long fromId, long toId,
+                                               HistoryVisitor visitor) {
+        if (schema.getVersion() < V_HISTORY_TIME) return migrationInProgress();
+        return read("scanHistory", 0L, r -> {
+            try (PreparedStatement ps = r.connection.prepareStatement(
+                    HistoryRows.scanSql("ep_history", player != null))) {
+                return HistoryRows.scan(ps, keys, currencyId, player, since, fromId, toId, visitor);
+            }
+        });
+    }
+
+    /**
+     * Copy one row that the background migration has not reached yet, so it can be updated in place.
+     */
+    private void copyLegacyRow(Writer w, UUID player, String currencyId) throws SQLException {
+        try (PreparedStatement ps = w.connection.prepareStatement(
+                "SELECT balance, units FROM ep_balances WHERE uuid=? AND currency=?")) {
+            ps.setString(1, player.toString());
+            ps.setString(2, currencyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                bindRow(w.insertIfAbsent, player, currencyId, units.read(rs, currencyId, 1, 2),
+                        System.currentTimeMillis());
+                w.insertIfAbsent.executeUpdate();
+            }
+        }
+    }
+
+    private void bindRow(PreparedStatement ps, UUID player, String currencyId,
+                         double balance, long now) throws SQLException {
+        ps.setBytes(1, BinaryUuid.toBytes(player));
+        ps.setInt(2, keys.get(currencyId));
+        ps.setDouble(3, balance);
+        units.bind(ps, 4, currencyId, balance);
+        ps.setLong(5, now);
+    }
+
+    /**
+     * Queue a write. The future completes once the transaction containing it is committed,
+     * and exceptionally if the write failed, the queue is full or the provider is shut down.
+     *
+     * @param timeoutMillis a write still queued this long after the call is dropped, since its
+     *                      caller has been told it failed. 0 = none
+     */
+    private CompletableFuture<Void> write(String what, long timeoutMillis, WriteWork work) {
+        WriteOp op = new WriteOp(what, work, timeoutMillis);
+        if (closed) {
+            op.done.completeExceptionally(new RejectedExecutionException("SQLite storage " + filePath + " is shut down"));
+            return op.done;
+        }
+        if (!writes.offer(op)) {
+            op.done.completeExceptionally(new RejectedExecutionException("SQLite write queue full: " + filePath));
+            return op.done;
+        }
+        if (!stopped && draining.compareAndSet(false, true)) writeExecutor.execute(this::drain);
+        // Shut down between the check and the offer: nothing drains the queue any more
+        if (stopped) abandon();
+        return op.done;
+    }
+
+    /**
+     * Writer loop: commit everything queued so far, one transaction per round.
+     */
+    private void drain() {
+        List<WriteOp> batch = new ArrayList<>();
+        try {
+            while (true) {
+                WriteOp op;
+                while (batch.size() < MAX_TX_WRITES && (op = writes.poll()) != null) batch.add(op);
+                if (batch.isEmpty()) break;
+                long now = System.nanoTime();
+                for (WriteOp o : batch) {
+                    if (o.deadline != 0L && now - o.deadline >= 0) o.error = timedOut(o.what, o.timeoutMillis);
+                }
+                commit(batch);
+                settle(batch);
+            }
+        } catch (Throwable t) {
+            // An Error escaped the writer: fail what it held rather than leave callers waiting
+            for (WriteOp o : batch) if (o.error == null) o.error = t;
+            settle(batch);
+            throw t;
+        } finally {
+            draining.set(false);
+            // A write queued after the last poll but before the flag was cleared
+            if (!writes.isEmpty() && !stopped && draining.compareAndSet(false, true)) writeExecutor.execute(this::drain);
+        }
+    }
+
+    private void commit(List<WriteOp> batch) {
+        try {
+            Writer w = writer();
+            // Ops that already failed (timed out in the queue) are skipped
+            for (WriteOp op : batch) if (op.error == null) op.work.run(w);
+            w.connection.commit();
+        } catch (Exception e) {
+            // Not only SQLException: whatever a write throws fails that write alone
+            rollback();
+            if (batch.size() == 1) {
+                plugin.getLogger().log(Level.SEVERE, "[Storage] " + batch.get(0).what + " error", e);
+                batch.get(0).error = e;
+                return;
+            }
+            // Retry one by one so a single bad write does not take the others down with it
+            for (WriteOp op : batch) if (op.error == null) commit(Collections.singletonList(op));
+        }
+    }
+
+    /**
+     * Complete the futures of a committed (or failed) batch and clear it.
+     */
+    private void settle(List<WriteOp> batch) {
+        for (WriteOp o : batch) {
+            if (o.error != null) o.done.completeExceptionally(o.error);
+            else o.done.complete(null);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Fail every write still queued once the writer has stopped.
+     */
+    private void abandon() {
+        WriteOp op;
+        while ((op = writes.poll()) != null) {
+            op.done.completeExceptionally(new RejectedExecutionException("SQLite storage " + filePath + " is shut down"));
+        }
+    }
+
+    private void rollback() {
+        try {
+            if (writer != null) writer.connection.rollback();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "[Storage] SQLite rollback error", e);
+        }
+    }
+
+    /**
+     * The writer connection, reopened (with fresh statements) if it was closed.
+     */
+    private Writer writer() throws SQLException {
+        if (writer == null || writer.connection.isClosed()) writer = new Writer(open(false));
+        return writer;
+    }
+
+    // ─── Connections ───
+
+    private static final class Writer {
+        final Connection connection;
+        final PreparedStatement upsert;
+        final PreparedStatement insertIfAbsent;
+
+        Writer(Connection connection) throws SQLException {
+            this.connection = connection;
+            connection.setAutoCommit(false);
+            this.upsert = connection.prepareStatement(UPSERT);
+            this.insertIfAbsent = connection.prepareStatement(INSERT_IF_ABSENT);
+        }
+
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private static final class Reader {
+        final Connection connection;
+        final PreparedStatement selectOne;
+        final PreparedStatement selectCurrency;
+        // The read currently holding this reader, so a late watchdog can't interrupt the next one
+        Object owner;
+
+        Reader(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.selectOne = connection.prepareStatement(SELECT_ONE);
+            this.selectCurrency = connection.prepareStatement(SELECT_CURRENCY);
+        }
+
+        /**
+         * Abort whatever is running on this connection, if {@code token}'s read still holds it.
+         * sqlite-jdbc's cancel interrupts the connection, not just the one statement.
+         */
+        synchronized void interrupt(Object token) {
+            if (owner != token) return;
+            try {
+                selectOne.cancel();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        synchronized void hold(Object token) {
+            owner = token;
+        }
+
+        synchronized void release() {
+            owner = null;
+        }
+
+        void close() {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private static final class WriteOp {
+        final String what;
+        final WriteWork work;
+        final long timeoutMillis;
+        // System.nanoTime() past which the op is dropped, 0 = never
+        final long deadline;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        // Set by the writer thread before done completes
+        Throwable error;
+
+        WriteOp(String what, WriteWork work, long timeoutMillis) {
+            this.what = what;
+            this.work = work;
+            this.timeoutMillis = timeoutMillis;
+            this.deadline = deadline(timeoutMillis);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriteWork {
+        void run(Writer w) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ReadWork<T> {
+        T run(Reader r) throws SQLException;
+    }
+}
@@ -0,0 +1,102 @@
+package jar.elem.elempoints.plugin.currency;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Balance reads and writes on the {@link AccountStore} against the nested
+ * {@code Map<String, Map<UUID, Double>>} cache it replaced.
+ * <p>
+ * Each operation reads one balance and writes it back plus one, for a random online
+ * player and currency, as a Vault deposit does. Reports throughput and bytes allocated
+ * per operation. Not a unit test; run it by hand:
+ * <pre>
+ *   java -cp &lt;test classpath&gt; jar.elem.elempoints.plugin.currency.AccountStoreBenchmark [players] [currencies]
+ * </pre>
+ */
+public final class AccountStoreBenchmark {
+
+    private static final int OPS = 20_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int currencies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        UUID[] ids = new UUID[players];
+        String[] names = new String[currencies];
+        for (int i = 0; i < players; i++) ids[i] = UUID.randomUUID();
+        for (int c = 0; c < currencies; c++) names[c] = "currency" + c;
+        // Same access pattern for both: random player, random currency
+        int[] order = new int[1 << 16];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < order.length; i++) order[i] = random.nextInt(players) * currencies + random.nextInt(currencies);
+
+        Map<String, Map<UUID, Double>> nested = new ConcurrentHashMap<>();
+        for (String name : names) {
+            Map<UUID, Double> m = new ConcurrentHashMap<>();
+            for (UUID id : ids) m.put(id, 0.0);
+            nested.put(name, m);
+        }
+        AccountStore store = new AccountStore(currencies);
+        for (UUID id : ids) {
+            Account acc = store.getOrCreate(id);
+            for (int c = 0; c < currencies; c++) acc.load(c, 0L);
+        }
+
+        System.out.println("Java " + Runtime.version() + "; " + players + " players, " + currencies +
+                " currencies, " + OPS / 1_000_000 + "M read+write ops per round");
+        long sink = 0;
+        double bestMap = 0, bestStore = 0, allocMap = 0, allocStore = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long a0 = allocated(), t0 = System.nanoTime();
+            sink += nested(nested, ids, names, order, currencies);
+            long a1 = allocated(), t1 = System.nanoTime();
+            sink += store(store, ids, order, currencies);
+            long a2 = allocated(), t2 = System.nanoTime();
+            // The first round warms up
+            if (round == 0) continue;
+            bestMap = Math.max(bestMap, OPS / ((t1 - t0) / 1e9));
+            bestStore = Math.max(bestStore, OPS / ((t2 - t1) / 1e9));
+            allocMap = (double) (a1 - a0) / OPS;
+            allocStore = (double) (a2 - a1) / OPS;
+        }
+        System.out.printf("nested map:    %,12.0f ops/s  %6.1f bytes/op%n", bestMap, allocMap);
+        System.out.printf("account store: %,12.0f ops/s  %6.1f bytes/op%n", bestStore, allocStore);
+        if (sink == 42) System.out.println();
+    }
+
+    private static long nested(Map<String, Map<UUID, Double>> cache, UUID[] ids, String[] names,
+                               int[] order, int currencies) {
+        long sink = 0;
+        for (int i = 0; i < OPS; i++) {
+            int k = order[i & (order.length - 1)];
+            Map<UUID, Double> m = cache.get(names[k % currencies]);
+            UUID id = ids[k / currencies];
+            double bal = m.get(id);
+            m.put(id, bal + 1);
+            sink += (long) bal;
+        }
+        return sink;
+    }
+
+    private static long store(AccountStore store, UUID[] ids, int[] order, int currencies) {
+        long sink = 0;
+        for (int i = 0; i < OPS; i++) {
+            int k = order[i & (order.length - 1)];
+            Account acc = store.get(ids[k / currencies]);
+            int ordinal = k % currencies;
+            long bal = acc.get(ordinal);
+            acc.set(ordinal, bal + 1);
+            sink += bal;
+        }
+        return sink;
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
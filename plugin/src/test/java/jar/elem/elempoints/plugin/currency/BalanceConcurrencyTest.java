@@ -0,0 +1,136 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.api.result.TransactionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deposits, withdrawals and sets on one account from many threads at once: every
+ * change that reports success must be kept, none may be computed from a stale balance.
+ */
+class BalanceConcurrencyTest {
+
+    private static final String CURRENCY = TestManagers.CURRENCY;
+    private static final double START = 1000;
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 5_000;
+    private static final BalanceChangeEvent.Reason REASON = BalanceChangeEvent.Reason.API_CALL;
+
+    private CurrencyManager manager;
+    private final UUID player = UUID.randomUUID();
+
+    @AfterEach
+    void shutdown() {
+        if (manager != null) manager.shutdown().join();
+    }
+
+    @Test
+    void concurrentDepositsAreAllKept() throws Exception {
+        manager = manager();
+
+        List<TransactionResult> results = hammer(random -> manager.deposit(player, CURRENCY, 1, REASON, "test"));
+
+        assertEquals(THREADS * OPS_PER_THREAD, succeeded(results));
+        assertEquals(START + THREADS * OPS_PER_THREAD, manager.getBalance(player, CURRENCY));
+    }
+
+    @Test
+    void concurrentWithdrawalsNeverOverdraw() throws Exception {
+        manager = manager();
+
+        List<TransactionResult> results = hammer(random -> manager.withdraw(player, CURRENCY, 1, REASON, "test"));
+
+        // Exactly the starting balance can be taken out, one unit at a time
+        assertEquals((int) START, succeeded(results));
+        assertEquals(0.0, manager.getBalance(player, CURRENCY));
+    }
+
+    @Test
+    void mixedChangesFormOneHistory() throws Exception {
+        manager = manager();
+
+        List<TransactionResult> results = hammer(random -> {
+            switch (random.nextInt(3)) {
+                case 0: return manager.deposit(player, CURRENCY, 1 + random.nextInt(50), REASON, "test");
+                case 1: return manager.withdraw(player, CURRENCY, 1 + random.nextInt(50), REASON, "test");
+                default: return manager.setBalance(player, CURRENCY, random.nextInt(2000), REASON, "test");
+            }
+        });
+
+        // Applied one after another, each change starts from the balance the previous one left:
+        // the old balances are the new ones shifted by one. A lost update breaks the chain.
+        Map<Double, Integer> unmatched = new HashMap<>();
+        unmatched.merge(START, 1, Integer::sum);
+        for (TransactionResult r : results) {
+            if (!r.isSuccess()) continue;
+            assertTrue(r.getNewBalance() >= 0, "negative balance " + r.getNewBalance());
+            unmatched.merge(r.getNewBalance(), 1, Integer::sum);
+            unmatched.merge(r.getOldBalance(), -1, Integer::sum);
+        }
+        unmatched.merge(manager.getBalance(player, CURRENCY), -1, Integer::sum);
+        unmatched.values().removeIf(n -> n == 0);
+        assertEquals(Map.of(), unmatched, "balances no change started from");
+    }
+
+    // ─── Helpers ───
+
+    @FunctionalInterface
+    private interface Op {
+        TransactionResult run(ThreadLocalRandom random);
+    }
+
+    /**
+     * Run {@code op} {@link #OPS_PER_THREAD} times on each of {@link #THREADS} threads.
+     */
+    private List<TransactionResult> hammer(Op op) throws Exception {
+        // Loaded before the threads start, so only the changes race
+        manager.getBalance(player, CURRENCY);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<List<TransactionResult>>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                Callable<List<TransactionResult>> worker = () -> {
+                    go.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<TransactionResult> done = new ArrayList<>(OPS_PER_THREAD);
+                    for (int i = 0; i < OPS_PER_THREAD; i++) done.add(op.run(random));
+                    return done;
+                };
+                futures.add(pool.submit(worker));
+            }
+            go.countDown();
+            List<TransactionResult> results = new ArrayList<>();
+            for (Future<List<TransactionResult>> f : futures) results.addAll(f.get(60, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int succeeded(List<TransactionResult> results) {
+        int n = 0;
+        for (TransactionResult r : results) if (r.isSuccess()) n++;
+        return n;
+    }
+
+    private static CurrencyManager manager() {
+        return TestManagers.create(TestManagers.config(), TestManagers.storage(START), START, 0);
+    }
+}
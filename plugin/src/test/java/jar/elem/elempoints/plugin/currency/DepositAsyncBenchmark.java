@@ -0,0 +1,94 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.api.result.TransactionResult;
+import jar.elem.elempoints.plugin.storage.StorageExecutor;
+import jar.elem.elempoints.plugin.storage.StorageProvider;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Throughput of concurrent {@link CurrencyManager#depositAsync} calls on platform threads
+ * and on virtual threads ({@code storage.executor.virtual-threads}).
+ * <p>
+ * Every call deposits to a new player, so it first reads the balance through a provider
+ * whose queries take {@code latency} millis on a pool of {@code pool} connections, like a
+ * cache miss against MySQL. Not a unit test; run it by hand:
+ * <pre>
+ *   java -cp &lt;test classpath&gt; jar.elem.elempoints.plugin.currency.DepositAsyncBenchmark [calls] [latency] [pool]
+ * </pre>
+ * Virtual threads need Java 21+; on older JVMs only the platform run is measured.
+ */
+public final class DepositAsyncBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 2L;
+        int pool = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.println("Java " + Runtime.version() + ", " + Runtime.getRuntime().availableProcessors() +
+                " cpus; " + calls + " depositAsync calls, " + latency + " ms per query, " + pool + " connections");
+        TestManagers.mockServer();
+        Logger.getLogger("ElemPoints-Test").setUseParentHandlers(false);
+        for (boolean virtual : new boolean[]{false, true}) {
+            if (virtual && !StorageExecutor.isVirtualSupported()) {
+                System.out.println("virtual:  unavailable on this JVM");
+                continue;
+            }
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                // The first round warms up
+                double rate = run(virtual, calls, latency, pool);
+                if (round > 0) best = Math.max(best, rate);
+            }
+            System.out.printf("%-9s %,10.0f calls/s (best of %d)%n", virtual ? "virtual:" : "platform:", best, ROUNDS - 1);
+        }
+    }
+
+    /**
+     * @return completed calls per second
+     */
+    private static double run(boolean virtual, int calls, long latency, int pool) {
+        StorageExecutor db = new StorageExecutor("Bench-DB", pool, calls, virtual);
+        StorageProvider sp = mock(StorageProvider.class, withSettings().stubOnly());
+        when(sp.getExecutor()).thenReturn(db);
+        when(sp.getBalance(any(), any())).thenAnswer(inv -> CompletableFuture.supplyAsync(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(latency));
+            return 0.0;
+        }, db));
+        when(sp.setBalance(any(), any(), anyDouble())).thenReturn(CompletableFuture.completedFuture(null));
+
+        YamlConfiguration config = TestManagers.config();
+        config.set("storage.executor.virtual-threads", virtual);
+        config.set("storage.executor.queue-size", calls);
+        CurrencyManager manager = TestManagers.create(config, sp, 0, 0);
+        try {
+            List<CompletableFuture<TransactionResult>> results = new ArrayList<>(calls);
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                results.add(manager.depositAsync(UUID.randomUUID(), TestManagers.CURRENCY, 1));
+            }
+            for (CompletableFuture<TransactionResult> f : results) {
+                if (!f.join().isSuccess()) throw new IllegalStateException("Deposit failed: " + f.join().getMessage());
+            }
+            return calls / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            manager.shutdown().join();
+            db.shutdown(10_000L, Logger.getLogger("ElemPoints-Test"));
+        }
+    }
+}
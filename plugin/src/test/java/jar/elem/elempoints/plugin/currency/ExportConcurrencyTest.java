@@ -0,0 +1,112 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.plugin.storage.StorageProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * An export into a currency whose cached accounts keep changing while it runs: the
+ * credit and every change must both end up in the cache and in storage.
+ */
+class ExportConcurrencyTest {
+
+    private static final String SOURCE = "gems";
+    private static final String TARGET = TestManagers.CURRENCY;
+    private static final double START = 1000;
+    private static final double GEMS = 10;
+    private static final double RATE = 2;
+    private static final int PLAYERS = 16;
+    private static final int THREADS = 4;
+    private static final int DEPOSITS_PER_THREAD = 2_000;
+
+    private CurrencyManager manager;
+
+    @AfterEach
+    void shutdown() {
+        if (manager != null) manager.shutdown().join();
+    }
+
+    @Test
+    void depositsDuringAnExportKeepTheCredit() throws Exception {
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) players.add(UUID.randomUUID());
+        // Released once every depositing thread is halfway, so the export lands among the deposits
+        CountDownLatch halfway = new CountDownLatch(THREADS);
+
+        // Rows of the target as the database would hold them
+        Map<UUID, Double> rows = new ConcurrentHashMap<>();
+        StorageProvider coins = TestManagers.storage(START);
+        when(coins.setBalance(any(), eq(TARGET), anyDouble())).thenAnswer(inv -> {
+            rows.put(inv.getArgument(0), inv.getArgument(2));
+            return CompletableFuture.completedFuture(null);
+        });
+        when(coins.bulkAddBalances(eq(TARGET), anyMap())).thenAnswer(inv -> {
+            halfway.await();
+            Map<UUID, Double> amounts = inv.getArgument(1);
+            amounts.forEach((uuid, amount) -> rows.compute(uuid, (k, v) -> (v != null ? v : START) + amount));
+            return CompletableFuture.completedFuture(null);
+        });
+        StorageProvider gems = mock(StorageProvider.class, withSettings().stubOnly());
+        when(gems.getBalancePage(eq(SOURCE), any(), anyInt())).thenAnswer(inv -> {
+            LinkedHashMap<UUID, Double> page = new LinkedHashMap<>();
+            if (inv.getArgument(1) == null) {
+                for (UUID p : players) page.put(p, GEMS);
+            }
+            return CompletableFuture.completedFuture(page);
+        });
+
+        Map<String, StorageProvider> providers = new LinkedHashMap<>();
+        providers.put(TARGET, coins);
+        providers.put(SOURCE, gems);
+        manager = TestManagers.create(TestManagers.config(), providers, START, 0);
+        for (UUID p : players) manager.getBalance(p, TARGET);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> deposits = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                deposits.add(pool.submit(() -> {
+                    for (int i = 0; i < DEPOSITS_PER_THREAD; i++) {
+                        if (i == DEPOSITS_PER_THREAD / 2) halfway.countDown();
+                        assertTrue(manager.deposit(players.get(i % PLAYERS), TARGET, 1,
+                                BalanceChangeEvent.Reason.API_CALL, "test").isSuccess());
+                    }
+                }));
+            }
+            assertEquals(PLAYERS, manager.exportData(SOURCE, TARGET, RATE).get(60, TimeUnit.SECONDS));
+            for (Future<?> f : deposits) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double expected = START + (double) THREADS * DEPOSITS_PER_THREAD / PLAYERS + GEMS * RATE;
+        for (UUID p : players) {
+            assertEquals(expected, manager.getBalance(p, TARGET), "cached balance of " + p);
+            assertEquals(expected, rows.get(p), "stored balance of " + p);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.plugin.ElemPointsPlugin;
+import jar.elem.elempoints.plugin.config.CurrencyConfig;
+import jar.elem.elempoints.plugin.storage.MinorUnits;
+import jar.elem.elempoints.plugin.storage.StorageFactory;
+import jar.elem.elempoints.plugin.storage.StorageProvider;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.Event;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * {@link CurrencyManager}s over a mocked server and storage, for tests and benchmarks.
+ * Stub-only mocks: they don't record the millions of calls a stress run makes.
+ */
+final class TestManagers {
+
+    static final String CURRENCY = "coins";
+
+    /** Receives every event the plugin fires; tests that set it reset it afterwards. */
+    static volatile Consumer<Event> listener = e -> { };
+
+    private TestManagers() {
+    }
+
+    /**
+     * Install a server whose events go to {@link #listener} and whose scheduler never runs
+     * anything.
+     */
+    static synchronized void mockServer() {
+        if (Bukkit.getServer() != null) return;
+        Server server = mock(Server.class);
+        when(server.getLogger()).thenReturn(Logger.getLogger("ElemPoints-Test"));
+        PluginManager events = mock(PluginManager.class, withSettings().stubOnly());
+        doAnswer(inv -> {
+            listener.accept(inv.getArgument(0));
+            return null;
+        }).when(events).callEvent(any());
+        when(server.getPluginManager()).thenReturn(events);
+        when(server.getScheduler()).thenReturn(mock(BukkitScheduler.class));
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * Plugin config with write-behind, the spool, the journal and the history off, so
+     * every change goes straight to the provider.
+     */
+    static YamlConfiguration config() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("storage.write-behind.enabled", false);
+        config.set("storage.spool.enabled", false);
+        config.set("storage.journal.enabled", false);
+        config.set("storage.history.enabled", false);
+        return config;
+    }
+
+    /**
+     * A storage mock where every account exists with {@code balance} and writes succeed.
+     */
+    static StorageProvider storage(double balance) {
+        StorageProvider sp = mock(StorageProvider.class, withSettings().stubOnly());
+        when(sp.getBalance(any(), any())).thenReturn(CompletableFuture.completedFuture(balance));
+        when(sp.setBalance(any(), any(), anyDouble())).thenReturn(CompletableFuture.completedFuture(null));
+        return sp;
+    }
+
+    /**
+     * A manager with the single currency {@link #CURRENCY}, stored by {@code sp}.
+     *
+     * @param maxBalance 0 = no limit
+     */
+    static CurrencyManager create(YamlConfiguration config, StorageProvider sp, double defaultBalance,
+                                  double maxBalance) {
+        return create(config, Collections.singletonMap(CURRENCY, sp), defaultBalance, maxBalance);
+    }
+
+    /**
+     * A manager with one currency per entry of {@code providers}, each stored by its provider.
+     *
+     * @param maxBalance 0 = no limit
+     */
+    static CurrencyManager create(YamlConfiguration config, Map<String, StorageProvider> providers,
+                                  double defaultBalance, double maxBalance) {
+        mockServer();
+        ElemPointsPlugin plugin = mock(ElemPointsPlugin.class, withSettings().stubOnly());
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("ElemPoints-Test"));
+        StorageFactory storage = mock(StorageFactory.class, withSettings().stubOnly());
+        // The global provider (null id) is the first one
+        StorageProvider global = providers.values().iterator().next();
+        when(storage.getProvider(any())).thenAnswer(inv -> {
+            String id = inv.getArgument(0);
+            return id != null ? providers.get(id) : global;
+        });
+        when(storage.getMinorUnits()).thenReturn(new MinorUnits());
+
+        CurrencyManager manager = new CurrencyManager(plugin, new CurrencyRegistry(), storage);
+        for (String id : providers.keySet()) {
+            YamlConfiguration currency = new YamlConfiguration();
+            currency.set("id", id);
+            currency.set("economy.default-balance", defaultBalance);
+            currency.set("economy.max-balance", maxBalance);
+            manager.registerCurrency(new CurrencyConfig(currency));
+        }
+        return manager;
+    }
+}
@@ -0,0 +1,163 @@
+package jar.elem.elempoints.plugin.currency;
+
+import jar.elem.elempoints.api.event.BalanceChangeEvent;
+import jar.elem.elempoints.api.result.TransactionResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transfers between a small set of accounts from many threads at once: money may move
+ * or be refused, but never appear or disappear.
+ */
+class TransferConcurrencyTest {
+
+    private static final String CURRENCY = TestManagers.CURRENCY;
+    private static final int PLAYERS = 16;
+    private static final double START = 1000;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 5_000;
+
+    private CurrencyManager manager;
+
+    @AfterEach
+    void shutdown() {
+        TestManagers.listener = e -> { };
+        if (manager != null) manager.shutdown().join();
+    }
+
+    @Test
+    void concurrentTransfersConserveSupply() throws Exception {
+        manager = manager(0);
+        List<UUID> players = players();
+
+        int succeeded = hammer(players, 50);
+
+        assertTrue(succeeded > 0, "no transfer went through");
+        assertSupply(players);
+    }
+
+    @Test
+    void transfersRefusedByTheReceiverLimitConserveSupply() throws Exception {
+        // Little headroom: many transfers would push the receiver over the limit
+        manager = manager(START * 1.5);
+        List<UUID> players = players();
+
+        hammer(players, 400);
+
+        assertSupply(players);
+        for (UUID p : players) {
+            assertTrue(manager.getBalance(p, CURRENCY) <= START * 1.5, "receiver above max balance");
+        }
+    }
+
+    @Test
+    void refusedReceiverLeavesSenderUntouched() {
+        manager = manager(START);
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+
+        TransactionResult result = manager.transfer(from, to, CURRENCY, 10);
+
+        assertEquals(TransactionResult.Status.MAX_BALANCE_EXCEEDED, result.getStatus());
+        assertEquals(START, manager.getBalance(from, CURRENCY));
+        assertEquals(START, manager.getBalance(to, CURRENCY));
+    }
+
+    @Test
+    void refundIgnoresTheListenerThatRefusedTheCredit() {
+        manager = manager(0);
+        UUID from = UUID.randomUUID();
+        UUID to = UUID.randomUUID();
+        manager.getBalance(from, CURRENCY);
+        manager.getBalance(to, CURRENCY);
+        // Lets the debit through, then refuses every other change
+        TestManagers.listener = e -> {
+            if (e instanceof BalanceChangeEvent && !"transfer:send".equals(((BalanceChangeEvent) e).getSource())) {
+                ((BalanceChangeEvent) e).setCancelled(true);
+            }
+        };
+
+        TransactionResult result = manager.transfer(from, to, CURRENCY, 10);
+
+        assertEquals(TransactionResult.Status.CANCELLED_BY_EVENT, result.getStatus());
+        assertEquals(START, manager.getBalance(from, CURRENCY));
+        assertEquals(START, manager.getBalance(to, CURRENCY));
+    }
+
+    // ─── Helpers ───
+
+    /**
+     * Random transfers of whole amounts up to {@code maxAmount} between random pairs.
+     *
+     * @return number of transfers that succeeded
+     */
+    private int hammer(List<UUID> players, int maxAmount) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int ok = 0;
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        UUID from = players.get(random.nextInt(players.size()));
+                        UUID to = players.get(random.nextInt(players.size()));
+                        if (from.equals(to)) continue;
+                        if (manager.transfer(from, to, CURRENCY, 1 + random.nextInt(maxAmount)).isSuccess()) ok++;
+                    }
+                    return ok;
+                }));
+            }
+            go.countDown();
+            int ok = 0;
+            for (Future<Integer> f : results) ok += f.get(60, TimeUnit.SECONDS);
+            return ok;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void assertSupply(List<UUID> players) {
+        double total = 0;
+        for (UUID p : players) {
+            double bal = manager.getBalance(p, CURRENCY);
+            assertTrue(bal >= 0, "negative balance " + bal);
+            total += bal;
+        }
+        assertEquals(PLAYERS * START, total);
+    }
+
+    private List<UUID> players() {
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID p = UUID.randomUUID();
+            // Loaded before the threads start, so only transfers race
+            manager.getBalance(p, CURRENCY);
+            players.add(p);
+        }
+        return players;
+    }
+
+    /**
+     * A manager writing straight to a storage mock where every account starts at {@link #START}.
+     *
+     * @param maxBalance 0 = no limit
+     */
+    private static CurrencyManager manager(double maxBalance) {
+        return TestManagers.create(TestManagers.config(), TestManagers.storage(START), START, maxBalance);
+    }
+}